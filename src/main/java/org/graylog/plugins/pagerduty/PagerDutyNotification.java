@@ -18,16 +18,12 @@
 
 package org.graylog.plugins.pagerduty;
 
-import java.io.IOException;
-import java.util.List;
 import javax.inject.Inject;
 import org.graylog.events.notifications.EventNotification;
 import org.graylog.events.notifications.EventNotificationContext;
 import org.graylog.events.notifications.EventNotificationException;
-import org.graylog.plugins.pagerduty.client.ClientFactory;
+import org.graylog.plugins.pagerduty.client.ClientRegistry;
 import org.graylog.plugins.pagerduty.client.PagerDuty;
-import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
-import org.graylog2.streams.StreamService;
 
 /**
  * Main class that focuses on event notifications that should be send to PagerDuty.
@@ -37,17 +33,11 @@ import org.graylog2.streams.StreamService;
  */
 public class PagerDutyNotification implements EventNotification
 {
-    private final StreamService streamService;
-    private final ClientFactory clientFactory;
+    private final ClientRegistry clientRegistry;
 
     @Inject
-    PagerDutyNotification(StreamService streamService) {
-        this(streamService, new ClientFactory());
-    }
-
-    PagerDutyNotification(StreamService streamService, ClientFactory clientFactory) {
-        this.streamService = streamService;
-        this.clientFactory = clientFactory;
+    PagerDutyNotification(ClientRegistry clientRegistry) {
+        this.clientRegistry = clientRegistry;
     }
 
     public interface Factory extends EventNotification.Factory {
@@ -60,18 +50,8 @@ public class PagerDutyNotification implements EventNotification
         final PagerDutyNotificationConfig config =
             (PagerDutyNotificationConfig) ctx.notificationConfig();
 
-        try (PagerDuty client = clientFactory.create(streamService, config)) {
-            PagerDutyResponse response = client.trigger(ctx);
-            List<String> errors = response.getErrors();
-            if (errors != null && errors.size() > 0) {
-                throw new IllegalStateException(
-                    "There was an error triggering the PagerDuty event, details: " + errors);
-            }
-        }
-        catch (IOException e) {
-            throw new IllegalStateException(
-                "There was an exception triggering the PagerDuty event.", e);
-        }
+        final PagerDuty client = clientRegistry.get(config);
+        client.trigger(ctx);
     }
 
 }
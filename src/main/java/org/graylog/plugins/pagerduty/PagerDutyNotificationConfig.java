@@ -30,6 +30,7 @@ import org.graylog.events.contentpack.entities.EventNotificationConfigEntity;
 import org.graylog.events.event.EventDto;
 import org.graylog.events.notifications.EventNotificationConfig;
 import org.graylog.events.notifications.EventNotificationExecutionJob;
+import org.graylog.plugins.pagerduty.client.FieldTemplate;
 import org.graylog.scheduler.JobTriggerData;
 import org.graylog2.contentpacks.EntityDescriptorIds;
 import org.graylog2.contentpacks.model.entities.references.ValueReference;
@@ -52,6 +53,16 @@ public abstract class PagerDutyNotificationConfig implements EventNotificationCo
     static final String FIELD_KEY_PREFIX = "key_prefix";
     static final String FIELD_CLIENT_NAME = "client_name";
     static final String FIELD_CLIENT_URL = "client_url";
+    static final String FIELD_HASHED_DEDUP_KEY = "hashed_dedup_key";
+    static final String FIELD_INCLUDE_DETAILS = "include_details";
+    static final String FIELD_SUMMARY_TEMPLATE = "summary_template";
+    static final String FIELD_DEDUP_KEY_TEMPLATE = "dedup_key_template";
+    static final String FIELD_COMPONENT_TEMPLATE = "component_template";
+    static final String FIELD_GROUP_TEMPLATE = "group_template";
+    static final String FIELD_CLASS_TEMPLATE = "class_template";
+    static final String FIELD_EVENT_ACTION_TEMPLATE = "event_action_template";
+    static final String FIELD_AUTO_RESOLVE_MINUTES = "auto_resolve_minutes";
+    static final String FIELD_CHANGE_EVENT = "change_event";
 
     @JsonProperty(FIELD_ROUTING_KEY)
     public abstract String routingKey();
@@ -68,6 +79,36 @@ public abstract class PagerDutyNotificationConfig implements EventNotificationCo
     @JsonProperty(FIELD_CLIENT_URL)
     public abstract String clientUrl();
 
+    @JsonProperty(FIELD_HASHED_DEDUP_KEY)
+    public abstract boolean hashedDedupKey();
+
+    @JsonProperty(FIELD_INCLUDE_DETAILS)
+    public abstract boolean includeDetails();
+
+    @JsonProperty(FIELD_SUMMARY_TEMPLATE)
+    public abstract String summaryTemplate();
+
+    @JsonProperty(FIELD_DEDUP_KEY_TEMPLATE)
+    public abstract String dedupKeyTemplate();
+
+    @JsonProperty(FIELD_COMPONENT_TEMPLATE)
+    public abstract String componentTemplate();
+
+    @JsonProperty(FIELD_GROUP_TEMPLATE)
+    public abstract String groupTemplate();
+
+    @JsonProperty(FIELD_CLASS_TEMPLATE)
+    public abstract String classTemplate();
+
+    @JsonProperty(FIELD_EVENT_ACTION_TEMPLATE)
+    public abstract String eventActionTemplate();
+
+    @JsonProperty(FIELD_AUTO_RESOLVE_MINUTES)
+    public abstract int autoResolveMinutes();
+
+    @JsonProperty(FIELD_CHANGE_EVENT)
+    public abstract boolean changeEvent();
+
     @JsonIgnore
     public JobTriggerData toJobTriggerData(EventDto dto) {
         return EventNotificationExecutionJob.Data.builder().eventDto(dto).build();
@@ -109,17 +150,58 @@ public abstract class PagerDutyNotificationConfig implements EventNotificationCo
                 validation.addError(FIELD_CLIENT_URL, "Couldn't parse Client URL correctly.");
             }
         }
+        validateTemplate(validation, FIELD_SUMMARY_TEMPLATE, summaryTemplate());
+        validateTemplate(validation, FIELD_DEDUP_KEY_TEMPLATE, dedupKeyTemplate());
+        validateTemplate(validation, FIELD_COMPONENT_TEMPLATE, componentTemplate());
+        validateTemplate(validation, FIELD_GROUP_TEMPLATE, groupTemplate());
+        validateTemplate(validation, FIELD_CLASS_TEMPLATE, classTemplate());
+        validateTemplate(validation, FIELD_EVENT_ACTION_TEMPLATE, eventActionTemplate());
+        if (!eventActionTemplate().isEmpty() && !customIncident()) {
+            validation.addError(
+                FIELD_EVENT_ACTION_TEMPLATE,
+                "Event Action Template requires Use Custom Incident Key.");
+        }
+        if (autoResolveMinutes() < 0) {
+            validation.addError(
+                FIELD_AUTO_RESOLVE_MINUTES, "Auto Resolve Minutes cannot be negative.");
+        }
+        else if (autoResolveMinutes() > 0 && !customIncident()) {
+            validation.addError(
+                FIELD_AUTO_RESOLVE_MINUTES,
+                "Auto Resolve Minutes requires Use Custom Incident Key.");
+        }
 
         return validation;
     }
 
+    private static void validateTemplate(
+        ValidationResult validation, String field, String template) {
+        try {
+            FieldTemplate.compile(template);
+        }
+        catch (IllegalArgumentException e) {
+            validation.addError(field, e.getMessage());
+        }
+    }
+
     @AutoValue.Builder
     public static abstract class Builder
         implements
         EventNotificationConfig.Builder<PagerDutyNotificationConfig.Builder> {
         @JsonCreator
         public static PagerDutyNotificationConfig.Builder create() {
-            return new AutoValue_PagerDutyNotificationConfig.Builder().type(TYPE_NAME);
+            return new AutoValue_PagerDutyNotificationConfig.Builder()
+                .type(TYPE_NAME)
+                .hashedDedupKey(false)
+                .includeDetails(false)
+                .summaryTemplate("")
+                .dedupKeyTemplate("")
+                .componentTemplate("")
+                .groupTemplate("")
+                .classTemplate("")
+                .eventActionTemplate("")
+                .autoResolveMinutes(0)
+                .changeEvent(false);
         }
 
         @JsonProperty(FIELD_ROUTING_KEY)
@@ -137,6 +219,40 @@ public abstract class PagerDutyNotificationConfig implements EventNotificationCo
         @JsonProperty(FIELD_CLIENT_URL)
         public abstract PagerDutyNotificationConfig.Builder clientUrl(String clientUrl);
 
+        @JsonProperty(FIELD_HASHED_DEDUP_KEY)
+        public abstract PagerDutyNotificationConfig.Builder hashedDedupKey(boolean hashedDedupKey);
+
+        @JsonProperty(FIELD_INCLUDE_DETAILS)
+        public abstract PagerDutyNotificationConfig.Builder includeDetails(boolean includeDetails);
+
+        @JsonProperty(FIELD_SUMMARY_TEMPLATE)
+        public abstract PagerDutyNotificationConfig.Builder summaryTemplate(String summaryTemplate);
+
+        @JsonProperty(FIELD_DEDUP_KEY_TEMPLATE)
+        public abstract PagerDutyNotificationConfig.Builder dedupKeyTemplate(
+            String dedupKeyTemplate);
+
+        @JsonProperty(FIELD_COMPONENT_TEMPLATE)
+        public abstract PagerDutyNotificationConfig.Builder componentTemplate(
+            String componentTemplate);
+
+        @JsonProperty(FIELD_GROUP_TEMPLATE)
+        public abstract PagerDutyNotificationConfig.Builder groupTemplate(String groupTemplate);
+
+        @JsonProperty(FIELD_CLASS_TEMPLATE)
+        public abstract PagerDutyNotificationConfig.Builder classTemplate(String classTemplate);
+
+        @JsonProperty(FIELD_EVENT_ACTION_TEMPLATE)
+        public abstract PagerDutyNotificationConfig.Builder eventActionTemplate(
+            String eventActionTemplate);
+
+        @JsonProperty(FIELD_AUTO_RESOLVE_MINUTES)
+        public abstract PagerDutyNotificationConfig.Builder autoResolveMinutes(
+            int autoResolveMinutes);
+
+        @JsonProperty(FIELD_CHANGE_EVENT)
+        public abstract PagerDutyNotificationConfig.Builder changeEvent(boolean changeEvent);
+
         public abstract PagerDutyNotificationConfig build();
     }
 
@@ -150,6 +266,16 @@ public abstract class PagerDutyNotificationConfig implements EventNotificationCo
             .keyPrefix(ValueReference.of(keyPrefix()))
             .clientName(ValueReference.of(clientName()))
             .clientUrl(ValueReference.of(clientUrl()))
+            .hashedDedupKey(ValueReference.of(hashedDedupKey()))
+            .includeDetails(ValueReference.of(includeDetails()))
+            .summaryTemplate(ValueReference.of(summaryTemplate()))
+            .dedupKeyTemplate(ValueReference.of(dedupKeyTemplate()))
+            .componentTemplate(ValueReference.of(componentTemplate()))
+            .groupTemplate(ValueReference.of(groupTemplate()))
+            .classTemplate(ValueReference.of(classTemplate()))
+            .eventActionTemplate(ValueReference.of(eventActionTemplate()))
+            .autoResolveMinutes(ValueReference.of(autoResolveMinutes()))
+            .changeEvent(ValueReference.of(changeEvent()))
             .build();
     }
 }
@@ -58,6 +58,36 @@ public abstract class PagerDutyNotificationConfigEntity implements EventNotifica
     @JsonProperty(PagerDutyNotificationConfig.FIELD_CLIENT_URL)
     public abstract ValueReference clientUrl();
 
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_HASHED_DEDUP_KEY)
+    public abstract ValueReference hashedDedupKey();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_INCLUDE_DETAILS)
+    public abstract ValueReference includeDetails();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_SUMMARY_TEMPLATE)
+    public abstract ValueReference summaryTemplate();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_DEDUP_KEY_TEMPLATE)
+    public abstract ValueReference dedupKeyTemplate();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_COMPONENT_TEMPLATE)
+    public abstract ValueReference componentTemplate();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_GROUP_TEMPLATE)
+    public abstract ValueReference groupTemplate();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_CLASS_TEMPLATE)
+    public abstract ValueReference classTemplate();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_EVENT_ACTION_TEMPLATE)
+    public abstract ValueReference eventActionTemplate();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_AUTO_RESOLVE_MINUTES)
+    public abstract ValueReference autoResolveMinutes();
+
+    @JsonProperty(PagerDutyNotificationConfig.FIELD_CHANGE_EVENT)
+    public abstract ValueReference changeEvent();
+
     public static Builder builder() {
         return Builder.create();
     }
@@ -69,7 +99,18 @@ public abstract class PagerDutyNotificationConfigEntity implements EventNotifica
 
         @JsonCreator
         public static Builder create() {
-            return new AutoValue_PagerDutyNotificationConfigEntity.Builder().type(TYPE_NAME);
+            return new AutoValue_PagerDutyNotificationConfigEntity.Builder()
+                .type(TYPE_NAME)
+                .hashedDedupKey(ValueReference.of(false))
+                .includeDetails(ValueReference.of(false))
+                .summaryTemplate(ValueReference.of(""))
+                .dedupKeyTemplate(ValueReference.of(""))
+                .componentTemplate(ValueReference.of(""))
+                .groupTemplate(ValueReference.of(""))
+                .classTemplate(ValueReference.of(""))
+                .eventActionTemplate(ValueReference.of(""))
+                .autoResolveMinutes(ValueReference.of(0))
+                .changeEvent(ValueReference.of(false));
         }
 
         @JsonProperty(PagerDutyNotificationConfig.FIELD_ROUTING_KEY)
@@ -87,6 +128,36 @@ public abstract class PagerDutyNotificationConfigEntity implements EventNotifica
         @JsonProperty(PagerDutyNotificationConfig.FIELD_CLIENT_URL)
         public abstract Builder clientUrl(ValueReference clientUrl);
 
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_HASHED_DEDUP_KEY)
+        public abstract Builder hashedDedupKey(ValueReference hashedDedupKey);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_INCLUDE_DETAILS)
+        public abstract Builder includeDetails(ValueReference includeDetails);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_SUMMARY_TEMPLATE)
+        public abstract Builder summaryTemplate(ValueReference summaryTemplate);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_DEDUP_KEY_TEMPLATE)
+        public abstract Builder dedupKeyTemplate(ValueReference dedupKeyTemplate);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_COMPONENT_TEMPLATE)
+        public abstract Builder componentTemplate(ValueReference componentTemplate);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_GROUP_TEMPLATE)
+        public abstract Builder groupTemplate(ValueReference groupTemplate);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_CLASS_TEMPLATE)
+        public abstract Builder classTemplate(ValueReference classTemplate);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_EVENT_ACTION_TEMPLATE)
+        public abstract Builder eventActionTemplate(ValueReference eventActionTemplate);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_AUTO_RESOLVE_MINUTES)
+        public abstract Builder autoResolveMinutes(ValueReference autoResolveMinutes);
+
+        @JsonProperty(PagerDutyNotificationConfig.FIELD_CHANGE_EVENT)
+        public abstract Builder changeEvent(ValueReference changeEvent);
+
         public abstract PagerDutyNotificationConfigEntity build();
     }
 
@@ -100,6 +171,16 @@ public abstract class PagerDutyNotificationConfigEntity implements EventNotifica
             .keyPrefix(keyPrefix().asString(parameters))
             .clientName(clientName().asString(parameters))
             .clientUrl(clientUrl().asString(parameters))
+            .hashedDedupKey(hashedDedupKey().asBoolean(parameters))
+            .includeDetails(includeDetails().asBoolean(parameters))
+            .summaryTemplate(summaryTemplate().asString(parameters))
+            .dedupKeyTemplate(dedupKeyTemplate().asString(parameters))
+            .componentTemplate(componentTemplate().asString(parameters))
+            .groupTemplate(groupTemplate().asString(parameters))
+            .classTemplate(classTemplate().asString(parameters))
+            .eventActionTemplate(eventActionTemplate().asString(parameters))
+            .autoResolveMinutes(autoResolveMinutes().asInteger(parameters))
+            .changeEvent(changeEvent().asBoolean(parameters))
             .build();
     }
 }
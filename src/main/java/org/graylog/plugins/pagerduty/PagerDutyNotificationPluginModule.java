@@ -18,13 +18,49 @@
 
 package org.graylog.plugins.pagerduty;
 
+import com.google.inject.Scopes;
+import java.util.Collections;
+import java.util.Set;
+import org.graylog.plugins.pagerduty.client.ChangeEventSender;
+import org.graylog.plugins.pagerduty.client.Http2Transport;
+import org.graylog.plugins.pagerduty.client.PagerDutyConnectionPool;
+import org.graylog.plugins.pagerduty.client.PagerDutyTransport;
+import org.graylog.plugins.pagerduty.client.PagerDutyTransportProvider;
+import org.graylog.plugins.pagerduty.client.PooledHttpTransport;
+import org.graylog.plugins.pagerduty.client.RetryScheduler;
+import org.graylog.plugins.pagerduty.client.StreamMetadataCache;
+import org.graylog.plugins.pagerduty.dispatch.AutoResolver;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dispatch.StormDigest;
+import org.graylog2.plugin.PluginConfigBean;
 import org.graylog2.plugin.PluginModule;
 
 //Auto-generated by Graylog (graylog-project).
 
 public class PagerDutyNotificationPluginModule extends PluginModule {
+    @Override
+    public Set<? extends PluginConfigBean> getConfigBeans() {
+        return Collections.singleton(new PagerDutyPluginConfiguration());
+    }
+
     @Override
     protected void configure() {
+        PagerDutyTransport.registerTransport(
+            binder(), PooledHttpTransport.NAME, PooledHttpTransport.class);
+        PagerDutyTransport.registerTransport(binder(), Http2Transport.NAME, Http2Transport.class);
+        bind(PagerDutyTransport.class)
+            .toProvider(PagerDutyTransportProvider.class)
+            .in(Scopes.SINGLETON);
+        serviceBinder().addBinding().to(PagerDutyConnectionPool.class);
+        serviceBinder().addBinding().to(PooledHttpTransport.class);
+        serviceBinder().addBinding().to(Http2Transport.class);
+        serviceBinder().addBinding().to(RetryScheduler.class);
+        serviceBinder().addBinding().to(ChangeEventSender.class);
+        serviceBinder().addBinding().to(PagerDutyDispatcher.class);
+        serviceBinder().addBinding().to(StormDigest.class);
+        serviceBinder().addBinding().to(AutoResolver.class);
+        serviceBinder().addBinding().to(StreamMetadataCache.class);
+
         addNotificationType(
             PagerDutyNotificationConfig.TYPE_NAME,
             PagerDutyNotificationConfig.class,
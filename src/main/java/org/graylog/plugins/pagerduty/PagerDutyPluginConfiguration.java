@@ -0,0 +1,365 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty;
+
+import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
+import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
+import com.github.joschi.jadconfig.validators.StringNotBlankValidator;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.graylog2.plugin.PluginConfigBean;
+
+/**
+ * Node wide settings of the PagerDuty plugin, read from the Graylog server configuration file.
+ * Every parameter is bound by name, so components can inject them with {@code @Named}.
+ */
+public class PagerDutyPluginConfiguration implements PluginConfigBean {
+    public static final String TRANSPORT = "pagerduty_transport";
+    public static final String API_URL = "pagerduty_api_url";
+    public static final String CHANGE_API_URL = "pagerduty_change_api_url";
+    public static final String CHANGE_BUFFER_SIZE = "pagerduty_change_buffer_size";
+    public static final String CHANGE_BATCH_SIZE = "pagerduty_change_batch_size";
+    public static final String CHANGE_FLUSH_INTERVAL = "pagerduty_change_flush_interval";
+    public static final String CHANGE_MAX_IN_FLIGHT = "pagerduty_change_max_in_flight";
+    public static final String MAX_CONNECTIONS_TOTAL = "pagerduty_max_connections_total";
+    public static final String MAX_CONNECTIONS_PER_ROUTE = "pagerduty_max_connections_per_route";
+    public static final String CONNECTION_IDLE_TIMEOUT = "pagerduty_connection_idle_timeout";
+    public static final String CONNECT_TIMEOUT = "pagerduty_connect_timeout";
+    public static final String SOCKET_TIMEOUT = "pagerduty_socket_timeout";
+    public static final String MAX_CONCURRENT_REQUESTS = "pagerduty_max_concurrent_requests";
+    public static final String RATE_LIMIT_PER_MINUTE = "pagerduty_rate_limit_per_minute";
+    public static final String RATE_LIMIT_BURST = "pagerduty_rate_limit_burst";
+    public static final String RATE_LIMIT_MAX_WAIT = "pagerduty_rate_limit_max_wait";
+    public static final String RETRY_THREADS = "pagerduty_retry_threads";
+    public static final String RETRY_BASE_DELAY = "pagerduty_retry_base_delay";
+    public static final String RETRY_MAX_DELAY = "pagerduty_retry_max_delay";
+    public static final String RETRY_DEADLINE = "pagerduty_retry_deadline";
+    public static final String DISPATCH_QUEUE_SIZE = "pagerduty_dispatch_queue_size";
+    public static final String DISPATCH_WORKERS = "pagerduty_dispatch_workers";
+    public static final String DISPATCH_MODE = "pagerduty_dispatch_mode";
+    public static final String VIRTUAL_MAX_CONCURRENCY = "pagerduty_virtual_max_concurrency";
+    public static final String DISPATCH_STARVATION_LIMIT = "pagerduty_dispatch_starvation_limit";
+    public static final String SHED_INFO_WATERMARK = "pagerduty_shed_info_watermark";
+    public static final String SHED_WARNING_WATERMARK = "pagerduty_shed_warning_watermark";
+    public static final String SHED_MAX_AGE = "pagerduty_shed_max_age";
+    public static final String COALESCE_WINDOW = "pagerduty_coalesce_window";
+    public static final String STORM_THRESHOLD = "pagerduty_storm_threshold";
+    public static final String STORM_INTERVAL = "pagerduty_storm_interval";
+    public static final String STREAM_CACHE_SIZE = "pagerduty_stream_cache_size";
+    public static final String STREAM_CACHE_EXPIRY = "pagerduty_stream_cache_expiry";
+    public static final String INCIDENT_INDEX_SIZE = "pagerduty_incident_index_size";
+    public static final String INCIDENT_TTL = "pagerduty_incident_ttl";
+    public static final String AUTO_RESOLVE_MAX_KEYS = "pagerduty_auto_resolve_max_keys";
+    public static final String DETAILS_MAX_SIZE = "pagerduty_details_max_size";
+    public static final String JOURNAL_ENABLED = "pagerduty_journal_enabled";
+    public static final String JOURNAL_DIR = "pagerduty_journal_dir";
+    public static final String JOURNAL_SEGMENT_SIZE = "pagerduty_journal_segment_size";
+    public static final String JOURNAL_FLUSH_INTERVAL = "pagerduty_journal_flush_interval";
+
+    @Parameter(value = TRANSPORT, validator = StringNotBlankValidator.class)
+    private String transport = "pooled";
+
+    @Parameter(value = API_URL)
+    private URI apiUrl = URI.create("https://events.pagerduty.com/v2/enqueue");
+
+    @Parameter(value = CHANGE_API_URL)
+    private URI changeApiUrl = URI.create("https://events.pagerduty.com/v2/change/enqueue");
+
+    @Parameter(value = CHANGE_BUFFER_SIZE, validator = PositiveIntegerValidator.class)
+    private int changeBufferSize = 10_000;
+
+    @Parameter(value = CHANGE_BATCH_SIZE, validator = PositiveIntegerValidator.class)
+    private int changeBatchSize = 100;
+
+    @Parameter(value = CHANGE_FLUSH_INTERVAL, validator = PositiveDurationValidator.class)
+    private Duration changeFlushInterval = Duration.seconds(5);
+
+    @Parameter(value = CHANGE_MAX_IN_FLIGHT, validator = PositiveIntegerValidator.class)
+    private int changeMaxInFlight = 4;
+
+    @Parameter(value = MAX_CONNECTIONS_TOTAL, validator = PositiveIntegerValidator.class)
+    private int maxConnectionsTotal = 50;
+
+    @Parameter(value = MAX_CONNECTIONS_PER_ROUTE, validator = PositiveIntegerValidator.class)
+    private int maxConnectionsPerRoute = 20;
+
+    @Parameter(value = CONNECTION_IDLE_TIMEOUT, validator = PositiveDurationValidator.class)
+    private Duration connectionIdleTimeout = Duration.seconds(30);
+
+    @Parameter(value = CONNECT_TIMEOUT, validator = PositiveDurationValidator.class)
+    private Duration connectTimeout = Duration.seconds(5);
+
+    @Parameter(value = SOCKET_TIMEOUT, validator = PositiveDurationValidator.class)
+    private Duration socketTimeout = Duration.seconds(10);
+
+    @Parameter(value = MAX_CONCURRENT_REQUESTS, validator = PositiveIntegerValidator.class)
+    private int maxConcurrentRequests = 64;
+
+    @Parameter(value = RATE_LIMIT_PER_MINUTE, validator = PositiveIntegerValidator.class)
+    private int rateLimitPerMinute = 120;
+
+    @Parameter(value = RATE_LIMIT_BURST, validator = PositiveIntegerValidator.class)
+    private int rateLimitBurst = 20;
+
+    @Parameter(value = RATE_LIMIT_MAX_WAIT, validator = PositiveDurationValidator.class)
+    private Duration rateLimitMaxWait = Duration.seconds(10);
+
+    @Parameter(value = RETRY_THREADS, validator = PositiveIntegerValidator.class)
+    private int retryThreads = 4;
+
+    @Parameter(value = RETRY_BASE_DELAY, validator = PositiveDurationValidator.class)
+    private Duration retryBaseDelay = Duration.milliseconds(500);
+
+    @Parameter(value = RETRY_MAX_DELAY, validator = PositiveDurationValidator.class)
+    private Duration retryMaxDelay = Duration.minutes(1);
+
+    @Parameter(value = RETRY_DEADLINE, validator = PositiveDurationValidator.class)
+    private Duration retryDeadline = Duration.minutes(10);
+
+    @Parameter(value = DISPATCH_QUEUE_SIZE, validator = PositiveIntegerValidator.class)
+    private int dispatchQueueSize = 1000;
+
+    @Parameter(value = DISPATCH_WORKERS, validator = PositiveIntegerValidator.class)
+    private int dispatchWorkers = 16;
+
+    @Parameter(value = DISPATCH_MODE, validator = StringNotBlankValidator.class)
+    private String dispatchMode = "platform";
+
+    @Parameter(value = VIRTUAL_MAX_CONCURRENCY, validator = PositiveIntegerValidator.class)
+    private int virtualMaxConcurrency = 1000;
+
+    @Parameter(value = DISPATCH_STARVATION_LIMIT, validator = PositiveDurationValidator.class)
+    private Duration dispatchStarvationLimit = Duration.seconds(30);
+
+    @Parameter(value = SHED_INFO_WATERMARK, validator = PositiveIntegerValidator.class)
+    private int shedInfoWatermark = 50;
+
+    @Parameter(value = SHED_WARNING_WATERMARK, validator = PositiveIntegerValidator.class)
+    private int shedWarningWatermark = 80;
+
+    @Parameter(value = SHED_MAX_AGE)
+    private Duration shedMaxAge = Duration.minutes(5);
+
+    @Parameter(value = COALESCE_WINDOW)
+    private Duration coalesceWindow = Duration.seconds(30);
+
+    @Parameter(value = STORM_THRESHOLD)
+    private int stormThreshold = 0;
+
+    @Parameter(value = STORM_INTERVAL, validator = PositiveDurationValidator.class)
+    private Duration stormInterval = Duration.minutes(1);
+
+    @Parameter(value = STREAM_CACHE_SIZE, validator = PositiveIntegerValidator.class)
+    private int streamCacheSize = 1000;
+
+    @Parameter(value = STREAM_CACHE_EXPIRY, validator = PositiveDurationValidator.class)
+    private Duration streamCacheExpiry = Duration.minutes(10);
+
+    @Parameter(value = INCIDENT_INDEX_SIZE, validator = PositiveIntegerValidator.class)
+    private int incidentIndexSize = 100_000;
+
+    @Parameter(value = INCIDENT_TTL)
+    private Duration incidentTtl = Duration.seconds(0);
+
+    @Parameter(value = AUTO_RESOLVE_MAX_KEYS, validator = PositiveIntegerValidator.class)
+    private int autoResolveMaxKeys = 1_000_000;
+
+    @Parameter(value = DETAILS_MAX_SIZE)
+    private Size detailsMaxSize = Size.kilobytes(256);
+
+    @Parameter(value = JOURNAL_ENABLED)
+    private boolean journalEnabled = false;
+
+    @Parameter(value = JOURNAL_DIR)
+    private Path journalDir = Paths.get("data", "pagerduty-journal");
+
+    @Parameter(value = JOURNAL_SEGMENT_SIZE)
+    private Size journalSegmentSize = Size.megabytes(8);
+
+    @Parameter(value = JOURNAL_FLUSH_INTERVAL, validator = PositiveDurationValidator.class)
+    private Duration journalFlushInterval = Duration.seconds(1);
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public URI getApiUrl() {
+        return apiUrl;
+    }
+
+    public URI getChangeApiUrl() {
+        return changeApiUrl;
+    }
+
+    public int getChangeBufferSize() {
+        return changeBufferSize;
+    }
+
+    public int getChangeBatchSize() {
+        return changeBatchSize;
+    }
+
+    public Duration getChangeFlushInterval() {
+        return changeFlushInterval;
+    }
+
+    public int getChangeMaxInFlight() {
+        return changeMaxInFlight;
+    }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public Duration getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public int getRateLimitPerMinute() {
+        return rateLimitPerMinute;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public Duration getRateLimitMaxWait() {
+        return rateLimitMaxWait;
+    }
+
+    public int getRetryThreads() {
+        return retryThreads;
+    }
+
+    public Duration getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+
+    public Duration getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public Duration getRetryDeadline() {
+        return retryDeadline;
+    }
+
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+
+    public int getDispatchWorkers() {
+        return dispatchWorkers;
+    }
+
+    public String getDispatchMode() {
+        return dispatchMode;
+    }
+
+    public int getVirtualMaxConcurrency() {
+        return virtualMaxConcurrency;
+    }
+
+    public Duration getDispatchStarvationLimit() {
+        return dispatchStarvationLimit;
+    }
+
+    public int getShedInfoWatermark() {
+        return shedInfoWatermark;
+    }
+
+    public int getShedWarningWatermark() {
+        return shedWarningWatermark;
+    }
+
+    public Duration getShedMaxAge() {
+        return shedMaxAge;
+    }
+
+    public Duration getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public int getStormThreshold() {
+        return stormThreshold;
+    }
+
+    public Duration getStormInterval() {
+        return stormInterval;
+    }
+
+    public int getStreamCacheSize() {
+        return streamCacheSize;
+    }
+
+    public Duration getStreamCacheExpiry() {
+        return streamCacheExpiry;
+    }
+
+    public int getIncidentIndexSize() {
+        return incidentIndexSize;
+    }
+
+    public Duration getIncidentTtl() {
+        return incidentTtl;
+    }
+
+    public int getAutoResolveMaxKeys() {
+        return autoResolveMaxKeys;
+    }
+
+    public Size getDetailsMaxSize() {
+        return detailsMaxSize;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    public Path getJournalDir() {
+        return journalDir;
+    }
+
+    public Size getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public Duration getJournalFlushInterval() {
+        return journalFlushInterval;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dto.PagerDutyChangeEvent;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends change events to the PagerDuty Change Events API, apart from incident events.
+ *
+ * Notifications only add their change events to a bounded buffer. The buffer is flushed once it
+ * holds a batch, or when its oldest event reaches the flush interval. A flush sends the buffered
+ * events back to back without waiting for each response, keeping up to a fixed number of
+ * requests in flight. Blocking transports send them on threads of their own, so change events
+ * never wait for threads busy with incident events.
+ *
+ * Change events never pass through the {@link PagerDutyDispatcher}, the rate limits or the
+ * {@link RetryScheduler}, and the in-flight bound leaves the connections of the transport to
+ * incident events. Events failing transiently are put back into the buffer
+ * and sent with a later flush, up to {@value #MAX_ATTEMPTS} attempts.
+ */
+@Singleton
+public class ChangeEventSender extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeEventSender.class);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final PagerDutyTransport transport;
+    private final URI changeApiUrl;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<Pending> buffer;
+    private final Semaphore inFlight;
+    private final ObjectWriter writer = new ObjectMapper().writer();
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService senders;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicBoolean ageFlushArmed = new AtomicBoolean();
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Histogram batchSizes;
+
+    @Inject
+    public ChangeEventSender(
+        PagerDutyTransport transport,
+        @Named(PagerDutyPluginConfiguration.CHANGE_API_URL) URI changeApiUrl,
+        @Named(PagerDutyPluginConfiguration.CHANGE_BUFFER_SIZE) int bufferSize,
+        @Named(PagerDutyPluginConfiguration.CHANGE_BATCH_SIZE) int batchSize,
+        @Named(PagerDutyPluginConfiguration.CHANGE_FLUSH_INTERVAL) Duration flushInterval,
+        @Named(PagerDutyPluginConfiguration.CHANGE_MAX_IN_FLIGHT) int maxInFlight,
+        MetricRegistry metricRegistry) {
+        this(
+            transport,
+            changeApiUrl,
+            bufferSize,
+            batchSize,
+            flushInterval.toMilliseconds(),
+            maxInFlight,
+            metricRegistry);
+    }
+
+    @VisibleForTesting
+    ChangeEventSender(
+        PagerDutyTransport transport,
+        URI changeApiUrl,
+        int bufferSize,
+        int batchSize,
+        long flushIntervalMillis,
+        int maxInFlight,
+        MetricRegistry metricRegistry) {
+        this.changeApiUrl = changeApiUrl;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-change-flush-%d")
+                .setDaemon(true)
+                .build());
+        this.senders = Executors.newFixedThreadPool(
+            maxInFlight,
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-change-sender-%d")
+                .setDaemon(true)
+                .build());
+        this.transport = transport.withExecutor(senders);
+        this.sent = metricRegistry.counter(MetricRegistry.name(ChangeEventSender.class, "sent"));
+        this.failed = metricRegistry.counter(
+            MetricRegistry.name(ChangeEventSender.class, "failed"));
+        this.rejected = metricRegistry.counter(
+            MetricRegistry.name(ChangeEventSender.class, "rejected"));
+        this.batchSizes = metricRegistry.histogram(
+            MetricRegistry.name(ChangeEventSender.class, "batch-size"));
+        metricRegistry.register(
+            MetricRegistry.name(ChangeEventSender.class, "buffered"),
+            (Gauge<Integer>) buffer::size);
+        metricRegistry.register(
+            MetricRegistry.name(ChangeEventSender.class, "in-flight"),
+            (Gauge<Integer>) () -> maxInFlight - inFlight.availablePermits());
+    }
+
+    /**
+     * Buffers the change event, it is sent with the next flush.
+     *
+     * @throws IllegalStateException if the buffer is full
+     */
+    public void enqueue(PagerDutyChangeEvent event) {
+        if (!buffer.offer(new Pending(event))) {
+            rejected.inc();
+            throw new IllegalStateException(
+                "The PagerDuty change event buffer is full, the event was rejected.");
+        }
+        requestFlush();
+    }
+
+    private void requestFlush() {
+        try {
+            if (buffer.size() >= batchSize) {
+                if (flushRequested.compareAndSet(false, true)) {
+                    flusher.execute(this::flush);
+                }
+            }
+            else if (ageFlushArmed.compareAndSet(false, true)) {
+                flusher.schedule(this::flushAged, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (RejectedExecutionException e) {
+            // Shutting down, the remaining events are flushed one last time.
+        }
+    }
+
+    private void flushAged() {
+        ageFlushArmed.set(false);
+        flush();
+    }
+
+    /**
+     * Drains the buffer batch by batch. Blocks while the in-flight bound is reached, which only
+     * holds up the flush thread.
+     */
+    @VisibleForTesting
+    void flush() {
+        flushRequested.set(false);
+        final List<Pending> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            batchSizes.update(batch.size());
+            for (Pending pending : batch) {
+                try {
+                    inFlight.acquire();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                send(pending);
+            }
+            batch.clear();
+        }
+    }
+
+    private void send(Pending pending) {
+        final byte[] payload;
+        try {
+            payload = pending.serialize(writer);
+        }
+        catch (JsonProcessingException e) {
+            inFlight.release();
+            failed.inc();
+            LOG.warn("Could not send PagerDuty change event: {}", e.getMessage());
+            return;
+        }
+        transport.send(changeApiUrl, payload).whenComplete((result, error) -> {
+            inFlight.release();
+            onResponse(pending, result, RetryScheduler.unwrap(error));
+        });
+    }
+
+    private void onResponse(Pending pending, PagerDutyResponse response, Throwable error) {
+        if (error == null && response.isAccepted()) {
+            sent.inc();
+            return;
+        }
+        if (RetryScheduler.isTransient(response, error)
+            && pending.attempts < MAX_ATTEMPTS
+            && buffer.offer(pending)) {
+            requestFlush();
+            return;
+        }
+        failed.inc();
+        LOG.warn(
+            "There was an error sending the PagerDuty change event, details: {}",
+            error != null ? error.getMessage() : response.getErrors());
+    }
+
+    @Override
+    protected void startUp() {
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        flusher.shutdownNow();
+        flusher.awaitTermination(1, TimeUnit.SECONDS);
+        flush();
+        senders.shutdown();
+        if (!senders.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOG.warn("Dropping pending PagerDuty change events on shutdown.");
+            senders.shutdownNow();
+        }
+    }
+
+    /**
+     * A buffered change event, serialized once on its first attempt.
+     */
+    private static class Pending {
+        private final PagerDutyChangeEvent event;
+        private byte[] payload;
+        private int attempts;
+
+        Pending(PagerDutyChangeEvent event) {
+            this.event = event;
+        }
+
+        byte[] serialize(ObjectWriter writer) throws JsonProcessingException {
+            if (payload == null) {
+                payload = writer.writeValueAsBytes(event);
+            }
+            attempts++;
+            return payload;
+        }
+    }
+}
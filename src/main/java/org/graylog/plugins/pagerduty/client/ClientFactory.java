@@ -18,17 +18,58 @@
 
 package org.graylog.plugins.pagerduty.client;
 
+import com.github.joschi.jadconfig.util.Size;
+import javax.inject.Inject;
+import javax.inject.Named;
 import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
-import org.graylog2.streams.StreamService;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dispatch.AutoResolver;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dispatch.StormDigest;
 
 /**
- * Factory class for the PagerDuty client.
+ * Factory class for the PagerDuty client. All the clients share the node wide dispatcher,
+ * stream cache and link builder.
  *
  * @author Edgar Molina
  *
  */
 public class ClientFactory {
-    public PagerDuty create(StreamService streamService, PagerDutyNotificationConfig config) {
-        return new PagerDuty(streamService, config);
+    private final PagerDutyDispatcher dispatcher;
+    private final StormDigest stormDigest;
+    private final AutoResolver autoResolver;
+    private final ChangeEventSender changeSender;
+    private final StreamMetadataCache streamCache;
+    private final StreamLinkBuilder linkBuilder;
+    private final int detailsMaxBytes;
+
+    @Inject
+    public ClientFactory(
+        PagerDutyDispatcher dispatcher,
+        StormDigest stormDigest,
+        AutoResolver autoResolver,
+        ChangeEventSender changeSender,
+        StreamMetadataCache streamCache,
+        StreamLinkBuilder linkBuilder,
+        @Named(PagerDutyPluginConfiguration.DETAILS_MAX_SIZE) Size detailsMaxSize) {
+        this.dispatcher = dispatcher;
+        this.stormDigest = stormDigest;
+        this.autoResolver = autoResolver;
+        this.changeSender = changeSender;
+        this.streamCache = streamCache;
+        this.linkBuilder = linkBuilder;
+        this.detailsMaxBytes = (int) Math.min(detailsMaxSize.toBytes(), Integer.MAX_VALUE);
+    }
+
+    public PagerDuty create(PagerDutyNotificationConfig config) {
+        return new PagerDuty(
+            streamCache,
+            linkBuilder,
+            detailsMaxBytes,
+            config,
+            dispatcher,
+            stormDigest,
+            autoResolver,
+            changeSender);
     }
 }
@@ -0,0 +1,85 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
+
+/**
+ * The PagerDuty clients of the notifications executed on this node, one per distinct config.
+ *
+ * Configs are immutable values, so a client built for one, with its compiled templates, serves
+ * every later execution with an equal config. Editing a notification yields a new config and
+ * thus a new client; clients whose config was not used for {@value #EXPIRY_MINUTES} minutes,
+ * such as those of edited or deleted notifications, are dropped.
+ */
+@Singleton
+public class ClientRegistry {
+    private static final int MAXIMUM_SIZE = 1_000;
+    private static final long EXPIRY_MINUTES = 60;
+
+    private final ClientFactory clientFactory;
+    private final Cache<PagerDutyNotificationConfig, PagerDuty> clients =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .expireAfterAccess(EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .build();
+    private final Counter hits;
+    private final Counter misses;
+
+    @Inject
+    public ClientRegistry(ClientFactory clientFactory, MetricRegistry metricRegistry) {
+        this.clientFactory = clientFactory;
+        this.hits = metricRegistry.counter(MetricRegistry.name(ClientRegistry.class, "hits"));
+        this.misses = metricRegistry.counter(
+            MetricRegistry.name(ClientRegistry.class, "misses"));
+        metricRegistry.register(
+            MetricRegistry.name(ClientRegistry.class, "clients"),
+            (Gauge<Long>) clients::size);
+    }
+
+    /**
+     * The client of the config, built on first use.
+     */
+    public PagerDuty get(PagerDutyNotificationConfig config) {
+        final PagerDuty client = clients.getIfPresent(config);
+        if (client != null) {
+            hits.inc();
+            return client;
+        }
+        misses.inc();
+        try {
+            return clients.get(config, () -> clientFactory.create(config));
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Could not create the PagerDuty client.", e.getCause());
+        }
+    }
+}
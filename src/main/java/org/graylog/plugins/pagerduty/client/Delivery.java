@@ -0,0 +1,52 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import java.util.concurrent.CompletableFuture;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * Tracks one event handed to the {@link RetryScheduler}, from its first attempt to its final
+ * outcome.
+ */
+public class Delivery {
+    private final CompletableFuture<PagerDutyResponse> outcome = new CompletableFuture<>();
+
+    public static Delivery completed(PagerDutyResponse response) {
+        final Delivery delivery = new Delivery();
+        delivery.complete(response);
+        return delivery;
+    }
+
+    /**
+     * The final response, once PagerDuty accepted the event, rejected it for good or the retry
+     * deadline passed. It completes exceptionally if the last attempt could not reach PagerDuty.
+     */
+    public CompletableFuture<PagerDutyResponse> outcome() {
+        return outcome;
+    }
+
+    void complete(PagerDutyResponse response) {
+        outcome.complete(response);
+    }
+
+    void fail(Throwable cause) {
+        outcome.completeExceptionally(cause);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node wide send pipeline: serializes an event with the {@link MessageTemplate} of its
+ * notification, paces it with the rate limiter of its routing key and hands it to the
+ * transport, retrying transient failures through the {@link RetryScheduler}.
+ */
+@Singleton
+public class EventSender {
+    private static final Logger LOG = LoggerFactory.getLogger(EventSender.class);
+
+    private final PagerDutyTransport transport;
+    private final URI apiUrl;
+    private final RoutingKeyRateLimiter rateLimiter;
+    private final RetryScheduler retryScheduler;
+    private final MessageTemplates templates;
+
+    @Inject
+    public EventSender(
+        PagerDutyTransport transport,
+        @Named(PagerDutyPluginConfiguration.API_URL) URI apiUrl,
+        RoutingKeyRateLimiter rateLimiter,
+        RetryScheduler retryScheduler,
+        MessageTemplates templates) {
+        this.transport = transport;
+        this.apiUrl = apiUrl;
+        this.rateLimiter = rateLimiter;
+        this.retryScheduler = retryScheduler;
+        this.templates = templates;
+    }
+
+    /**
+     * Starts sending the event and returns at once. If an attempt fails transiently, the
+     * delivery keeps retrying in the background until its outcome is final.
+     */
+    public Delivery send(PagerDutyMessage message) {
+        return send(message, templates.serialize(message));
+    }
+
+    /**
+     * Starts sending the event as it was serialized by {@link #serialize(PagerDutyMessage)}
+     * before, so an event which was already serialized for the journal is not serialized again.
+     */
+    public Delivery send(PagerDutyMessage message, byte[] payload) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Request Payload: {}", new String(payload, StandardCharsets.UTF_8));
+        }
+        final String routingKey = message.getRoutingKey();
+        return retryScheduler.submit(() -> attempt(routingKey, payload));
+    }
+
+    /**
+     * Serializes the event into the request body sent to PagerDuty.
+     *
+     * @throws IllegalStateException if the event cannot be serialized
+     */
+    public byte[] serialize(PagerDutyMessage message) {
+        return templates.serialize(message);
+    }
+
+    /**
+     * One attempt, sent once the rate limiter of its routing key allows it. The wait is
+     * scheduled rather than slept, and bounded by the configured maximum.
+     */
+    private CompletableFuture<PagerDutyResponse> attempt(String routingKey, byte[] payload) {
+        final long waitNanos = rateLimiter.reserve(routingKey);
+        final CompletableFuture<PagerDutyResponse> sent;
+        if (waitNanos > 0) {
+            LOG.debug("Rate limited, delaying the event by {} ms.", waitNanos / 1_000_000);
+            sent = retryScheduler.delay(waitNanos)
+                .thenCompose(ignored -> transport.send(apiUrl, payload));
+        }
+        else {
+            sent = transport.send(apiUrl, payload);
+        }
+        return sent.whenComplete((response, e) -> {
+            if (response != null) {
+                rateLimiter.onResponse(routingKey, response);
+            }
+        });
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.google.common.base.Strings;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.graylog.events.notifications.EventNotificationContext;
+import org.graylog.events.processor.EventDefinitionDto;
+
+/**
+ * A user defined event field such as the summary or the dedup key, with {@code ${variable}}
+ * placeholders. {@code $$} writes a literal dollar sign.
+ *
+ * The template is parsed once into a flat array of segments, each either a literal or an
+ * accessor bound to one variable when the template is compiled. Rendering an event only walks
+ * the segments and appends their values, variables without a value render as an empty string.
+ *
+ * Supported variables are {@code event.id}, {@code event.message}, {@code event.source},
+ * {@code event.priority}, {@code event.timestamp}, {@code event.streams},
+ * {@code event.fields.<name>}, {@code event_definition.id}, {@code event_definition.title} and
+ * {@code event_definition.description}.
+ */
+public class FieldTemplate {
+    private static final String FIELDS_PREFIX = "event.fields.";
+
+    private final Segment[] segments;
+
+    private FieldTemplate(Segment[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the template is malformed or uses an unknown variable
+     */
+    public static FieldTemplate compile(String template) {
+        final List<Segment> segments = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int position = 0;
+        while (position < template.length()) {
+            final int dollar = template.indexOf('$', position);
+            if (dollar < 0 || dollar == template.length() - 1) {
+                literal.append(template, position, template.length());
+                break;
+            }
+            literal.append(template, position, dollar);
+            final char next = template.charAt(dollar + 1);
+            if (next == '$') {
+                literal.append('$');
+                position = dollar + 2;
+            }
+            else if (next == '{') {
+                final int end = template.indexOf('}', dollar + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException(
+                        "Unclosed variable at position " + dollar + ".");
+                }
+                if (literal.length() > 0) {
+                    segments.add(new Literal(literal.toString()));
+                    literal.setLength(0);
+                }
+                segments.add(new Accessor(accessor(template.substring(dollar + 2, end).trim())));
+                position = end + 1;
+            }
+            else {
+                literal.append('$');
+                position = dollar + 1;
+            }
+        }
+        if (literal.length() > 0) {
+            segments.add(new Literal(literal.toString()));
+        }
+        return new FieldTemplate(segments.toArray(new Segment[0]));
+    }
+
+    /**
+     * Returns the compiled template, or {@code null} if the template is empty.
+     */
+    static FieldTemplate compileIfPresent(String template) {
+        return Strings.isNullOrEmpty(template) ? null : compile(template);
+    }
+
+    String render(EventNotificationContext ctx) {
+        if (segments.length == 1) {
+            return segments[0].value(ctx);
+        }
+        final StringBuilder out = new StringBuilder();
+        for (Segment segment : segments) {
+            out.append(segment.value(ctx));
+        }
+        return out.toString();
+    }
+
+    private static Function<EventNotificationContext, String> accessor(String variable) {
+        if (variable.startsWith(FIELDS_PREFIX) && variable.length() > FIELDS_PREFIX.length()) {
+            final String field = variable.substring(FIELDS_PREFIX.length());
+            return ctx -> {
+                final Map<String, String> fields = ctx.event().fields();
+                return fields == null ? null : fields.get(field);
+            };
+        }
+        switch (variable) {
+            case "event.id":
+                return ctx -> ctx.event().id();
+            case "event.message":
+                return ctx -> ctx.event().message();
+            case "event.source":
+                return ctx -> ctx.event().source();
+            case "event.priority":
+                return ctx -> String.valueOf(ctx.event().priority());
+            case "event.timestamp":
+                return ctx -> String.valueOf(ctx.event().eventTimestamp());
+            case "event.streams":
+                return ctx -> String.valueOf(ctx.event().sourceStreams());
+            case "event_definition.id":
+                return ctx -> ctx.eventDefinition().map(EventDefinitionDto::id).orElse(null);
+            case "event_definition.title":
+                return ctx -> ctx.eventDefinition().map(EventDefinitionDto::title).orElse(null);
+            case "event_definition.description":
+                return ctx ->
+                    ctx.eventDefinition().map(EventDefinitionDto::description).orElse(null);
+            default:
+                throw new IllegalArgumentException("Unknown variable \"" + variable + "\".");
+        }
+    }
+
+    private interface Segment {
+        String value(EventNotificationContext ctx);
+    }
+
+    private static class Literal implements Segment {
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String value(EventNotificationContext ctx) {
+            return text;
+        }
+    }
+
+    private static class Accessor implements Segment {
+        private final Function<EventNotificationContext, String> getter;
+
+        Accessor(Function<EventNotificationContext, String> getter) {
+            this.getter = getter;
+        }
+
+        @Override
+        public String value(EventNotificationContext ctx) {
+            return Strings.nullToEmpty(getter.apply(ctx));
+        }
+    }
+}
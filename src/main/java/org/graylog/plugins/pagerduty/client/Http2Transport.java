@@ -0,0 +1,160 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.util.concurrent.AbstractIdleService;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * Asynchronous transport multiplexing concurrent requests as HTTP/2 streams over a single
+ * connection per host. Requests are queued by OkHttp and never block the caller, so a burst of
+ * events needs neither one socket nor one thread per request.
+ *
+ * The client is derived from the one configured by Graylog, so proxy settings are honoured.
+ * HTTP/2 is negotiated through ALPN and the transport falls back to HTTP/1.1 when the JVM or a
+ * proxy in between does not support it. It is only built for the first request, so nodes using
+ * another transport never start it.
+ */
+@Singleton
+public class Http2Transport extends AbstractIdleService implements PagerDutyTransport {
+    public static final String NAME = "http2";
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final OkHttpClient graylogHttpClient;
+    private final int maxConcurrentRequests;
+    private final Duration idleTimeout;
+    private final Duration connectTimeout;
+    private final Duration socketTimeout;
+    private final ResponseParser responseParser;
+    private volatile OkHttpClient httpClient;
+
+    @Inject
+    public Http2Transport(
+        OkHttpClient graylogHttpClient,
+        @Named(PagerDutyPluginConfiguration.MAX_CONCURRENT_REQUESTS) int maxConcurrentRequests,
+        @Named(PagerDutyPluginConfiguration.CONNECTION_IDLE_TIMEOUT) Duration idleTimeout,
+        @Named(PagerDutyPluginConfiguration.CONNECT_TIMEOUT) Duration connectTimeout,
+        @Named(PagerDutyPluginConfiguration.SOCKET_TIMEOUT) Duration socketTimeout) {
+        this.graylogHttpClient = graylogHttpClient;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.idleTimeout = idleTimeout;
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+        this.responseParser = new ResponseParser();
+    }
+
+    private OkHttpClient httpClient() {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    final Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequests(maxConcurrentRequests);
+                    dispatcher.setMaxRequestsPerHost(maxConcurrentRequests);
+                    client = graylogHttpClient.newBuilder()
+                        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                        .dispatcher(dispatcher)
+                        .connectionPool(new ConnectionPool(
+                            2, idleTimeout.toMilliseconds(), TimeUnit.MILLISECONDS))
+                        .connectTimeout(connectTimeout.toMilliseconds(), TimeUnit.MILLISECONDS)
+                        .readTimeout(socketTimeout.toMilliseconds(), TimeUnit.MILLISECONDS)
+                        .writeTimeout(socketTimeout.toMilliseconds(), TimeUnit.MILLISECONDS)
+                        .build();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    @Override
+    public CompletableFuture<PagerDutyResponse> send(URI endpoint, byte[] payload) {
+        final CompletableFuture<PagerDutyResponse> result = new CompletableFuture<>();
+        final State state = state();
+        if (state == State.STOPPING || state == State.TERMINATED) {
+            result.completeExceptionally(
+                new IOException("The PagerDuty transport does not accept requests."));
+            return result;
+        }
+        final Request request = new Request.Builder()
+            .url(endpoint.toString())
+            .post(RequestBody.create(JSON, payload))
+            .build();
+
+        httpClient().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // Closing the body without reading it to the end only resets the HTTP/2 stream,
+                // the connection itself stays open.
+                try (ResponseBody body = response.body()) {
+                    result.complete(responseParser.parse(
+                        response.code(),
+                        response.header("Content-Type"),
+                        response.header("Retry-After"),
+                        body == null ? null : body.byteStream()));
+                }
+                catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    @Override
+    protected void startUp() {
+    }
+
+    @Override
+    protected synchronized void shutDown() {
+        if (httpClient == null) {
+            return;
+        }
+        httpClient.dispatcher().cancelAll();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+}
@@ -18,23 +18,26 @@
 
 package org.graylog.plugins.pagerduty.client;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import org.apache.commons.lang3.StringUtils;
+import java.util.Set;
+import java.util.TreeSet;
 import org.graylog.events.event.EventDto;
 import org.graylog.events.notifications.EventNotificationContext;
 import org.graylog.events.processor.EventDefinitionDto;
 import org.graylog.events.processor.aggregation.AggregationEventProcessorConfig;
 import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
+import org.graylog.plugins.pagerduty.dto.EventDetails;
 import org.graylog.plugins.pagerduty.dto.Link;
+import org.graylog.plugins.pagerduty.dto.PagerDutyChangeEvent;
 import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
-import org.graylog2.plugin.streams.Stream;
-import org.graylog2.streams.StreamService;
 
 /**
  * Factory class for PagerDuty messages, heavily based on the works of the cited authors.
@@ -48,15 +51,41 @@ import org.graylog2.streams.StreamService;
 class MessageFactory {
     private static final List<String> PAGER_DUTY_PRIORITIES =
         Arrays.asList("info", "warning", "critical");
-    private final StreamService streamService;
+    private static final HashFunction DEDUP_KEY_HASH = Hashing.murmur3_128();
+    private final StreamMetadataCache streamCache;
+    private final StreamLinkBuilder linkBuilder;
+    private final int detailsMaxBytes;
     private final PagerDutyNotificationConfig config;
+    private final FieldTemplate summaryTemplate;
+    private final FieldTemplate dedupKeyTemplate;
+    private final FieldTemplate componentTemplate;
+    private final FieldTemplate groupTemplate;
+    private final FieldTemplate classTemplate;
+    private final FieldTemplate eventActionTemplate;
 
-    MessageFactory(StreamService streamService, PagerDutyNotificationConfig config) {
-        this.streamService = streamService;
+    MessageFactory(
+        StreamMetadataCache streamCache,
+        StreamLinkBuilder linkBuilder,
+        int detailsMaxBytes,
+        PagerDutyNotificationConfig config) {
+        this.streamCache = streamCache;
+        this.linkBuilder = linkBuilder;
+        this.detailsMaxBytes = detailsMaxBytes;
         this.config = config;
+        this.summaryTemplate = FieldTemplate.compileIfPresent(config.summaryTemplate());
+        this.dedupKeyTemplate = FieldTemplate.compileIfPresent(config.dedupKeyTemplate());
+        this.componentTemplate = FieldTemplate.compileIfPresent(config.componentTemplate());
+        this.groupTemplate = FieldTemplate.compileIfPresent(config.groupTemplate());
+        this.classTemplate = FieldTemplate.compileIfPresent(config.classTemplate());
+        this.eventActionTemplate = FieldTemplate.compileIfPresent(config.eventActionTemplate());
     }
 
-    PagerDutyMessage createTriggerMessage(EventNotificationContext ctx) {
+    /**
+     * Builds the trigger, acknowledgement or resolve of the event, as picked by the event action
+     * template. Acknowledgements and resolves carry the same payload as the trigger, so they are
+     * queued with the same severity as the events of their incident.
+     */
+    PagerDutyMessage createMessage(EventNotificationContext ctx) {
         final EventDto event = ctx.event();
         String eventTitle = "Undefined";
         String eventPriority = PAGER_DUTY_PRIORITIES.get(0);
@@ -70,57 +99,128 @@ class MessageFactory {
             }
         }
 
-        List<Link> streamLinks =
-            streamService
-                .loadByIds(event.sourceStreams())
-                .stream()
-                .map(stream -> buildStreamWithUrl(stream, ctx))
-                .collect(Collectors.toList());
-
         String dedupKey = "";
         if (config.customIncident()) {
-            dedupKey = String.format(
-                "%s/%s/%s", config.keyPrefix(), event.sourceStreams(), eventTitle);
+            if (dedupKeyTemplate != null) {
+                dedupKey = dedupKeyTemplate.render(ctx);
+            }
+            else if (config.hashedDedupKey()) {
+                dedupKey = hashedDedupKey(ctx);
+            }
+            else {
+                dedupKey = config.keyPrefix() + '/' + event.sourceStreams() + '/' + eventTitle;
+            }
         }
 
-
-        Map<String, String> payload = new HashMap<String, String>();
-        payload.put("summary", event.message());
+        Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put("summary", summary(ctx));
         payload.put("source", "Graylog:" + event.sourceStreams());
         payload.put("severity", eventPriority);
         payload.put("timestamp", event.eventTimestamp().toString());
-        payload.put("component", "GraylogAlerts");
-        payload.put("group", event.sourceStreams().toString());
-        payload.put("class", "alerts");
+        payload.put(
+            "group",
+            groupTemplate == null ? event.sourceStreams().toString() : groupTemplate.render(ctx));
+        payload.putAll(MessageTemplate.STATIC_PAYLOAD);
+        if (componentTemplate != null) {
+            payload.put("component", componentTemplate.render(ctx));
+        }
+        if (classTemplate != null) {
+            payload.put("class", classTemplate.render(ctx));
+        }
+        if (config.includeDetails()) {
+            payload.put(
+                "custom_details",
+                new EventDetails(event.fields(), ctx.backlog(), detailsMaxBytes));
+        }
 
         return new PagerDutyMessage(
             config.routingKey(),
-            "trigger",
+            eventAction(ctx),
             dedupKey,
             config.clientName(),
             config.clientUrl(),
-            streamLinks,
+            streamLinks(ctx),
             payload);
     }
 
-    private Link buildStreamWithUrl(Stream stream, EventNotificationContext ctx) {
-        final String graylogUrl = config.clientUrl();
-        String streamUrl =
-            StringUtils.appendIfMissing(graylogUrl, "/") + "streams/" + stream.getId() + "/search";
+    /**
+     * Builds the change event of the event, with the summary, source, timestamp and links of
+     * its trigger. Event details are its custom details.
+     */
+    PagerDutyChangeEvent createChangeEvent(EventNotificationContext ctx) {
+        final EventDto event = ctx.event();
+        final Map<String, Object> payload = new HashMap<>();
+        payload.put("summary", summary(ctx));
+        payload.put("source", "Graylog:" + event.sourceStreams());
+        payload.put("timestamp", event.eventTimestamp().toString());
+        if (config.includeDetails()) {
+            payload.put(
+                "custom_details",
+                new EventDetails(event.fields(), ctx.backlog(), detailsMaxBytes));
+        }
+        return new PagerDutyChangeEvent(config.routingKey(), streamLinks(ctx), payload);
+    }
+
+    private String summary(EventNotificationContext ctx) {
+        return summaryTemplate == null ? ctx.event().message() : summaryTemplate.render(ctx);
+    }
 
+    private List<Link> streamLinks(EventNotificationContext ctx) {
+        final String query = query(ctx);
+        final List<Link> streamLinks = new ArrayList<>();
+        for (Map.Entry<String, String> stream
+            : streamCache.getTitles(ctx.event().sourceStreams()).entrySet()) {
+            streamLinks.add(
+                linkBuilder.build(config.clientUrl(), stream.getKey(), stream.getValue(), query));
+        }
+        return streamLinks;
+    }
+
+    /**
+     * Builds a fixed length dedup key from the readable prefix and a 128-bit hash of the sorted
+     * source stream IDs and the event definition ID, so the key neither grows with the number of
+     * streams nor changes with their order.
+     */
+    private String hashedDedupKey(EventNotificationContext ctx) {
+        final Hasher hasher = DEDUP_KEY_HASH.newHasher();
+        final Set<String> streams = new TreeSet<>(ctx.event().sourceStreams());
+        for (String stream : streams) {
+            hasher.putString(stream, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        // Separates the stream list from the definition, so the two can't run into each other.
+        hasher.putByte((byte) 1);
+        final String definitionId = ctx.eventDefinition().map(EventDefinitionDto::id).orElse(null);
+        if (definitionId != null) {
+            hasher.putString(definitionId, StandardCharsets.UTF_8);
+        }
+        return config.keyPrefix() + '/' + hasher.hash();
+    }
+
+    /**
+     * Renders the event action template, anything but {@code acknowledge} or {@code resolve}
+     * triggers an incident.
+     */
+    private String eventAction(EventNotificationContext ctx) {
+        if (eventActionTemplate == null) {
+            return PagerDutyMessage.TRIGGER;
+        }
+        final String action = eventActionTemplate.render(ctx).trim();
+        if (PagerDutyMessage.ACKNOWLEDGE.equalsIgnoreCase(action)) {
+            return PagerDutyMessage.ACKNOWLEDGE;
+        }
+        if (PagerDutyMessage.RESOLVE.equalsIgnoreCase(action)) {
+            return PagerDutyMessage.RESOLVE;
+        }
+        return PagerDutyMessage.TRIGGER;
+    }
+
+    private static String query(EventNotificationContext ctx) {
         if (ctx.eventDefinition().isPresent()) {
             EventDefinitionDto eventDefinitionDto = ctx.eventDefinition().get();
             if (eventDefinitionDto.config() instanceof AggregationEventProcessorConfig) {
-                String query =
-                    ((AggregationEventProcessorConfig) eventDefinitionDto.config()).query();
-                streamUrl += "?q=" + query;
+                return ((AggregationEventProcessorConfig) eventDefinitionDto.config()).query();
             }
         }
-        try {
-            return new Link(new URL(streamUrl), stream.getTitle());
-        }
-        catch (MalformedURLException e) {
-            throw new IllegalStateException("Error when building the stream link URL.", e);
-        }
+        return null;
     }
 }
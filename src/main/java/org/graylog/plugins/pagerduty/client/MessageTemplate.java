@@ -0,0 +1,187 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.graylog.plugins.pagerduty.dto.Link;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+
+/**
+ * Serializer for the events of one notification, compiled once. The routing key, event action,
+ * client and client URL of a notification never change, and neither do the constant payload
+ * entries, so their JSON is rendered up front and copied as bytes. Only the dedup key, links
+ * and remaining payload entries are written for every event.
+ *
+ * Events are streamed through the generator and buffer of the calling thread, see
+ * {@link MessageTemplates}. Strings and links are written directly, only other payload values
+ * go through Jackson's serializers.
+ *
+ * The output is the same JSON object Jackson writes for the message, fields may come in a
+ * different order.
+ */
+class MessageTemplate {
+    static final Map<String, Object> STATIC_PAYLOAD;
+
+    static {
+        final Map<String, Object> staticPayload = new LinkedHashMap<>();
+        staticPayload.put("component", "GraylogAlerts");
+        staticPayload.put("class", "alerts");
+        STATIC_PAYLOAD = Collections.unmodifiableMap(staticPayload);
+    }
+
+    private static final String[] STATIC_KEYS = STATIC_PAYLOAD.keySet().toArray(new String[0]);
+    private static final Object[] STATIC_VALUES = STATIC_PAYLOAD.values().toArray();
+    private static final byte[] DEDUP_KEY = ",\"dedup_key\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LINKS = ",\"links\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAYLOAD = ",\"payload\":{".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectWriter valueWriter;
+    private final byte[] head;
+    private final boolean headHasFields;
+    private final byte[] staticPayload;
+
+    MessageTemplate(
+        ObjectWriter valueWriter,
+        String routingKey,
+        String eventAction,
+        String client,
+        String clientUrl) throws IOException {
+        this.valueWriter = valueWriter;
+        final Map<String, String> fields = new LinkedHashMap<>();
+        putIfNotEmpty(fields, "routing_key", routingKey);
+        putIfNotEmpty(fields, "event_action", eventAction);
+        putIfNotEmpty(fields, "client", client);
+        putIfNotEmpty(fields, "client_url", clientUrl);
+        this.headHasFields = !fields.isEmpty();
+        // Cut the closing brace, the event fields are appended.
+        final byte[] object = valueWriter.writeValueAsBytes(fields);
+        this.head = Arrays.copyOf(object, object.length - 1);
+        // Cut both braces, the remaining entries go around them.
+        final byte[] payload = valueWriter.writeValueAsBytes(STATIC_PAYLOAD);
+        this.staticPayload = Arrays.copyOfRange(payload, 1, payload.length - 1);
+    }
+
+    private static void putIfNotEmpty(Map<String, String> fields, String name, String value) {
+        if (!Strings.isNullOrEmpty(value)) {
+            fields.put(name, value);
+        }
+    }
+
+    /**
+     * Appends the event to the buffer. The generator must write to the same buffer, with no
+     * root value separator.
+     */
+    void write(PagerDutyMessage message, JsonGenerator generator, SerializationBuffer out)
+        throws IOException {
+        out.write(head, 0, head.length);
+        // Every field but the first starts with a comma, drop it if the head is empty.
+        int skip = headHasFields ? 0 : 1;
+
+        if (!Strings.isNullOrEmpty(message.getDedupKey())) {
+            out.write(DEDUP_KEY, skip, DEDUP_KEY.length - skip);
+            skip = 0;
+            generator.writeString(message.getDedupKey());
+            generator.flush();
+        }
+        final List<Link> links = message.getLinks();
+        if (links != null && !links.isEmpty()) {
+            out.write(LINKS, skip, LINKS.length - skip);
+            skip = 0;
+            writeLinks(links, generator);
+            generator.flush();
+        }
+        final Map<String, Object> payload = message.getPayload();
+        if (payload != null && !payload.isEmpty()) {
+            out.write(PAYLOAD, skip, PAYLOAD.length - skip);
+            writePayload(payload, generator, out);
+            out.write('}');
+        }
+        out.write('}');
+    }
+
+    private static void writeLinks(List<Link> links, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (int i = 0; i < links.size(); i++) {
+            final Link link = links.get(i);
+            generator.writeStartObject();
+            generator.writeStringField(
+                "href", link.getHref() == null ? null : link.getHref().toString());
+            generator.writeStringField("text", link.getText());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writePayload(
+        Map<String, Object> payload,
+        JsonGenerator generator,
+        SerializationBuffer out) throws IOException {
+        final boolean hasStaticPayload = hasStaticPayload(payload);
+        boolean first = true;
+        if (hasStaticPayload) {
+            out.write(staticPayload, 0, staticPayload.length);
+            first = false;
+        }
+        for (Map.Entry<String, Object> entry : payload.entrySet()) {
+            if (hasStaticPayload && STATIC_PAYLOAD.containsKey(entry.getKey())) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            generator.writeString(entry.getKey());
+            generator.flush();
+            out.write(':');
+            writeValue(entry.getValue(), generator);
+            generator.flush();
+        }
+    }
+
+    private static boolean hasStaticPayload(Map<String, Object> payload) {
+        for (int i = 0; i < STATIC_KEYS.length; i++) {
+            if (!Objects.equals(STATIC_VALUES[i], payload.get(STATIC_KEYS[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeValue(Object value, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        }
+        else if (value instanceof String) {
+            generator.writeString((String) value);
+        }
+        else {
+            valueWriter.writeValue(generator, value);
+        }
+    }
+}
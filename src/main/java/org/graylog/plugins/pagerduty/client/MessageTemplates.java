@@ -0,0 +1,114 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+
+/**
+ * The compiled {@link MessageTemplate} of every notification sending events on this node,
+ * keyed by the fields the template renders up front.
+ *
+ * All templates share one pre-bound {@link ObjectWriter}, so Jackson resolves serializers once
+ * per node. Each thread streams its events through its own JSON generator into its own
+ * {@link SerializationBuffer}, both reused from event to event; apart from what Jackson needs
+ * for non-string payload values, the only allocation per event is the returned array.
+ */
+@Singleton
+public class MessageTemplates {
+    private static final int MAXIMUM_SIZE = 1_000;
+
+    private final ObjectWriter valueWriter;
+    private final Cache<List<String>, MessageTemplate> templates =
+        CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    private final ThreadLocal<Scratch> scratch;
+
+    @Inject
+    public MessageTemplates() {
+        this(new ObjectMapper());
+    }
+
+    @VisibleForTesting
+    MessageTemplates(ObjectMapper objectMapper) {
+        this.valueWriter = objectMapper.writer();
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(objectMapper));
+    }
+
+    /**
+     * @throws IllegalStateException if the message cannot be serialized
+     */
+    public byte[] serialize(PagerDutyMessage message) {
+        final Scratch current = scratch.get();
+        try {
+            template(message).write(message, current.generator, current.buffer);
+            current.generator.flush();
+            return current.buffer.toByteArray();
+        }
+        catch (ExecutionException | IOException | RuntimeException e) {
+            // The generator may be left in the middle of a value, start over with a new one.
+            scratch.remove();
+            throw new IllegalStateException(
+                "There was an error serializing the notification event.", e);
+        }
+        finally {
+            current.buffer.reset();
+        }
+    }
+
+    private MessageTemplate template(PagerDutyMessage message) throws ExecutionException {
+        final List<String> key = Arrays.asList(
+            message.getRoutingKey(),
+            message.getEventAction(),
+            message.getClient(),
+            message.getClientUrl());
+        return templates.get(key, () -> new MessageTemplate(
+            valueWriter,
+            message.getRoutingKey(),
+            message.getEventAction(),
+            message.getClient(),
+            message.getClientUrl()));
+    }
+
+    private static class Scratch {
+        private final SerializationBuffer buffer = new SerializationBuffer();
+        private final JsonGenerator generator;
+
+        Scratch(ObjectMapper objectMapper) {
+            try {
+                this.generator = objectMapper.getFactory().createGenerator(buffer);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            generator.setRootValueSeparator(null);
+        }
+    }
+}
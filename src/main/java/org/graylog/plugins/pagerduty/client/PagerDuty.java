@@ -18,18 +18,15 @@
 
 package org.graylog.plugins.pagerduty.client;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
-import java.io.IOException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import java.util.concurrent.TimeUnit;
 import org.graylog.events.notifications.EventNotificationContext;
+import org.graylog.events.processor.EventDefinitionDto;
 import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
-import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
-import org.graylog2.streams.StreamService;
+import org.graylog.plugins.pagerduty.dispatch.AutoResolver;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dispatch.StormDigest;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,69 +38,104 @@ import org.slf4j.LoggerFactory;
  * This class is heavily based on the work commited by Jochen, James and Dennis
  * <a href="https://github.com/graylog-labs/graylog-plugin-pagerduty/">here</a>.
  *
+ * The event is built on the calling thread and handed to the node wide
+ * {@link PagerDutyDispatcher}, which sends it in the background, unless its routing key is in
+ * the storm mode of the {@link StormDigest}. With auto resolve, the {@link AutoResolver} tracks
+ * the quiet period of every incident triggered through this client. Notifications sending change
+ * events hand them to the {@link ChangeEventSender} instead.
+ *
+ * A client only holds what it derives from its config, so the {@link ClientRegistry} shares one
+ * instance among all executions and threads of notifications with an equal config.
+ *
  * @author Jochen Schalanda
  * @author James Carr
  * @author Dennis Oelkers
  * @author Padma Liyanage
  * @author Edgar Molina
  */
-public class PagerDuty implements AutoCloseable {
+public class PagerDuty {
     private static final String PAGER_DUTY_NOTIFICATION_PLUGIN = "PagerDutyNotificationPlugin";
-    private static final String API_URL = "https://events.pagerduty.com/v2/enqueue";
     private final Logger logger;
-    private final ObjectMapper objectMapper;
-    private final CloseableHttpClient httpClient;
+    private final PagerDutyDispatcher dispatcher;
+    private final StormDigest stormDigest;
+    private final AutoResolver autoResolver;
+    private final long autoResolveMillis;
+    private final ChangeEventSender changeSender;
+    private final boolean changeEvents;
     private final MessageFactory messageFactory;
 
-    public PagerDuty(final StreamService streamService, final PagerDutyNotificationConfig config) {
+    public PagerDuty(
+        final StreamMetadataCache streamCache,
+        final StreamLinkBuilder linkBuilder,
+        final int detailsMaxBytes,
+        final PagerDutyNotificationConfig config,
+        final PagerDutyDispatcher dispatcher,
+        final StormDigest stormDigest,
+        final AutoResolver autoResolver,
+        final ChangeEventSender changeSender) {
         this(
-            streamService,
-            config,
-            HttpClients.createDefault(),
-            new ObjectMapper(),
-            new MessageFactory(streamService, config),
+            dispatcher,
+            stormDigest,
+            autoResolver,
+            TimeUnit.MINUTES.toMillis(config.autoResolveMinutes()),
+            changeSender,
+            config.changeEvent(),
+            new MessageFactory(streamCache, linkBuilder, detailsMaxBytes, config),
             LoggerFactory.getLogger(PAGER_DUTY_NOTIFICATION_PLUGIN));
     }
 
     @VisibleForTesting
     PagerDuty(
-        final StreamService streamService,
-        final PagerDutyNotificationConfig config,
-        final CloseableHttpClient httpClient,
-        final ObjectMapper objectMapper,
+        final PagerDutyDispatcher dispatcher,
+        final StormDigest stormDigest,
+        final AutoResolver autoResolver,
+        final long autoResolveMillis,
+        final ChangeEventSender changeSender,
+        final boolean changeEvents,
         final MessageFactory messageFactory,
         final Logger logger) {
-        this.httpClient = httpClient;
-        this.objectMapper = objectMapper;
+        this.dispatcher = dispatcher;
+        this.stormDigest = stormDigest;
+        this.autoResolver = autoResolver;
+        this.autoResolveMillis = autoResolveMillis;
+        this.changeSender = changeSender;
+        this.changeEvents = changeEvents;
         this.messageFactory = messageFactory;
         this.logger = logger;
     }
 
-    public PagerDutyResponse trigger(EventNotificationContext ctx) {
-        try {
-            final String payloadString = objectMapper.writeValueAsString(
-                messageFactory.createTriggerMessage(ctx));
-            final StringEntity payloadEntity = new StringEntity(payloadString);
-            final HttpPost httpPost = new HttpPost(API_URL);
-
-            logger.debug("Triggering event in PagerDuty with context: {}", ctx);
-            logger.debug("Request Payload: {}", payloadString);
-            httpPost.setEntity(payloadEntity);
-            try (CloseableHttpResponse response = httpClient.execute(httpPost))
-            {
-                return objectMapper.readValue(
-                    response.getEntity().getContent(), PagerDutyResponse.class);
+    /**
+     * Builds the event and queues it for sending, or buffers the change event of notifications
+     * sending change events. Only triggers count towards storm mode,
+     * acknowledgements and resolves are always queued. Digested triggers still extend the quiet
+     * period of their incident.
+     *
+     * @throws IllegalStateException if the dispatch queue or the change event buffer is full
+     */
+    public void trigger(EventNotificationContext ctx) {
+        if (changeEvents) {
+            logger.debug("Buffering change event for PagerDuty with context: {}", ctx);
+            changeSender.enqueue(messageFactory.createChangeEvent(ctx));
+            return;
+        }
+        final PagerDutyMessage message = messageFactory.createMessage(ctx);
+        final String definition =
+            ctx.eventDefinition().map(EventDefinitionDto::title).orElse("Undefined");
+        if (autoResolveMillis > 0) {
+            if (PagerDutyMessage.TRIGGER.equals(message.getEventAction())) {
+                autoResolver.touch(message, autoResolveMillis);
+            }
+            else if (PagerDutyMessage.RESOLVE.equals(message.getEventAction())) {
+                autoResolver.cancel(message);
             }
         }
-        catch (IOException e) {
-            throw new IllegalStateException(
-                "There was an error sending the notification event.", e);
+        if (PagerDutyMessage.TRIGGER.equals(message.getEventAction())
+            && stormDigest.absorb(message, definition, ctx.event().sourceStreams())) {
+            logger.debug("Event digested during an alert storm: {}", ctx);
+            return;
         }
+        logger.debug(
+            "Sending {} event to PagerDuty with context: {}", message.getEventAction(), ctx);
+        dispatcher.dispatch(message, ctx.event().sourceStreams());
     }
-
-    @Override
-    public void close() throws IOException {
-        httpClient.close();
-    }
-
 }
@@ -0,0 +1,119 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.util.concurrent.AbstractIdleService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long lived HTTP connection pool shared by every PagerDuty notification on this node.
+ *
+ * Connections are kept alive between events, so consecutive pages reuse an established TLS
+ * connection instead of paying a new handshake. New connections reuse the TLS session cache of
+ * the single SSL context held by the pool. Idle and expired connections are evicted in the
+ * background, and the pool is closed together with the Graylog server. The client is only
+ * built when the pooled transport first asks for it, so nodes using another transport never
+ * start its eviction thread.
+ */
+@Singleton
+public class PagerDutyConnectionPool extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(PagerDutyConnectionPool.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final long idleTimeoutMillis;
+    private final Duration connectTimeout;
+    private final Duration socketTimeout;
+    private CloseableHttpClient httpClient;
+
+    @Inject
+    public PagerDutyConnectionPool(
+        @Named(PagerDutyPluginConfiguration.MAX_CONNECTIONS_TOTAL) int maxConnectionsTotal,
+        @Named(PagerDutyPluginConfiguration.MAX_CONNECTIONS_PER_ROUTE) int maxConnectionsPerRoute,
+        @Named(PagerDutyPluginConfiguration.CONNECTION_IDLE_TIMEOUT) Duration idleTimeout,
+        @Named(PagerDutyPluginConfiguration.CONNECT_TIMEOUT) Duration connectTimeout,
+        @Named(PagerDutyPluginConfiguration.SOCKET_TIMEOUT) Duration socketTimeout) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxConnectionsTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        this.idleTimeoutMillis = idleTimeout.toMilliseconds();
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+    }
+
+    public synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient != null) {
+            return httpClient;
+        }
+        // Never keep a connection longer than we are willing to let it idle, even when the
+        // server does not announce a keep-alive timeout.
+        final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            final long announced =
+                DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return announced > 0 ? Math.min(announced, idleTimeoutMillis) : idleTimeoutMillis;
+        };
+
+        httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(
+                RequestConfig.custom()
+                    .setConnectTimeout((int) connectTimeout.toMilliseconds())
+                    .setConnectionRequestTimeout((int) connectTimeout.toMilliseconds())
+                    .setSocketTimeout((int) socketTimeout.toMilliseconds())
+                    .build())
+            .setKeepAliveStrategy(keepAliveStrategy)
+            .disableConnectionState()
+            .disableCookieManagement()
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+            .build();
+        return httpClient;
+    }
+
+    @Override
+    protected void startUp() {
+        LOG.debug(
+            "PagerDuty connection pool ready, max {} connections ({} per route).",
+            connectionManager.getMaxTotal(),
+            connectionManager.getDefaultMaxPerRoute());
+    }
+
+    @Override
+    protected synchronized void shutDown() throws Exception {
+        if (httpClient != null) {
+            LOG.debug("Closing PagerDuty connection pool.");
+            httpClient.close();
+        }
+        else {
+            connectionManager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.google.inject.Binder;
+import com.google.inject.multibindings.MapBinder;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * Delivers serialized events to a PagerDuty Events API endpoint.
+ *
+ * Implementations are shared by every notification on the node and must be thread safe. The
+ * returned future completes exceptionally with an {@link java.io.IOException} when the request
+ * could not be delivered.
+ *
+ * Transports are registered by name with {@link #registerTransport(Binder, String, Class)} and
+ * selected through the {@value PagerDutyPluginConfiguration#TRANSPORT} setting, so other modules
+ * can provide their own.
+ */
+public interface PagerDutyTransport {
+    CompletableFuture<PagerDutyResponse> send(URI endpoint, byte[] payload);
+
+    /**
+     * A transport sharing the connections of this one whose blocking requests run on the given
+     * executor, so a separate kind of traffic does not queue up behind incident events.
+     * Transports which never block return themselves.
+     */
+    default PagerDutyTransport withExecutor(Executor executor) {
+        return this;
+    }
+
+    static void registerTransport(
+        Binder binder, String name, Class<? extends PagerDutyTransport> transportClass) {
+        MapBinder.newMapBinder(binder, String.class, PagerDutyTransport.class)
+            .addBinding(name)
+            .to(transportClass);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import java.util.Locale;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+
+/**
+ * Selects the {@link PagerDutyTransport} configured for this node through the
+ * {@value PagerDutyPluginConfiguration#TRANSPORT} setting, among all the registered ones.
+ */
+public class PagerDutyTransportProvider implements Provider<PagerDutyTransport> {
+    private final String transport;
+    private final Map<String, Provider<PagerDutyTransport>> transports;
+
+    @Inject
+    public PagerDutyTransportProvider(
+        @Named(PagerDutyPluginConfiguration.TRANSPORT) String transport,
+        Map<String, Provider<PagerDutyTransport>> transports) {
+        this.transport = transport;
+        this.transports = transports;
+    }
+
+    @Override
+    public PagerDutyTransport get() {
+        final Provider<PagerDutyTransport> provider =
+            transports.get(transport.trim().toLowerCase(Locale.ENGLISH));
+        if (provider == null) {
+            throw new IllegalArgumentException(
+                "Unknown PagerDuty transport \"" + transport + "\", valid values are "
+                    + transports.keySet() + ".");
+        }
+        return provider.get();
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dispatch.VirtualThreads;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * HTTP/1.1 transport over the shared {@link PagerDutyConnectionPool}. Requests block, so they
+ * run on threads of the transport, one per pooled connection, and never on the dispatch
+ * workers or the timers of the {@link RetryScheduler}. Idle threads exit after a minute. At
+ * most {@value PagerDutyPluginConfiguration#DISPATCH_QUEUE_SIZE} requests wait for a thread,
+ * as many as the dispatcher can have in flight, further ones fail like an unreachable endpoint.
+ *
+ * In the virtual dispatch mode, available on Java 21 and later, every request runs on its own
+ * virtual thread instead, with at most
+ * {@value PagerDutyPluginConfiguration#VIRTUAL_MAX_CONCURRENCY} requests per endpoint at a
+ * time, so slow requests no longer tie up platform threads. Requests still wait for a
+ * connection of the pool before they are sent.
+ *
+ * On shutdown, requests already handed to the transport are still sent, later ones fail.
+ */
+@Singleton
+public class PooledHttpTransport extends AbstractIdleService implements PagerDutyTransport {
+    public static final String NAME = "pooled";
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    private static final long THREAD_IDLE_SECONDS = 60;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    // Fetched on the first request, so nodes using another transport never build the client.
+    private final Supplier<CloseableHttpClient> httpClient;
+    private final ResponseParser responseParser;
+    private final Executor executor;
+    private final int maxRequestsPerEndpoint;
+    private final Map<URI, Semaphore> endpointPermits = new ConcurrentHashMap<>();
+
+    @Inject
+    public PooledHttpTransport(
+        PagerDutyConnectionPool connectionPool,
+        @Named(PagerDutyPluginConfiguration.MAX_CONNECTIONS_TOTAL) int maxConnectionsTotal,
+        @Named(PagerDutyPluginConfiguration.DISPATCH_QUEUE_SIZE) int dispatchQueueSize,
+        @Named(PagerDutyPluginConfiguration.DISPATCH_MODE) String dispatchMode,
+        @Named(PagerDutyPluginConfiguration.VIRTUAL_MAX_CONCURRENCY) int virtualMaxConcurrency) {
+        this(
+            Suppliers.memoize(connectionPool::getHttpClient),
+            new ResponseParser(),
+            isVirtual(dispatchMode)
+                ? newVirtualExecutor(maxConnectionsTotal, dispatchQueueSize)
+                : newExecutor(maxConnectionsTotal, dispatchQueueSize),
+            isVirtual(dispatchMode) ? virtualMaxConcurrency : 0);
+    }
+
+    PooledHttpTransport(
+        CloseableHttpClient httpClient, ResponseParser responseParser, Executor executor) {
+        this(httpClient, responseParser, executor, 0);
+    }
+
+    /**
+     * @param maxRequestsPerEndpoint requests sent to one endpoint at a time, 0 for no limit
+     *                               other than the threads of the executor
+     */
+    PooledHttpTransport(
+        CloseableHttpClient httpClient,
+        ResponseParser responseParser,
+        Executor executor,
+        int maxRequestsPerEndpoint) {
+        this(Suppliers.ofInstance(httpClient), responseParser, executor, maxRequestsPerEndpoint);
+    }
+
+    private PooledHttpTransport(
+        Supplier<CloseableHttpClient> httpClient,
+        ResponseParser responseParser,
+        Executor executor,
+        int maxRequestsPerEndpoint) {
+        this.httpClient = httpClient;
+        this.responseParser = responseParser;
+        this.executor = executor;
+        this.maxRequestsPerEndpoint = maxRequestsPerEndpoint;
+    }
+
+    private static boolean isVirtual(String dispatchMode) {
+        return PagerDutyDispatcher.VIRTUAL_MODE.equals(
+            dispatchMode.trim().toLowerCase(Locale.ENGLISH)) && VirtualThreads.isAvailable();
+    }
+
+    private static ExecutorService newVirtualExecutor(int fallbackThreads, int queueSize) {
+        return VirtualThreads.newThreadPerTaskExecutor("pagerduty-http-")
+            .orElseGet(() -> newExecutor(fallbackThreads, queueSize));
+    }
+
+    private static ExecutorService newExecutor(int threads, int queueSize) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            THREAD_IDLE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueSize),
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-http-%d")
+                .setDaemon(true)
+                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    protected void startUp() {
+    }
+
+    @Override
+    protected void shutDown() throws InterruptedException {
+        // Only the managed transport is stopped, views returned by withExecutor() are not.
+        if (!(executor instanceof ExecutorService)) {
+            return;
+        }
+        final ExecutorService executorService = (ExecutorService) executor;
+        executorService.shutdown();
+        if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Override
+    public PagerDutyTransport withExecutor(Executor executor) {
+        return new PooledHttpTransport(httpClient, responseParser, executor, 0);
+    }
+
+    @Override
+    public CompletableFuture<PagerDutyResponse> send(URI endpoint, byte[] payload) {
+        final CompletableFuture<PagerDutyResponse> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> post(endpoint, payload, result));
+        }
+        catch (RejectedExecutionException e) {
+            result.completeExceptionally(
+                new IOException("The PagerDuty transport does not accept requests.", e));
+        }
+        return result;
+    }
+
+    private void post(
+        URI endpoint, byte[] payload, CompletableFuture<PagerDutyResponse> result) {
+        if (maxRequestsPerEndpoint <= 0) {
+            request(endpoint, payload, result);
+            return;
+        }
+
+        final Semaphore permits = endpointPermits.computeIfAbsent(
+            endpoint, key -> new Semaphore(maxRequestsPerEndpoint));
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(
+                new IOException("Interrupted while waiting to send to PagerDuty.", e));
+            return;
+        }
+        try {
+            request(endpoint, payload, result);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private void request(
+        URI endpoint, byte[] payload, CompletableFuture<PagerDutyResponse> result) {
+        final HttpPost httpPost = new HttpPost(endpoint);
+        httpPost.setEntity(new ByteArrayEntity(payload, ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpClient.get().execute(httpPost)) {
+            final HttpEntity entity = response.getEntity();
+            final InputStream body = entity == null ? null : entity.getContent();
+            try {
+                result.complete(responseParser.parse(
+                    response.getStatusLine().getStatusCode(),
+                    headerValue(response, HttpHeaders.CONTENT_TYPE),
+                    headerValue(response, HttpHeaders.RETRY_AFTER),
+                    body));
+            }
+            finally {
+                release(httpPost, body);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Reading the body up to its end hands the connection back to the pool. Bodies too large to
+     * be worth draining abort the request instead, which closes the connection but still frees
+     * its slot in the pool.
+     */
+    private static void release(HttpPost httpPost, InputStream body) {
+        if (body == null) {
+            return;
+        }
+        try {
+            final long drained = ByteStreams.exhaust(ByteStreams.limit(body, MAX_DRAIN_BYTES));
+            if (drained < MAX_DRAIN_BYTES || body.read() == -1) {
+                body.close();
+            }
+            else {
+                httpPost.abort();
+            }
+        }
+        catch (IOException e) {
+            httpPost.abort();
+        }
+    }
+
+    private static String headerValue(CloseableHttpResponse response, String name) {
+        final Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * Turns Events API responses into {@link PagerDutyResponse}s.
+ *
+ * The HTTP status code alone decides whether an event was accepted. The body is then read with a
+ * streaming parser that only picks the fields we use, and never more than {@link #MAX_BODY_BYTES}
+ * of it are read, so a proxy answering with a huge HTML page costs no more than a regular
+ * response. Rejected events always carry at least one error.
+ */
+class ResponseParser {
+    static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final int MAX_ERROR_SNIPPET_CHARS = 256;
+
+    // The transports decide how to release the connection, closing the body is up to them.
+    private final JsonFactory jsonFactory =
+        new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    PagerDutyResponse parse(
+        int httpStatus, String contentType, String retryAfter, InputStream body, Instant now) {
+        final Fields fields = new Fields();
+        if (body != null) {
+            final InputStream boundedBody = ByteStreams.limit(body, MAX_BODY_BYTES);
+            if (isJson(contentType)) {
+                readJson(boundedBody, fields);
+            }
+            else if (httpStatus < 200 || httpStatus >= 300) {
+                fields.message = readSnippet(boundedBody);
+            }
+        }
+
+        final boolean accepted = httpStatus >= 200 && httpStatus < 300;
+        List<String> errors = fields.errors;
+        if (!accepted && (errors == null || errors.isEmpty())) {
+            errors = Collections.singletonList(
+                "HTTP " + httpStatus + (fields.message == null ? "" : ": " + fields.message));
+        }
+        return new PagerDutyResponse(
+            httpStatus,
+            fields.status,
+            fields.message,
+            fields.dedupKey,
+            errors,
+            parseRetryAfter(retryAfter, now));
+    }
+
+    PagerDutyResponse parse(int httpStatus, String contentType, String retryAfter, InputStream body) {
+        return parse(httpStatus, contentType, retryAfter, body, Instant.now());
+    }
+
+    private void readJson(InputStream body, Fields fields) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "status":
+                        fields.status = parser.getValueAsString();
+                        break;
+                    case "message":
+                        fields.message = parser.getValueAsString();
+                        break;
+                    case "dedup_key":
+                        fields.dedupKey = parser.getValueAsString();
+                        break;
+                    case "errors":
+                        fields.errors = readErrors(parser, value);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        catch (IOException e) {
+            // Truncated or malformed bodies keep whatever was read so far, the status code
+            // already tells whether the event was accepted.
+        }
+    }
+
+    private List<String> readErrors(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        final List<String> errors = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken().isScalarValue()) {
+                errors.add(parser.getValueAsString());
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return errors;
+    }
+
+    private String readSnippet(InputStream body) {
+        try {
+            final byte[] snippet = ByteStreams.toByteArray(
+                ByteStreams.limit(body, MAX_ERROR_SNIPPET_CHARS * 4));
+            final String text = new String(snippet, StandardCharsets.UTF_8)
+                .replaceAll("<[^>]*>", " ")
+                .replaceAll("\\s+", " ")
+                .trim();
+            if (text.isEmpty()) {
+                return null;
+            }
+            return text.length() > MAX_ERROR_SNIPPET_CHARS
+                ? text.substring(0, MAX_ERROR_SNIPPET_CHARS)
+                : text;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("json");
+    }
+
+    static Duration parseRetryAfter(String retryAfter, Instant now) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return null;
+        }
+        final String value = retryAfter.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        }
+        catch (NumberFormatException e) {
+            try {
+                final Instant until =
+                    ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return until.isAfter(now) ? Duration.between(now, until) : Duration.ZERO;
+            }
+            catch (DateTimeException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static class Fields {
+        private String status;
+        private String message;
+        private String dedupKey;
+        private List<String> errors;
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries events that failed for a transient reason without holding the thread that triggered
+ * them. Only the first attempt starts on the caller's behalf; later attempts are started by
+ * timers on a small pool owned by the plugin. Attempts only hand their request to the
+ * transport, which sends it on threads of its own, so the timers are never held up by a
+ * request.
+ *
+ * Connection errors, exhausted rate limits, 408, 429 and 5xx responses are transient. Any other
+ * rejection is permanent and returned at once. Retries back off exponentially with full jitter,
+ * never earlier than an announced Retry-After, and stop once the deadline of the event passes.
+ */
+@Singleton
+public class RetryScheduler extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private final ScheduledExecutorService executor;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineMillis;
+    private final LongUnaryOperator jitter;
+    private final LongSupplier clock;
+    private final Counter attempts;
+    private final Counter retries;
+    private final Counter giveUps;
+    private final Counter permanentFailures;
+
+    @Inject
+    public RetryScheduler(
+        @Named(PagerDutyPluginConfiguration.RETRY_THREADS) int threads,
+        @Named(PagerDutyPluginConfiguration.RETRY_BASE_DELAY) Duration baseDelay,
+        @Named(PagerDutyPluginConfiguration.RETRY_MAX_DELAY) Duration maxDelay,
+        @Named(PagerDutyPluginConfiguration.RETRY_DEADLINE) Duration deadline,
+        MetricRegistry metricRegistry) {
+        this(
+            threads,
+            baseDelay.toMilliseconds(),
+            maxDelay.toMilliseconds(),
+            deadline.toMilliseconds(),
+            bound -> ThreadLocalRandom.current().nextLong(bound + 1),
+            System::currentTimeMillis,
+            metricRegistry);
+    }
+
+    @VisibleForTesting
+    RetryScheduler(
+        int threads,
+        long baseDelayMillis,
+        long maxDelayMillis,
+        long deadlineMillis,
+        LongUnaryOperator jitter,
+        LongSupplier clock,
+        MetricRegistry metricRegistry) {
+        final ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(
+            threads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-retry-%d")
+                .setDaemon(true)
+                .build());
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.executor = scheduledExecutor;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.jitter = jitter;
+        this.clock = clock;
+        this.attempts = metricRegistry.counter(
+            MetricRegistry.name(RetryScheduler.class, "attempts"));
+        this.retries = metricRegistry.counter(
+            MetricRegistry.name(RetryScheduler.class, "retries"));
+        this.giveUps = metricRegistry.counter(
+            MetricRegistry.name(RetryScheduler.class, "give-ups"));
+        this.permanentFailures = metricRegistry.counter(
+            MetricRegistry.name(RetryScheduler.class, "permanent-failures"));
+    }
+
+    /**
+     * Runs the first attempt right away and keeps retrying it in the background while it fails
+     * transiently.
+     */
+    public Delivery submit(Supplier<CompletableFuture<PagerDutyResponse>> attempt) {
+        final Delivery delivery = new Delivery();
+        run(delivery, attempt, 0, clock.getAsLong() + deadlineMillis);
+        return delivery;
+    }
+
+    /**
+     * A future completing on the retry pool after the given delay, so waits never park a thread.
+     */
+    public CompletableFuture<Void> delay(long delayNanos) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            executor.schedule(() -> future.complete(null), delayNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void run(
+        Delivery delivery,
+        Supplier<CompletableFuture<PagerDutyResponse>> attempt,
+        int attemptNumber,
+        long deadline) {
+        attempts.inc();
+        CompletableFuture<PagerDutyResponse> result;
+        try {
+            result = attempt.get();
+        }
+        catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((response, error) ->
+            onAttempt(delivery, attempt, attemptNumber, deadline, response, unwrap(error)));
+    }
+
+    private void onAttempt(
+        Delivery delivery,
+        Supplier<CompletableFuture<PagerDutyResponse>> attempt,
+        int attemptNumber,
+        long deadline,
+        PagerDutyResponse response,
+        Throwable error) {
+        if (error == null && response.isAccepted()) {
+            delivery.complete(response);
+            return;
+        }
+        if (!isTransient(response, error)) {
+            permanentFailures.inc();
+            finish(delivery, response, error);
+            return;
+        }
+
+        final long delayMillis = backoffMillis(attemptNumber, response);
+        if (clock.getAsLong() + delayMillis > deadline) {
+            giveUp(delivery, attemptNumber, response, error);
+            return;
+        }
+        try {
+            executor.schedule(
+                () -> run(delivery, attempt, attemptNumber + 1, deadline),
+                delayMillis,
+                TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            giveUp(delivery, attemptNumber, response, error);
+            return;
+        }
+        retries.inc();
+        LOG.debug("PagerDuty event failed transiently, retrying in {} ms.", delayMillis);
+    }
+
+    private void giveUp(
+        Delivery delivery, int attemptNumber, PagerDutyResponse response, Throwable error) {
+        giveUps.inc();
+        LOG.warn(
+            "Giving up on PagerDuty event after {} attempts: {}",
+            attemptNumber + 1,
+            error != null ? error.getMessage() : response.getErrors());
+        finish(delivery, response, error);
+    }
+
+    private static void finish(Delivery delivery, PagerDutyResponse response, Throwable error) {
+        if (error != null) {
+            delivery.fail(error);
+        }
+        else {
+            delivery.complete(response);
+        }
+    }
+
+    @VisibleForTesting
+    long backoffMillis(int attemptNumber, PagerDutyResponse response) {
+        final long ceiling = baseDelayMillis << Math.min(attemptNumber, 30);
+        final long delay = jitter.applyAsLong(
+            ceiling > 0 ? Math.min(ceiling, maxDelayMillis) : maxDelayMillis);
+        if (response == null) {
+            return delay;
+        }
+        return response.getRetryAfter()
+            .map(retryAfter -> Math.max(delay, retryAfter.toMillis()))
+            .orElse(delay);
+    }
+
+    @VisibleForTesting
+    static boolean isTransient(PagerDutyResponse response, Throwable error) {
+        if (error != null) {
+            return error instanceof IOException || error instanceof RateLimitExceededException;
+        }
+        final int status = response.getHttpStatus();
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    static Throwable unwrap(Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException)
+            && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    @Override
+    protected void startUp() {
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        final List<Runnable> pending = executor.shutdownNow();
+        if (!pending.isEmpty()) {
+            LOG.warn("Dropping {} pending PagerDuty retries on shutdown.", pending.size());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * Paces the events sent for each routing key, PagerDuty throttles the Events API per
+ * integration. Each routing key gets its own {@link TokenBucket}, which learns from the
+ * {@code 429} responses and {@code Retry-After} headers returned for it. Buckets of routing
+ * keys not used for {@value #EXPIRY_MINUTES} minutes, long enough for them to have refilled
+ * and any throttling to have passed, are dropped.
+ */
+@Singleton
+public class RoutingKeyRateLimiter {
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MAXIMUM_SIZE = 1_000;
+    private static final long EXPIRY_MINUTES = 60;
+
+    private final LoadingCache<String, TokenBucket> buckets;
+    private final long intervalNanos;
+    private final int burst;
+    private final long maxWaitNanos;
+    private final LongSupplier nanoClock;
+
+    @Inject
+    public RoutingKeyRateLimiter(
+        @Named(PagerDutyPluginConfiguration.RATE_LIMIT_PER_MINUTE) int eventsPerMinute,
+        @Named(PagerDutyPluginConfiguration.RATE_LIMIT_BURST) int burst,
+        @Named(PagerDutyPluginConfiguration.RATE_LIMIT_MAX_WAIT) Duration maxWait) {
+        this(eventsPerMinute, burst, maxWait.toMilliseconds(), System::nanoTime);
+    }
+
+    RoutingKeyRateLimiter(
+        int eventsPerMinute, int burst, long maxWaitMillis, LongSupplier nanoClock) {
+        this.intervalNanos = TokenBucket.intervalNanos(eventsPerMinute);
+        this.burst = burst;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.nanoClock = nanoClock;
+        this.buckets = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .expireAfterAccess(EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .ticker(new Ticker() {
+                @Override
+                public long read() {
+                    return nanoClock.getAsLong();
+                }
+            })
+            .build(new CacheLoader<String, TokenBucket>() {
+                @Override
+                public TokenBucket load(String routingKey) {
+                    return new TokenBucket(intervalNanos, burst, nanoClock);
+                }
+            });
+    }
+
+    /**
+     * Reserves the right to send one event with the given routing key.
+     *
+     * @return the time to wait before sending, in nanoseconds
+     * @throws RateLimitExceededException if the routing key is throttled for longer than the
+     *                                     configured maximum wait
+     */
+    public long reserve(String routingKey) {
+        final long wait = bucket(routingKey).reserve(maxWaitNanos);
+        if (wait < 0) {
+            throw new RateLimitExceededException(
+                "The PagerDuty rate limit for this routing key is exhausted, try again later.");
+        }
+        return wait;
+    }
+
+    public void onResponse(String routingKey, PagerDutyResponse response) {
+        if (response.getHttpStatus() == HTTP_TOO_MANY_REQUESTS) {
+            bucket(routingKey).onThrottled(response.getRetryAfter().orElse(null));
+        }
+        else if (response.isAccepted()) {
+            bucket(routingKey).onAccepted();
+        }
+    }
+
+    private TokenBucket bucket(String routingKey) {
+        return buckets.getUnchecked(routingKey);
+    }
+
+    @VisibleForTesting
+    long bucketCount() {
+        buckets.cleanUp();
+        return buckets.size();
+    }
+}
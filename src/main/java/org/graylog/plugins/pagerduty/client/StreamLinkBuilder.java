@@ -0,0 +1,102 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.graylog.plugins.pagerduty.dto.Link;
+
+/**
+ * Builds the links to the search of a stream attached to PagerDuty events. Links only depend
+ * on the Graylog URL of the notification, the stream and the query of the event definition, so
+ * they are built once and then served from a bounded cache, without parsing URLs per event.
+ *
+ * The query is URL encoded, so queries containing spaces, {@code &} or {@code #} still open
+ * the right search.
+ */
+@Singleton
+public class StreamLinkBuilder {
+    private static final int MAXIMUM_SIZE = 1_000;
+
+    private final Cache<List<String>, Link> links;
+
+    @Inject
+    public StreamLinkBuilder() {
+        this(MAXIMUM_SIZE);
+    }
+
+    @VisibleForTesting
+    StreamLinkBuilder(int maximumSize) {
+        this.links = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * @param query search query of the event definition, or {@code null} to search the whole
+     *              stream
+     * @throws IllegalStateException if the Graylog URL is not valid
+     */
+    public Link build(String graylogUrl, String streamId, String streamTitle, String query) {
+        try {
+            return links.get(
+                Arrays.asList(graylogUrl, streamId, streamTitle, query),
+                () -> createLink(graylogUrl, streamId, streamTitle, query));
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(
+                "Error when building the stream link URL.", e.getCause());
+        }
+    }
+
+    private static Link createLink(
+        String graylogUrl, String streamId, String streamTitle, String query)
+        throws MalformedURLException {
+        final StringBuilder url = new StringBuilder(StringUtils.appendIfMissing(graylogUrl, "/"))
+            .append("streams/")
+            .append(encode(streamId))
+            .append("/search");
+        if (!Strings.isNullOrEmpty(query)) {
+            url.append("?q=").append(encode(query));
+        }
+        return new Link(new URL(url.toString()), streamTitle);
+    }
+
+    private static String encode(String value) {
+        try {
+            // Form encoding turns spaces into plus signs, which is not safe in every part of a
+            // URL, so use the percent encoding instead.
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name()).replace("+", "%20");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+}
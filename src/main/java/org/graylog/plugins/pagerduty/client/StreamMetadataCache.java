@@ -0,0 +1,155 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.AbstractIdleService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.graylog2.streams.events.StreamDeletedEvent;
+import org.graylog2.streams.events.StreamsChangedEvent;
+
+/**
+ * Titles of the streams linked from PagerDuty events, so building an event does not need a
+ * MongoDB round trip while the same streams keep alerting.
+ *
+ * The cache is bounded and entries expire after a while. Streams changed or deleted on any node
+ * are evicted as soon as Graylog announces it on the event bus; a lookup racing with such an
+ * announcement is not cached, so a stale title never outlives the expiry.
+ */
+@Singleton
+public class StreamMetadataCache extends AbstractIdleService {
+    private final StreamService streamService;
+    private final EventBus eventBus;
+    private final Cache<String, String> titles;
+    // Makes storing a lookup and evicting its streams mutually exclusive.
+    private final Object lock = new Object();
+    private long invalidations; // guarded by lock
+    private final Counter hits;
+    private final Counter misses;
+
+    @Inject
+    public StreamMetadataCache(
+        StreamService streamService,
+        EventBus eventBus,
+        @Named(PagerDutyPluginConfiguration.STREAM_CACHE_SIZE) int maximumSize,
+        @Named(PagerDutyPluginConfiguration.STREAM_CACHE_EXPIRY) Duration expiry,
+        MetricRegistry metricRegistry) {
+        this.streamService = streamService;
+        this.eventBus = eventBus;
+        this.titles = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expiry.toMilliseconds(), TimeUnit.MILLISECONDS)
+            .build();
+        this.hits = metricRegistry.counter(
+            MetricRegistry.name(StreamMetadataCache.class, "hits"));
+        this.misses = metricRegistry.counter(
+            MetricRegistry.name(StreamMetadataCache.class, "misses"));
+    }
+
+    /**
+     * Looks up the titles of the streams, loading all missing ones with a single query.
+     *
+     * @return the stream titles by stream id, in the order of the given ids; streams which do
+     *         not exist are left out
+     */
+    public Map<String, String> getTitles(Set<String> streamIds) {
+        final Map<String, String> found = new HashMap<>(titles.getAllPresent(streamIds));
+        hits.inc(found.size());
+        if (found.size() < streamIds.size()) {
+            final Set<String> missing = new HashSet<>(streamIds);
+            missing.removeAll(found.keySet());
+            misses.inc(missing.size());
+            found.putAll(load(missing));
+        }
+
+        final Map<String, String> result = new LinkedHashMap<>();
+        for (String streamId : streamIds) {
+            final String title = found.get(streamId);
+            if (title != null) {
+                result.put(streamId, title);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, String> load(Set<String> streamIds) {
+        final long generation;
+        synchronized (lock) {
+            generation = invalidations;
+        }
+        final Map<String, String> loaded = new HashMap<>();
+        for (Stream stream : streamService.loadByIds(streamIds)) {
+            loaded.put(stream.getId(), stream.getTitle());
+        }
+        synchronized (lock) {
+            if (generation == invalidations) {
+                titles.putAll(loaded);
+            }
+        }
+        return loaded;
+    }
+
+    @Subscribe
+    public void handleStreamsChanged(StreamsChangedEvent event) {
+        invalidate(event.streamIds());
+    }
+
+    @Subscribe
+    public void handleStreamDeleted(StreamDeletedEvent event) {
+        invalidate(Collections.singleton(event.streamId()));
+    }
+
+    @VisibleForTesting
+    void invalidate(Set<String> streamIds) {
+        synchronized (lock) {
+            invalidations++;
+            titles.invalidateAll(streamIds);
+        }
+    }
+
+    @Override
+    protected void startUp() {
+        eventBus.register(this);
+    }
+
+    @Override
+    protected void shutDown() {
+        eventBus.unregister(this);
+        titles.invalidateAll();
+    }
+}
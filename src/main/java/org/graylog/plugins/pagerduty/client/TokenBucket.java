@@ -0,0 +1,103 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm: the whole state is the
+ * theoretical arrival time of the next event, updated with a single compare-and-set.
+ *
+ * The bucket adapts to throttling. Every throttled response doubles the interval between events
+ * and pauses the bucket for the requested {@code Retry-After} delay, while every accepted event
+ * brings the interval back towards the configured one.
+ */
+class TokenBucket {
+    private static final int MAX_SLOWDOWN = 16;
+
+    private final long baseIntervalNanos;
+    private final long maxIntervalNanos;
+    private final int burst;
+    private final LongSupplier nanoClock;
+    private final AtomicLong theoreticalArrival;
+    private final AtomicLong intervalNanos;
+
+    TokenBucket(long baseIntervalNanos, int burst, LongSupplier nanoClock) {
+        this.baseIntervalNanos = baseIntervalNanos;
+        this.maxIntervalNanos = baseIntervalNanos * MAX_SLOWDOWN;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.theoreticalArrival = new AtomicLong(nanoClock.getAsLong());
+        this.intervalNanos = new AtomicLong(baseIntervalNanos);
+    }
+
+    /**
+     * Takes a token and returns how long the caller has to wait before using it, in
+     * nanoseconds. Nothing is taken and {@code -1} is returned if the wait would be longer than
+     * {@code maxWaitNanos}.
+     */
+    long reserve(long maxWaitNanos) {
+        while (true) {
+            final long now = nanoClock.getAsLong();
+            final long interval = intervalNanos.get();
+            final long arrival = theoreticalArrival.get();
+            final long start = Math.max(arrival, now);
+            final long wait = Math.max(0, start - tolerance(interval) - now);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, start + interval)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Slows the bucket down after PagerDuty throttled an event. No token is handed out before
+     * {@code retryAfter} elapsed, or before one interval when PagerDuty did not say.
+     */
+    void onThrottled(Duration retryAfter) {
+        final long interval = intervalNanos.updateAndGet(i -> Math.min(maxIntervalNanos, i * 2));
+        final long pause = retryAfter == null ? interval : retryAfter.toNanos();
+        final long resumeAt = nanoClock.getAsLong() + pause + tolerance(interval);
+        theoreticalArrival.accumulateAndGet(resumeAt, Math::max);
+    }
+
+    void onAccepted() {
+        intervalNanos.updateAndGet(
+            i -> i <= baseIntervalNanos
+                ? i
+                : Math.max(baseIntervalNanos, i - Math.max(1, (i - baseIntervalNanos) / 4)));
+    }
+
+    long currentIntervalNanos() {
+        return intervalNanos.get();
+    }
+
+    private long tolerance(long interval) {
+        return interval * (burst - 1);
+    }
+
+    static long intervalNanos(int eventsPerMinute) {
+        return TimeUnit.MINUTES.toNanos(1) / eventsPerMinute;
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves incidents which received no trigger for the quiet period of their notification, for
+ * event definitions which never send a clear signal of their own. The resolves are queued on
+ * the {@link PagerDutyDispatcher} like any other event.
+ *
+ * Deadlines are kept in a hashed timing wheel of one second ticks. Every tracked dedup key has
+ * one small entry, linked into the bucket of its deadline; deadlines beyond one turn of the
+ * wheel wait for the remaining rounds in their bucket. A trigger for a tracked key only moves
+ * the deadline of its entry forward, the entry is moved to its new bucket once its old bucket
+ * comes around. Tracking and refreshing a key are therefore O(1), and each tick only visits one
+ * bucket, whatever the number of keys.
+ */
+@Singleton
+public class AutoResolver extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(AutoResolver.class);
+    private static final int WHEEL_SIZE = 4096;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final long TICK_MILLIS = 1000;
+
+    private final PagerDutyDispatcher dispatcher;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final long startMillis;
+    private final Entry[] wheel = new Entry[WHEEL_SIZE];
+    private final Map<String, Map<String, Entry>> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final Counter resolved;
+    private final Counter untracked;
+    private long tick;
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public AutoResolver(
+        PagerDutyDispatcher dispatcher,
+        @Named(PagerDutyPluginConfiguration.AUTO_RESOLVE_MAX_KEYS) int maxKeys,
+        MetricRegistry metricRegistry) {
+        this(dispatcher, maxKeys, metricRegistry, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    AutoResolver(
+        PagerDutyDispatcher dispatcher,
+        int maxKeys,
+        MetricRegistry metricRegistry,
+        LongSupplier clock) {
+        this.dispatcher = dispatcher;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+        this.resolved = metricRegistry.counter(
+            MetricRegistry.name(AutoResolver.class, "resolved"));
+        this.untracked = metricRegistry.counter(
+            MetricRegistry.name(AutoResolver.class, "untracked"));
+        metricRegistry.register(
+            MetricRegistry.name(AutoResolver.class, "tracked"), (Gauge<Integer>) tracked::get);
+    }
+
+    /**
+     * Starts or extends the quiet period of the incident of a trigger.
+     */
+    public void touch(PagerDutyMessage trigger, long quietMillis) {
+        if (Strings.isNullOrEmpty(trigger.getDedupKey())) {
+            return;
+        }
+        final long deadline = clock.getAsLong() + quietMillis;
+        final Object severity =
+            trigger.getPayload() == null ? null : trigger.getPayload().get("severity");
+        entries
+            .computeIfAbsent(trigger.getRoutingKey(), key -> new ConcurrentHashMap<>())
+            .compute(trigger.getDedupKey(), (key, existing) -> {
+                if (existing != null) {
+                    existing.deadline = deadline;
+                    return existing;
+                }
+                if (tracked.get() >= maxKeys) {
+                    untracked.inc();
+                    return null;
+                }
+                tracked.incrementAndGet();
+                final Entry entry = new Entry(trigger, severity, deadline);
+                synchronized (wheel) {
+                    place(entry);
+                }
+                return entry;
+            });
+    }
+
+    /**
+     * Stops tracking the incident of an event which resolved it.
+     */
+    public void cancel(PagerDutyMessage message) {
+        final Map<String, Entry> keys = entries.get(message.getRoutingKey());
+        if (keys == null || Strings.isNullOrEmpty(message.getDedupKey())) {
+            return;
+        }
+        final Entry entry = keys.remove(message.getDedupKey());
+        if (entry != null) {
+            // Left in its bucket, it is dropped when the bucket comes around.
+            entry.cancelled = true;
+            tracked.decrementAndGet();
+        }
+    }
+
+    /**
+     * Processes every tick up to now and queues the resolves of the incidents whose quiet period
+     * is over.
+     */
+    @VisibleForTesting
+    void advance() {
+        final long now = clock.getAsLong();
+        final List<Entry> due = new ArrayList<>();
+        synchronized (wheel) {
+            final long target = (now - startMillis) / TICK_MILLIS;
+            while (tick < target) {
+                tick++;
+                final int bucket = (int) (tick & WHEEL_MASK);
+                Entry entry = wheel[bucket];
+                wheel[bucket] = null;
+                while (entry != null) {
+                    final Entry next = entry.next;
+                    entry.next = null;
+                    if (entry.cancelled) {
+                        // Dropped.
+                    }
+                    else if (entry.rounds > 0) {
+                        entry.rounds--;
+                        entry.next = wheel[bucket];
+                        wheel[bucket] = entry;
+                    }
+                    else if (entry.deadline > now) {
+                        place(entry);
+                    }
+                    else {
+                        due.add(entry);
+                    }
+                    entry = next;
+                }
+            }
+        }
+        for (Entry entry : due) {
+            expire(entry, now);
+        }
+    }
+
+    @VisibleForTesting
+    int tracked() {
+        return tracked.get();
+    }
+
+    /**
+     * Links the entry into the bucket of its deadline, at least one tick ahead. The caller holds
+     * the wheel lock.
+     */
+    private void place(Entry entry) {
+        final long deadlineTick = Math.max(
+            tick + 1, (entry.deadline - startMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+        entry.rounds = (int) Math.min(Integer.MAX_VALUE, (deadlineTick - tick - 1) / WHEEL_SIZE);
+        final int bucket = (int) (deadlineTick & WHEEL_MASK);
+        entry.next = wheel[bucket];
+        wheel[bucket] = entry;
+    }
+
+    private void expire(Entry entry, long now) {
+        final Map<String, Entry> keys = entries.get(entry.routingKey);
+        if (keys == null) {
+            return;
+        }
+        final boolean[] removed = new boolean[1];
+        keys.computeIfPresent(entry.dedupKey, (key, existing) -> {
+            if (existing != entry) {
+                return existing;
+            }
+            if (existing.deadline > now) {
+                // Refreshed since the tick picked it.
+                synchronized (wheel) {
+                    place(existing);
+                }
+                return existing;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (!removed[0]) {
+            return;
+        }
+        tracked.decrementAndGet();
+        try {
+            dispatcher.dispatch(entry.resolve());
+            resolved.inc();
+        }
+        catch (RuntimeException e) {
+            LOG.warn(
+                "Could not queue the resolve of the quiet PagerDuty incident <{}>: {}",
+                entry.dedupKey,
+                e.getMessage());
+        }
+    }
+
+    @Override
+    protected void startUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-auto-resolve-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.scheduleAtFixedRate(
+            this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void shutDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * A tracked incident. The strings are shared with the notification config and the trigger,
+     * so an entry itself only takes a few dozen bytes.
+     */
+    private static class Entry {
+        private final String routingKey;
+        private final String dedupKey;
+        private final String client;
+        private final String clientUrl;
+        private final Object severity;
+        private volatile long deadline;
+        private volatile boolean cancelled;
+        private int rounds;
+        private Entry next;
+
+        Entry(PagerDutyMessage trigger, Object severity, long deadline) {
+            this.routingKey = trigger.getRoutingKey();
+            this.dedupKey = trigger.getDedupKey();
+            this.client = trigger.getClient();
+            this.clientUrl = trigger.getClientUrl();
+            this.severity = severity;
+            this.deadline = deadline;
+        }
+
+        /**
+         * The resolve keeps the severity of the trigger, so it is queued behind the triggers
+         * of its incident.
+         */
+        PagerDutyMessage resolve() {
+            return new PagerDutyMessage(
+                routingKey,
+                PagerDutyMessage.RESOLVE,
+                dedupKey,
+                client,
+                clientUrl,
+                null,
+                severity == null ? null : Collections.singletonMap("severity", severity));
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.EventDetails;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collapses repeated triggers sharing a dedup key, which PagerDuty would merge into the same
+ * incident anyway.
+ *
+ * The first trigger of a dedup key is sent at once and opens a window. Further triggers within
+ * the window are absorbed; when it closes, a single trigger carrying the latest event and the
+ * number of occurrences with the first and last event timestamps in its {@code custom_details}
+ * is sent in their place. A storm of thousands of events per key costs two requests per window.
+ * An acknowledge or resolve of the incident closes its window early, see {@link #flush}.
+ */
+@Singleton
+public class EventCoalescer {
+    private static final Logger LOG = LoggerFactory.getLogger(EventCoalescer.class);
+
+    private final long windowMillis;
+    private final Counter coalesced;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+    private Consumer<PagerDutyMessage> sink;
+
+    @Inject
+    public EventCoalescer(
+        @Named(PagerDutyPluginConfiguration.COALESCE_WINDOW) Duration window,
+        MetricRegistry metricRegistry) {
+        this(window.toMilliseconds(), metricRegistry);
+    }
+
+    @VisibleForTesting
+    EventCoalescer(long windowMillis, MetricRegistry metricRegistry) {
+        this.windowMillis = windowMillis;
+        this.coalesced = metricRegistry.counter(
+            MetricRegistry.name(EventCoalescer.class, "coalesced"));
+    }
+
+    /**
+     * Starts closing windows, their summary triggers are handed to the sink.
+     */
+    public synchronized void start(Consumer<PagerDutyMessage> sink) {
+        this.sink = sink;
+        if (windowMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                    .setNameFormat("pagerduty-coalesce-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+    }
+
+    /**
+     * Stops the scheduler and closes every open window right away.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        for (String key : windows.keySet()) {
+            close(key);
+        }
+    }
+
+    /**
+     * @return true if the message was absorbed by an open window and must not be sent now
+     */
+    public boolean absorb(PagerDutyMessage message) {
+        final ScheduledExecutorService currentScheduler = scheduler;
+        if (currentScheduler == null
+            || Strings.isNullOrEmpty(message.getDedupKey())
+            || !PagerDutyMessage.TRIGGER.equals(message.getEventAction())) {
+            return false;
+        }
+
+        final String key = message.getRoutingKey() + '\n' + message.getDedupKey();
+        // Only the trigger opening the window may see it as new, a racing trigger could have
+        // been added by the time compute returns.
+        final Window[] opened = new Window[1];
+        windows.compute(key, (k, existing) -> {
+            if (existing == null) {
+                opened[0] = new Window(message);
+                return opened[0];
+            }
+            return existing.add(message);
+        });
+        if (opened[0] == null) {
+            coalesced.inc();
+            return true;
+        }
+        try {
+            currentScheduler.schedule(
+                () -> {
+                    if (windows.remove(key, opened[0])) {
+                        send(opened[0]);
+                    }
+                },
+                windowMillis,
+                TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // Stopped in the meantime, nothing will close the window.
+            windows.remove(key, opened[0]);
+        }
+        return false;
+    }
+
+    /**
+     * Closes the window of the incident an acknowledge or resolve is about to be sent for, so
+     * that its summary is handed to the sink first instead of reopening the incident afterwards.
+     */
+    public void flush(PagerDutyMessage message) {
+        if (Strings.isNullOrEmpty(message.getDedupKey())
+            || PagerDutyMessage.TRIGGER.equals(message.getEventAction())) {
+            return;
+        }
+        close(message.getRoutingKey() + '\n' + message.getDedupKey());
+    }
+
+    @VisibleForTesting
+    void close(String key) {
+        final Window window = windows.remove(key);
+        if (window != null) {
+            send(window);
+        }
+    }
+
+    private void send(Window window) {
+        if (window.occurrences == 1) {
+            return;
+        }
+        try {
+            sink.accept(window.summary());
+        }
+        catch (RuntimeException e) {
+            LOG.warn(
+                "Could not send the summary of {} coalesced PagerDuty events: {}",
+                window.occurrences - 1,
+                e.getMessage());
+        }
+    }
+
+    private static class Window {
+        private final Object firstSeen;
+        private PagerDutyMessage latest;
+        private int occurrences;
+
+        Window(PagerDutyMessage first) {
+            this.firstSeen = timestamp(first);
+            this.latest = first;
+            this.occurrences = 1;
+        }
+
+        Window add(PagerDutyMessage message) {
+            latest = message;
+            occurrences++;
+            return this;
+        }
+
+        PagerDutyMessage summary() {
+            final Map<String, Object> payload = latest.getPayload() == null
+                ? new HashMap<>()
+                : new HashMap<>(latest.getPayload());
+            final Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("occurrences", occurrences);
+            counts.put("first_seen", firstSeen);
+            counts.put("last_seen", timestamp(latest));
+            final Object existing = payload.get("custom_details");
+            if (existing instanceof EventDetails) {
+                payload.put("custom_details", ((EventDetails) existing).plus(counts));
+            }
+            else {
+                final Map<String, Object> details = new LinkedHashMap<>();
+                if (existing instanceof Map) {
+                    ((Map<?, ?>) existing).forEach((k, v) -> details.put(String.valueOf(k), v));
+                }
+                details.putAll(counts);
+                payload.put("custom_details", details);
+            }
+
+            return new PagerDutyMessage(
+                latest.getRoutingKey(),
+                latest.getEventAction(),
+                latest.getDedupKey(),
+                latest.getClient(),
+                latest.getClientUrl(),
+                latest.getLinks(),
+                payload);
+        }
+
+        private static Object timestamp(PagerDutyMessage message) {
+            return message.getPayload() == null ? null : message.getPayload().get("timestamp");
+        }
+    }
+}
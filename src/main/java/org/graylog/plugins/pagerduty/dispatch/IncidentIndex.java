@@ -0,0 +1,290 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongSupplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+
+/**
+ * In-memory state of the incidents this node opened, acknowledged or resolved, by routing key
+ * and dedup key. Events which would not change the state of their incident are suppressed:
+ * triggers of open or acknowledged incidents, acknowledgements of acknowledged or resolved
+ * incidents and resolves of resolved incidents. Events without a dedup key are never
+ * suppressed, PagerDuty opens a new incident for each of them.
+ *
+ * The state is recorded when the event is admitted, so concurrent duplicates are suppressed
+ * too, and confirmed once PagerDuty accepts the event. For events sent without a dedup key, the
+ * key PagerDuty assigned and returned is recorded instead. Events
+ * which are dropped or fail for good are forgotten again, so the next event is sent. An entry
+ * expires after the time to live since it was last recorded or confirmed; suppressed events do
+ * not extend it, so an incident resolved by hand in PagerDuty is triggered again at the latest
+ * once its entry expired. A time to live of zero, the default, disables the index.
+ *
+ * Entries are 64-bit fingerprints in fixed arrays, 13 bytes each, split into segments with a
+ * lock each. A key lives in a window of a few slots after its hash; when the window is full,
+ * the entry closest to its expiry is evicted. Every operation scans one window, whatever the
+ * number of incidents.
+ */
+@Singleton
+public class IncidentIndex {
+    static final byte OPEN = 1;
+    static final byte ACKNOWLEDGED = 2;
+    static final byte RESOLVED = 3;
+
+    private static final int SEGMENTS = 16;
+    private static final int WINDOW = 8;
+    private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final long epochMillis;
+    private final Segment[] segments;
+    private final Counter suppressed;
+    private final Counter evicted;
+
+    @Inject
+    public IncidentIndex(
+        @Named(PagerDutyPluginConfiguration.INCIDENT_INDEX_SIZE) int size,
+        @Named(PagerDutyPluginConfiguration.INCIDENT_TTL) Duration ttl,
+        MetricRegistry metricRegistry) {
+        this(size, ttl.toMilliseconds(), metricRegistry, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    IncidentIndex(int size, long ttlMillis, MetricRegistry metricRegistry, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.epochMillis = clock.getAsLong();
+        final int slots = ttlMillis > 0 ? slotsPerSegment(size) : 0;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(slots);
+        }
+        this.suppressed = metricRegistry.counter(
+            MetricRegistry.name(IncidentIndex.class, "suppressed"));
+        this.evicted = metricRegistry.counter(
+            MetricRegistry.name(IncidentIndex.class, "evicted"));
+    }
+
+    private static int slotsPerSegment(int size) {
+        final int wanted = Math.max(WINDOW, (size + SEGMENTS - 1) / SEGMENTS);
+        return Integer.highestOneBit(wanted - 1) << 1;
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Records the state the event moves its incident to.
+     *
+     * @return false if the event would not change the state of its incident and must not be sent
+     */
+    public boolean admit(PagerDutyMessage message) {
+        final byte target = stateOf(message, message.getDedupKey());
+        if (target == 0) {
+            return true;
+        }
+        final long fingerprint = fingerprint(message.getRoutingKey(), message.getDedupKey());
+        final Segment segment = segment(fingerprint);
+        final int now = now();
+        synchronized (segment) {
+            final int slot = segment.find(fingerprint, now);
+            if (slot >= 0 && isRedundant(segment.states[slot], target)) {
+                suppressed.inc();
+                return false;
+            }
+            put(segment, slot, fingerprint, target, now);
+        }
+        return true;
+    }
+
+    /**
+     * Confirms the state of an event PagerDuty accepted and starts the time to live of the entry
+     * over.
+     */
+    public void confirm(PagerDutyMessage message, PagerDutyResponse response) {
+        final String dedupKey = Strings.isNullOrEmpty(message.getDedupKey())
+            ? response.getDedupKey()
+            : message.getDedupKey();
+        final byte target = stateOf(message, dedupKey);
+        if (target == 0) {
+            return;
+        }
+        final long fingerprint = fingerprint(message.getRoutingKey(), dedupKey);
+        final Segment segment = segment(fingerprint);
+        final int now = now();
+        synchronized (segment) {
+            put(segment, segment.find(fingerprint, now), fingerprint, target, now);
+        }
+    }
+
+    /**
+     * Forgets the incident of an event which was not sent, so the next event is.
+     */
+    public void forget(PagerDutyMessage message) {
+        if (stateOf(message, message.getDedupKey()) == 0) {
+            return;
+        }
+        final long fingerprint = fingerprint(message.getRoutingKey(), message.getDedupKey());
+        final Segment segment = segment(fingerprint);
+        synchronized (segment) {
+            final int slot = segment.find(fingerprint, now());
+            if (slot >= 0) {
+                segment.fingerprints[slot] = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the recorded state of the incident, or 0 if it is unknown or expired
+     */
+    @VisibleForTesting
+    byte state(String routingKey, String dedupKey) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        final long fingerprint = fingerprint(routingKey, dedupKey);
+        final Segment segment = segment(fingerprint);
+        synchronized (segment) {
+            final int slot = segment.find(fingerprint, now());
+            return slot < 0 ? 0 : segment.states[slot];
+        }
+    }
+
+    private byte stateOf(PagerDutyMessage message, String dedupKey) {
+        if (ttlMillis <= 0 || Strings.isNullOrEmpty(dedupKey)) {
+            return 0;
+        }
+        final String action = message.getEventAction();
+        if (PagerDutyMessage.TRIGGER.equals(action)) {
+            return OPEN;
+        }
+        if (PagerDutyMessage.ACKNOWLEDGE.equals(action)) {
+            return ACKNOWLEDGED;
+        }
+        return PagerDutyMessage.RESOLVE.equals(action) ? RESOLVED : 0;
+    }
+
+    private static boolean isRedundant(byte current, byte target) {
+        switch (target) {
+            case OPEN:
+                return current == OPEN || current == ACKNOWLEDGED;
+            case ACKNOWLEDGED:
+                return current == ACKNOWLEDGED || current == RESOLVED;
+            default:
+                return current == RESOLVED;
+        }
+    }
+
+    private void put(Segment segment, int slot, long fingerprint, byte state, int now) {
+        int target = slot >= 0 ? slot : segment.free(fingerprint, now);
+        if (target < 0) {
+            target = segment.oldest(fingerprint);
+            evicted.inc();
+        }
+        segment.fingerprints[target] = fingerprint;
+        segment.states[target] = state;
+        segment.expiries[target] =
+            (int) Math.min(Integer.MAX_VALUE, now + (ttlMillis + 999) / 1000);
+    }
+
+    private Segment segment(long fingerprint) {
+        return segments[(int) (fingerprint >>> 60)];
+    }
+
+    /**
+     * Seconds since the index was created, which keeps expiries in an int.
+     */
+    private int now() {
+        return (int) ((clock.getAsLong() - epochMillis) / 1000);
+    }
+
+    private static long fingerprint(String routingKey, String dedupKey) {
+        final long fingerprint = FINGERPRINT.newHasher()
+            .putString(Strings.nullToEmpty(routingKey), StandardCharsets.UTF_8)
+            .putByte((byte) 0)
+            .putString(dedupKey, StandardCharsets.UTF_8)
+            .hash()
+            .asLong();
+        // 0 marks a free slot.
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static class Segment {
+        private final long[] fingerprints;
+        private final int[] expiries;
+        private final byte[] states;
+        private final int mask;
+
+        Segment(int slots) {
+            this.fingerprints = new long[slots];
+            this.expiries = new int[slots];
+            this.states = new byte[slots];
+            this.mask = slots - 1;
+        }
+
+        int find(long fingerprint, int now) {
+            final int start = (int) fingerprint & mask;
+            for (int i = 0; i < WINDOW; i++) {
+                final int slot = (start + i) & mask;
+                if (fingerprints[slot] == fingerprint && expiries[slot] > now) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int free(long fingerprint, int now) {
+            final int start = (int) fingerprint & mask;
+            for (int i = 0; i < WINDOW; i++) {
+                final int slot = (start + i) & mask;
+                if (fingerprints[slot] == 0 || expiries[slot] <= now) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int oldest(long fingerprint) {
+            final int start = (int) fingerprint & mask;
+            int oldest = start;
+            for (int i = 1; i < WINDOW; i++) {
+                final int slot = (start + i) & mask;
+                if (expiries[slot] < expiries[oldest]) {
+                    oldest = slot;
+                }
+            }
+            return oldest;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Overload policy of the dispatch queue. While PagerDuty is slow or the rate limits are
+ * exhausted, the least important events are dropped first so the queue keeps room for the
+ * pages that matter:
+ *
+ * <ul>
+ *     <li>info events are dropped once the queue is filled up to the info watermark,</li>
+ *     <li>warning events once it is filled up to the warning watermark,</li>
+ *     <li>queued info and warning events are dropped instead of sent once they waited longer
+ *     than the maximum age,</li>
+ *     <li>critical and error events are never dropped, they are only rejected when the queue
+ *     is full,</li>
+ *     <li>acknowledgements and resolves are never dropped either, whatever their severity.</li>
+ * </ul>
+ *
+ * Watermarks are percentages of the queue size. Every dropped event is counted in total and
+ * for each of its source streams.
+ */
+@Singleton
+public class LoadShedder {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadShedder.class);
+
+    private final int infoWatermark;
+    private final int warningWatermark;
+    private final long maxAgeNanos;
+    private final MetricRegistry metricRegistry;
+    private final Counter shed;
+
+    @Inject
+    public LoadShedder(
+        @Named(PagerDutyPluginConfiguration.SHED_INFO_WATERMARK) int infoWatermark,
+        @Named(PagerDutyPluginConfiguration.SHED_WARNING_WATERMARK) int warningWatermark,
+        @Named(PagerDutyPluginConfiguration.SHED_MAX_AGE) Duration maxAge,
+        MetricRegistry metricRegistry) {
+        this(infoWatermark, warningWatermark, maxAge.toMilliseconds(), metricRegistry);
+    }
+
+    @VisibleForTesting
+    LoadShedder(
+        int infoWatermark,
+        int warningWatermark,
+        long maxAgeMillis,
+        MetricRegistry metricRegistry) {
+        this.infoWatermark = infoWatermark;
+        this.warningWatermark = warningWatermark;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.metricRegistry = metricRegistry;
+        this.shed = metricRegistry.counter(MetricRegistry.name(LoadShedder.class, "shed"));
+    }
+
+    /**
+     * @return true if the event must be dropped instead of queued
+     */
+    public boolean shedOnArrival(
+        PagerDutyMessage message, Set<String> streams, int depth, int capacity) {
+        final int severityClass = SeverityQueue.severityClass(message);
+        if (severityClass == SeverityQueue.HIGH
+            || !PagerDutyMessage.TRIGGER.equals(message.getEventAction())) {
+            return false;
+        }
+        final int watermark = severityClass == SeverityQueue.LOW ? infoWatermark : warningWatermark;
+        if ((long) depth * 100 < (long) capacity * watermark) {
+            return false;
+        }
+        record(message, streams, "the dispatch queue is above its watermark");
+        return true;
+    }
+
+    /**
+     * @return true if the queued event waited too long and must be dropped instead of sent
+     */
+    public boolean shedOnDeparture(OutboundEvent event, long waitedNanos) {
+        if (maxAgeNanos <= 0
+            || waitedNanos < maxAgeNanos
+            || SeverityQueue.severityClass(event.getMessage()) == SeverityQueue.HIGH
+            || !PagerDutyMessage.TRIGGER.equals(event.getMessage().getEventAction())) {
+            return false;
+        }
+        record(event.getMessage(), event.getStreams(), "it waited too long in the queue");
+        return true;
+    }
+
+    private void record(PagerDutyMessage message, Set<String> streams, String reason) {
+        shed.inc();
+        for (String stream : streams) {
+            metricRegistry.counter(MetricRegistry.name(LoadShedder.class, "shed", stream)).inc();
+        }
+        LOG.debug("Dropping PagerDuty event <{}> because {}.", message.getDedupKey(), reason);
+    }
+}
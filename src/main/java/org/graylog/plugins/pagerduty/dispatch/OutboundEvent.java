@@ -0,0 +1,80 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import java.util.Collections;
+import java.util.Set;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+
+/**
+ * An event waiting in the dispatch queue.
+ */
+public class OutboundEvent {
+    private final PagerDutyMessage message;
+    private final byte[] payload;
+    private final long enqueuedNanos;
+    private final long journalOffset;
+    private final Set<String> streams;
+
+    public OutboundEvent(PagerDutyMessage message, long enqueuedNanos, long journalOffset) {
+        this(message, null, enqueuedNanos, journalOffset, Collections.emptySet());
+    }
+
+    public OutboundEvent(
+        PagerDutyMessage message,
+        byte[] payload,
+        long enqueuedNanos,
+        long journalOffset,
+        Set<String> streams) {
+        this.message = message;
+        this.payload = payload;
+        this.enqueuedNanos = enqueuedNanos;
+        this.journalOffset = journalOffset;
+        this.streams = streams;
+    }
+
+    public PagerDutyMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * The request body, if the event was already serialized for the journal, or {@code null}.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /**
+     * Offset to acknowledge in the {@link OutboxJournal} once the event is delivered.
+     */
+    public long getJournalOffset() {
+        return journalOffset;
+    }
+
+    /**
+     * Source streams of the Graylog event, empty for summaries, digests and replayed events.
+     */
+    public Set<String> getStreams() {
+        return streams;
+    }
+}
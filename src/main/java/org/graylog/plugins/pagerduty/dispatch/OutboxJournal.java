@@ -0,0 +1,388 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only outbox of serialized events, so pages queued for PagerDuty survive a restart of
+ * the node. Delivery becomes at-least-once: events are replayed until they are acknowledged.
+ *
+ * Events are appended to fixed size, memory-mapped segment files. A record is a length, a CRC32
+ * and the payload; the length is written last, so a record torn by a crash is detected and
+ * dropped on the next start. Offsets are consecutive record numbers. Appends only copy into the
+ * mapped segment, a background task forces dirty pages to disk and persists the lowest offset
+ * still awaiting acknowledgement once per flush interval. Segments that lie entirely below that
+ * checkpoint are deleted.
+ */
+@Singleton
+public class OutboxJournal {
+    public static final long NOT_JOURNALED = -1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxJournal.class);
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long flushIntervalMillis;
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    // Base offset to file of every segment, the last one is the active segment.
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+    // Serializes flushes, so a flush returns only once the pages dirtied before it are forced.
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+    private MappedByteBuffer active;
+    private long nextOffset;
+    private long checkpoint;
+    private boolean dirty;
+
+    @Inject
+    public OutboxJournal(
+        @Named(PagerDutyPluginConfiguration.JOURNAL_ENABLED) boolean enabled,
+        @Named(PagerDutyPluginConfiguration.JOURNAL_DIR) Path directory,
+        @Named(PagerDutyPluginConfiguration.JOURNAL_SEGMENT_SIZE) Size segmentSize,
+        @Named(PagerDutyPluginConfiguration.JOURNAL_FLUSH_INTERVAL) Duration flushInterval) {
+        this(
+            enabled,
+            directory,
+            Ints.checkedCast(segmentSize.toBytes()),
+            flushInterval.toMilliseconds());
+    }
+
+    @VisibleForTesting
+    OutboxJournal(boolean enabled, Path directory, int segmentSize, long flushIntervalMillis) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens the journal and starts flushing it in the background.
+     *
+     * @return the payloads that were never acknowledged, by offset
+     */
+    public synchronized SortedMap<Long, byte[]> open() throws IOException {
+        Files.createDirectories(directory);
+        checkpoint = readCheckpoint();
+        try (DirectoryStream<Path> stream =
+                 Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.put(baseOffset(path), path);
+            }
+        }
+
+        final SortedMap<Long, byte[]> unacknowledged = new TreeMap<>();
+        nextOffset = checkpoint;
+        MappedByteBuffer last = null;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            last = map(segment.getValue());
+            nextOffset = segment.getKey();
+            byte[] payload;
+            while ((payload = read(last)) != null) {
+                if (nextOffset >= checkpoint) {
+                    unacknowledged.put(nextOffset, payload);
+                    pending.add(nextOffset);
+                }
+                nextOffset++;
+            }
+        }
+        nextOffset = Math.max(nextOffset, checkpoint);
+
+        if (last != null && last.capacity() == segmentSize) {
+            clearTail(last);
+            active = last;
+        }
+        else {
+            roll();
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-journal-flush-%d")
+                .setDaemon(true)
+                .build());
+        flusher.scheduleWithFixedDelay(
+            this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (!unacknowledged.isEmpty()) {
+            LOG.info("Replaying {} unacknowledged PagerDuty events.", unacknowledged.size());
+        }
+        return unacknowledged;
+    }
+
+    /**
+     * Appends the payload to the active segment.
+     *
+     * @return the offset to acknowledge once the event is delivered, or {@link #NOT_JOURNALED}
+     *         if the journal is disabled
+     */
+    public synchronized long append(byte[] payload) {
+        if (!enabled) {
+            return NOT_JOURNALED;
+        }
+        if (active == null) {
+            throw new IllegalStateException("The PagerDuty journal is not open.");
+        }
+        final int recordSize = HEADER_BYTES + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException(
+                "An event of " + payload.length + " bytes does not fit into a journal segment.");
+        }
+        try {
+            if (active.remaining() < recordSize) {
+                active.force();
+                roll();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not roll the PagerDuty journal segment.", e);
+        }
+
+        final int position = active.position();
+        active.putInt(position + 4, crc(payload));
+        // Cast for Java 8, newer JDKs return the subclass and break binaries built with them.
+        ((Buffer) active).position(position + HEADER_BYTES);
+        active.put(payload);
+        // The length marks the record as complete, so it is written last.
+        active.putInt(position, payload.length);
+        dirty = true;
+
+        final long offset = nextOffset++;
+        pending.add(offset);
+        return offset;
+    }
+
+    /**
+     * Marks the event as delivered, it is not replayed once the next flush persisted that.
+     */
+    public void acknowledge(long offset) {
+        if (offset != NOT_JOURNALED) {
+            pending.remove(offset);
+        }
+    }
+
+    /**
+     * Forces appended records to disk, persists the checkpoint and deletes segments that only
+     * hold acknowledged events. Appends go on while the pages are forced.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            final MappedByteBuffer dirtySegment;
+            synchronized (this) {
+                if (active == null) {
+                    return;
+                }
+                dirtySegment = dirty ? active : null;
+                dirty = false;
+            }
+            if (dirtySegment != null) {
+                try {
+                    dirtySegment.force();
+                }
+                catch (RuntimeException e) {
+                    synchronized (this) {
+                        dirty = true;
+                    }
+                    throw e;
+                }
+            }
+            persistCheckpoint();
+        }
+    }
+
+    private synchronized void persistCheckpoint() throws IOException {
+        if (active == null) {
+            return;
+        }
+        final Long oldestPending = pending.isEmpty() ? null : pending.first();
+        final long watermark = oldestPending == null ? nextOffset : oldestPending;
+        if (watermark != checkpoint) {
+            writeCheckpoint(watermark);
+            checkpoint = watermark;
+        }
+
+        final Iterator<Map.Entry<Long, Path>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Long, Path> segment = it.next();
+            final Long nextBase = segments.higherKey(segment.getKey());
+            if (nextBase == null || nextBase > watermark) {
+                break;
+            }
+            Files.deleteIfExists(segment.getValue());
+            it.remove();
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            if (flusher != null) {
+                flusher.shutdownNow();
+                flusher = null;
+            }
+        }
+        flush();
+        synchronized (this) {
+            active = null;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.warn("Could not flush the PagerDuty journal.", e);
+        }
+    }
+
+    private void roll() throws IOException {
+        final Path path = directory.resolve(String.format("%020d%s", nextOffset, SEGMENT_SUFFIX));
+        // A segment already named after the next offset holds no records and can be reused.
+        try (FileChannel channel = FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            active = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segments.put(nextOffset, path);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel =
+                 FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads the record at the position of the buffer and moves past it, or returns null at the
+     * end of the written records or at a torn record.
+     */
+    private static byte[] read(ByteBuffer buffer) {
+        final int position = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        final int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        ((Buffer) buffer).position(position + HEADER_BYTES);
+        buffer.get(payload);
+        if (crc(payload) != buffer.getInt(position + 4)) {
+            ((Buffer) buffer).position(position);
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * Zeroes whatever a torn record left behind the last complete one, so new records are never
+     * followed by stale bytes.
+     */
+    private static void clearTail(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(buffer.position()) == 0) {
+            return;
+        }
+        LOG.warn("Dropping a torn record at the end of the PagerDuty journal.");
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0L;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(path)).getLong();
+    }
+
+    private void writeCheckpoint(long offset) throws IOException {
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        final Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, offset);
+        try (FileChannel channel = FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+            channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(
+            temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long baseOffset(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int crc(byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,536 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.client.Delivery;
+import org.graylog.plugins.pagerduty.client.EventSender;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue between the Graylog notification jobs and PagerDuty. Jobs only enqueue the
+ * event they built, dedicated workers send it, so a slow PagerDuty endpoint no longer stalls
+ * other notifications on the node. When the queue is full the event is rejected and the
+ * notification fails, leaving it to Graylog to run it again later.
+ *
+ * The queue is striped into lanes by routing key and dedup key, each drained by a single
+ * worker which hands the events to the {@link EventSender} without waiting for them. While an
+ * event is in flight, retries included, later events of its incident are parked and sent one
+ * after the other as their predecessor becomes final. Events of one incident therefore reach
+ * PagerDuty in the order they were queued, while an incident which is being retried does not
+ * hold up the other incidents of its lane. Events without a dedup key each open their own
+ * incident and are spread over the lanes in turn. Parked and in flight events keep their slot
+ * in the queue until their delivery is final.
+ *
+ * In virtual mode, available on Java 21 and later, every lane is drained by a virtual thread
+ * instead, so thousands of lanes waiting on slow requests no longer need thousands of platform
+ * threads. The pooled transport then sends every request on a virtual thread as well. Older
+ * JVMs fall back to platform workers.
+ *
+ * Within a lane, critical and error events are sent before warning and info events, see
+ * {@link SeverityQueue}. Events of one incident normally share a severity and stay in order.
+ *
+ * Under overload, the {@link LoadShedder} drops info and warning events before they take up
+ * room needed by critical ones.
+ *
+ * Repeated triggers of an incident are first collapsed by the {@link EventCoalescer}. Of the
+ * remaining events, those which would not change the state of their incident, such as triggers
+ * of an incident which is already open, are suppressed by the {@link IncidentIndex}. Coalescing
+ * summaries and storm digests stand for events which already passed both and are queued as
+ * they are. With the
+ * {@link OutboxJournal} enabled, every queued event is journaled first and acknowledged once
+ * its delivery is final, events left over from the last run are queued again on start.
+ *
+ * Graylog stops the services of the plugin in no particular order, so the transport and the
+ * {@link org.graylog.plugins.pagerduty.client.RetryScheduler} may be gone while the queue is
+ * drained. Deliveries failing while the dispatcher stops are left in the journal for the next
+ * start, and events queued once the queue is closed, such as the last storm digest, are
+ * rejected.
+ */
+@Singleton
+public class PagerDutyDispatcher extends AbstractIdleService {
+    public static final String PLATFORM_MODE = "platform";
+    public static final String VIRTUAL_MODE = "virtual";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PagerDutyDispatcher.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader MESSAGE_READER =
+        OBJECT_MAPPER.readerFor(PagerDutyMessage.class);
+
+    private final int queueSize;
+    private final Semaphore freeSlots;
+    private final List<SeverityQueue> lanes;
+    private final AtomicInteger nextLane = new AtomicInteger();
+    // Events waiting for an earlier event of their incident, by incident; guarded by itself.
+    private final Map<String, Deque<OutboundEvent>> parked = new HashMap<>();
+    private final boolean virtualMode;
+    private final EventSender sender;
+    private final EventCoalescer coalescer;
+    private final LoadShedder shedder;
+    private final IncidentIndex incidents;
+    private final OutboxJournal journal;
+    private final LongSupplier nanoClock;
+    private final Timer waitTime;
+    private final Counter rejected;
+    private final Counter failed;
+    private ExecutorService executor;
+
+    @Inject
+    public PagerDutyDispatcher(
+        @Named(PagerDutyPluginConfiguration.DISPATCH_QUEUE_SIZE) int queueSize,
+        @Named(PagerDutyPluginConfiguration.DISPATCH_WORKERS) int workers,
+        @Named(PagerDutyPluginConfiguration.DISPATCH_MODE) String mode,
+        @Named(PagerDutyPluginConfiguration.VIRTUAL_MAX_CONCURRENCY) int virtualMaxConcurrency,
+        @Named(PagerDutyPluginConfiguration.DISPATCH_STARVATION_LIMIT) Duration starvationLimit,
+        EventSender sender,
+        EventCoalescer coalescer,
+        LoadShedder shedder,
+        IncidentIndex incidents,
+        OutboxJournal journal,
+        MetricRegistry metricRegistry) {
+        this(
+            queueSize,
+            workers,
+            mode,
+            virtualMaxConcurrency,
+            starvationLimit.toMilliseconds(),
+            sender,
+            coalescer,
+            shedder,
+            incidents,
+            journal,
+            metricRegistry,
+            System::nanoTime);
+    }
+
+    @VisibleForTesting
+    PagerDutyDispatcher(
+        int queueSize,
+        int workers,
+        String mode,
+        int virtualMaxConcurrency,
+        long starvationLimitMillis,
+        EventSender sender,
+        EventCoalescer coalescer,
+        LoadShedder shedder,
+        IncidentIndex incidents,
+        OutboxJournal journal,
+        MetricRegistry metricRegistry,
+        LongSupplier nanoClock) {
+        final String normalizedMode = mode.trim().toLowerCase(Locale.ENGLISH);
+        if (!PLATFORM_MODE.equals(normalizedMode) && !VIRTUAL_MODE.equals(normalizedMode)) {
+            throw new IllegalArgumentException("Unknown PagerDuty dispatch mode <" + mode
+                + ">, use " + PLATFORM_MODE + " or " + VIRTUAL_MODE + ".");
+        }
+        this.virtualMode = VIRTUAL_MODE.equals(normalizedMode) && VirtualThreads.isAvailable();
+        if (VIRTUAL_MODE.equals(normalizedMode) && !virtualMode) {
+            LOG.warn(
+                "Virtual threads need Java 21 or later, falling back to {} dispatch workers.",
+                workers);
+        }
+        this.queueSize = queueSize;
+        this.freeSlots = new Semaphore(queueSize);
+        final int laneCount = virtualMode ? virtualMaxConcurrency : workers;
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            // Bounded by the free slots shared by all lanes, a busy lane can use all of them.
+            lanes.add(new SeverityQueue(
+                TimeUnit.MILLISECONDS.toNanos(starvationLimitMillis), nanoClock));
+        }
+        this.sender = sender;
+        this.coalescer = coalescer;
+        this.shedder = shedder;
+        this.incidents = incidents;
+        this.journal = journal;
+        this.nanoClock = nanoClock;
+        this.waitTime = metricRegistry.timer(
+            MetricRegistry.name(PagerDutyDispatcher.class, "wait-time"));
+        this.rejected = metricRegistry.counter(
+            MetricRegistry.name(PagerDutyDispatcher.class, "rejected"));
+        this.failed = metricRegistry.counter(
+            MetricRegistry.name(PagerDutyDispatcher.class, "failed"));
+        metricRegistry.register(
+            MetricRegistry.name(PagerDutyDispatcher.class, "queue-depth"),
+            (Gauge<Integer>) this::depth);
+    }
+
+    /**
+     * Queues an event which does not belong to any stream, see
+     * {@link #dispatch(PagerDutyMessage, Set)}.
+     */
+    public void dispatch(PagerDutyMessage message) {
+        dispatch(message, Collections.emptySet());
+    }
+
+    /**
+     * Queues the event for sending and returns at once, unless it is absorbed by an open
+     * coalescing window, does not change the state of its incident or is dropped by the
+     * {@link LoadShedder}. An acknowledge or resolve closes the coalescing window of its incident
+     * first, so the summary of the window is queued ahead of it.
+     *
+     * @param streams source streams of the event, to count dropped events by
+     * @throws IllegalStateException if the queue is full
+     */
+    public void dispatch(PagerDutyMessage message, Set<String> streams) {
+        coalescer.flush(message);
+        if (coalescer.absorb(message) || !incidents.admit(message)) {
+            return;
+        }
+        enqueue(message, streams);
+    }
+
+    /**
+     * Queues a summary of events which were already dispatched, such as a storm digest, past the
+     * coalescer and the incident index.
+     *
+     * @throws IllegalStateException if the queue is full
+     */
+    void dispatchSummary(PagerDutyMessage summary) {
+        enqueue(summary, Collections.emptySet());
+    }
+
+    private void enqueue(PagerDutyMessage message, Set<String> streams) {
+        if (shedder.shedOnArrival(message, streams, depth(), queueSize)) {
+            incidents.forget(message);
+            return;
+        }
+        if (!freeSlots.tryAcquire()) {
+            rejected.inc();
+            incidents.forget(message);
+            throw new IllegalStateException(
+                "The PagerDuty dispatch queue is full, try again later.");
+        }
+        // Journaled events are serialized once, for the journal and the request alike.
+        final byte[] payload;
+        final long offset;
+        try {
+            payload = journal.isEnabled() ? sender.serialize(message) : null;
+            offset = payload != null ? journal.append(payload) : OutboxJournal.NOT_JOURNALED;
+        }
+        catch (RuntimeException e) {
+            freeSlots.release();
+            incidents.forget(message);
+            throw e;
+        }
+        if (!lanes.get(laneOf(message))
+            .add(new OutboundEvent(message, payload, nanoClock.getAsLong(), offset, streams))) {
+            freeSlots.release();
+            incidents.forget(message);
+            journal.acknowledge(offset);
+            throw new IllegalStateException("The PagerDuty dispatcher is shut down.");
+        }
+    }
+
+    @VisibleForTesting
+    int depth() {
+        return queueSize - freeSlots.availablePermits();
+    }
+
+    @VisibleForTesting
+    int laneOf(PagerDutyMessage message) {
+        final String dedupKey = message.getDedupKey();
+        if (dedupKey == null || dedupKey.isEmpty()) {
+            return Math.floorMod(nextLane.getAndIncrement(), lanes.size());
+        }
+        return Math.floorMod(Objects.hash(message.getRoutingKey(), dedupKey), lanes.size());
+    }
+
+    @Override
+    protected void startUp() throws IOException {
+        final SortedMap<Long, byte[]> unacknowledged =
+            journal.isEnabled() ? journal.open() : Collections.emptySortedMap();
+
+        executor = virtualMode
+            ? VirtualThreads.newThreadPerTaskExecutor("pagerduty-dispatch-").orElse(null)
+            : null;
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(
+                unacknowledged.isEmpty() ? lanes.size() : lanes.size() + 1,
+                new ThreadFactoryBuilder()
+                    .setNameFormat("pagerduty-dispatch-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        for (SeverityQueue lane : lanes) {
+            executor.execute(() -> work(lane));
+        }
+        coalescer.start(this::dispatchSummary);
+        if (!unacknowledged.isEmpty()) {
+            executor.execute(() -> replay(unacknowledged));
+        }
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        // Summaries of open windows are queued, then workers drain what is left before they exit
+        // and the deliveries in flight become final, which hands every slot back.
+        coalescer.stop();
+        for (SeverityQueue lane : lanes) {
+            lane.close();
+        }
+        executor.shutdown();
+        final long deadline =
+            System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        final boolean drained =
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                && freeSlots.tryAcquire(
+                    queueSize, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (drained) {
+            freeSlots.release(queueSize);
+        }
+        else {
+            executor.shutdownNow();
+            if (journal.isEnabled()) {
+                LOG.info(
+                    "{} queued or in flight PagerDuty events are replayed on the next start.",
+                    depth());
+            }
+            else {
+                LOG.warn("Dropping {} queued or in flight PagerDuty events on shutdown.", depth());
+            }
+        }
+        if (journal.isEnabled()) {
+            journal.close();
+        }
+    }
+
+    private void replay(SortedMap<Long, byte[]> unacknowledged) {
+        for (Map.Entry<Long, byte[]> record : unacknowledged.entrySet()) {
+            final PagerDutyMessage message;
+            try {
+                message = MESSAGE_READER.readValue(record.getValue());
+            }
+            catch (IOException e) {
+                LOG.warn("Skipping unreadable PagerDuty event in the journal.", e);
+                journal.acknowledge(record.getKey());
+                continue;
+            }
+            try {
+                freeSlots.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            final OutboundEvent event = new OutboundEvent(
+                message,
+                record.getValue(),
+                nanoClock.getAsLong(),
+                record.getKey(),
+                Collections.emptySet());
+            if (!lanes.get(laneOf(message)).add(event)) {
+                // Shut down while replaying, the rest stays in the journal.
+                freeSlots.release();
+                return;
+            }
+        }
+    }
+
+    private void work(SeverityQueue lane) {
+        while (!Thread.currentThread().isInterrupted()) {
+            final OutboundEvent event;
+            try {
+                event = lane.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (event == null) {
+                return;
+            }
+            final String incident = incidentOf(event.getMessage());
+            if (!park(incident, event)) {
+                sendInOrder(event, incident);
+            }
+        }
+    }
+
+    private static String incidentOf(PagerDutyMessage message) {
+        final String dedupKey = message.getDedupKey();
+        if (dedupKey == null || dedupKey.isEmpty()) {
+            return null;
+        }
+        return message.getRoutingKey() + '\n' + dedupKey;
+    }
+
+    /**
+     * Parks the event behind an earlier event of its incident which is still in flight.
+     *
+     * @return false if no event of the incident is in flight and this one can be sent
+     */
+    private boolean park(String incident, OutboundEvent event) {
+        if (incident == null) {
+            return false;
+        }
+        synchronized (parked) {
+            final Deque<OutboundEvent> waiting = parked.get(incident);
+            if (waiting == null) {
+                parked.put(incident, new ArrayDeque<>());
+                return false;
+            }
+            waiting.add(event);
+            return true;
+        }
+    }
+
+    private OutboundEvent unpark(String incident) {
+        if (incident == null) {
+            return null;
+        }
+        synchronized (parked) {
+            final OutboundEvent next = parked.get(incident).poll();
+            if (next == null) {
+                parked.remove(incident);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Sends the event, then the events parked behind it, each once the delivery of the one
+     * before is final. Deliveries still in flight continue from their completion, so the worker
+     * never waits for them.
+     */
+    private void sendInOrder(OutboundEvent first, String incident) {
+        OutboundEvent event = first;
+        while (event != null) {
+            final CompletableFuture<Void> sent = send(event);
+            if (!sent.isDone()) {
+                sent.whenComplete((ignored, error) -> {
+                    freeSlots.release();
+                    sendInOrder(unpark(incident), incident);
+                });
+                return;
+            }
+            freeSlots.release();
+            event = unpark(incident);
+        }
+    }
+
+    /**
+     * Starts sending the event.
+     *
+     * @return a future completing once the delivery is final and has been reported
+     */
+    @VisibleForTesting
+    CompletableFuture<Void> send(OutboundEvent event) {
+        final long waitedNanos = nanoClock.getAsLong() - event.getEnqueuedNanos();
+        waitTime.update(waitedNanos, TimeUnit.NANOSECONDS);
+        if (shedder.shedOnDeparture(event, waitedNanos)) {
+            incidents.forget(event.getMessage());
+            journal.acknowledge(event.getJournalOffset());
+            return CompletableFuture.completedFuture(null);
+        }
+        final PagerDutyMessage message = event.getMessage();
+        final Delivery delivery;
+        try {
+            delivery = event.getPayload() != null
+                ? sender.send(message, event.getPayload())
+                : sender.send(message);
+        }
+        catch (RuntimeException e) {
+            report(message, null, e);
+            journal.acknowledge(event.getJournalOffset());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return delivery.outcome().handle((response, error) -> {
+            if (error != null && journal.isEnabled() && stopping()) {
+                // Most likely the transport or the retry scheduler stopped first.
+                incidents.forget(message);
+                LOG.debug(
+                    "PagerDuty event <{}> is replayed on the next start.",
+                    message.getDedupKey());
+                return null;
+            }
+            report(message, response, error);
+            journal.acknowledge(event.getJournalOffset());
+            return null;
+        });
+    }
+
+    private boolean stopping() {
+        final State state = state();
+        return state == State.STOPPING || state == State.TERMINATED;
+    }
+
+    private void report(PagerDutyMessage message, PagerDutyResponse response, Throwable error) {
+        if (response != null && response.isAccepted()) {
+            incidents.confirm(message, response);
+            LOG.debug(
+                "PagerDuty accepted the {} event <{}>.",
+                message.getEventAction(),
+                response.getDedupKey());
+            return;
+        }
+        incidents.forget(message);
+        if (error != null) {
+            failed.inc();
+            LOG.error(
+                "There was an error sending the PagerDuty event <{}>.",
+                message.getDedupKey(),
+                error);
+        }
+        else if (!response.isAccepted()) {
+            failed.inc();
+            LOG.error(
+                "There was an error sending the PagerDuty {} event <{}>, details: {}",
+                message.getEventAction(),
+                message.getDedupKey(),
+                response.getErrors());
+        }
+    }
+}
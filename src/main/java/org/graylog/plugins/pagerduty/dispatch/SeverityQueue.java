@@ -0,0 +1,182 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+
+/**
+ * Queue of one dispatch lane with a FIFO per severity class, drained by weighted round robin:
+ * out of every round of eleven events, up to eight are critical or error, two warning and one
+ * info, and a class without events passes its turn on. A backlog of info events thus delays a
+ * critical page by at most a few events.
+ *
+ * On top of that, once per round the oldest warning or info event that waited longer than the
+ * starvation limit is taken first, so low severities keep a bounded latency while critical
+ * events keep arriving, without giving up the share of critical events in a deep backlog.
+ */
+class SeverityQueue {
+    @VisibleForTesting
+    static final int HIGH = 0;
+    @VisibleForTesting
+    static final int MEDIUM = 1;
+    @VisibleForTesting
+    static final int LOW = 2;
+
+    private static final int[] WEIGHTS = {8, 2, 1};
+
+    private final ArrayDeque<OutboundEvent>[] classes;
+    private final int[] credits = WEIGHTS.clone();
+    private final long starvationNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int size;
+    private boolean starvedTurnTaken;
+    private boolean closed;
+
+    @SuppressWarnings("unchecked")
+    SeverityQueue(long starvationNanos, LongSupplier nanoClock) {
+        this.classes = new ArrayDeque[WEIGHTS.length];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayDeque<>();
+        }
+        this.starvationNanos = starvationNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    @VisibleForTesting
+    static int severityClass(PagerDutyMessage message) {
+        final Map<String, Object> payload = message.getPayload();
+        final Object severity = payload == null ? null : payload.get("severity");
+        if ("critical".equals(severity) || "error".equals(severity)) {
+            return HIGH;
+        }
+        return "warning".equals(severity) ? MEDIUM : LOW;
+    }
+
+    /**
+     * Adds the event, unless the queue is closed.
+     *
+     * @return false if the queue is closed and the event was not added
+     */
+    boolean add(OutboundEvent event) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            classes[severityClass(event.getMessage())].addLast(event);
+            size++;
+            notEmpty.signal();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next event, waiting for one if needed.
+     *
+     * @return the next event, or {@code null} once the queue is closed and drained
+     */
+    OutboundEvent take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            size--;
+            return classes[next()].pollFirst();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets {@link #take()} return {@code null} once the events queued so far are taken.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private int next() {
+        if (!starvedTurnTaken) {
+            final int starved = oldestStarved();
+            if (starved >= 0) {
+                starvedTurnTaken = true;
+                return starved;
+            }
+        }
+        while (true) {
+            for (int i = 0; i < classes.length; i++) {
+                if (credits[i] > 0 && !classes[i].isEmpty()) {
+                    credits[i]--;
+                    return i;
+                }
+            }
+            // Every class with events used up its turns, start a new round.
+            System.arraycopy(WEIGHTS, 0, credits, 0, WEIGHTS.length);
+            starvedTurnTaken = false;
+        }
+    }
+
+    private int oldestStarved() {
+        final long now = nanoClock.getAsLong();
+        int oldest = -1;
+        long oldestNanos = Long.MAX_VALUE;
+        for (int i = HIGH + 1; i < classes.length; i++) {
+            final OutboundEvent head = classes[i].peekFirst();
+            if (head != null
+                && now - head.getEnqueuedNanos() >= starvationNanos
+                && head.getEnqueuedNanos() < oldestNanos) {
+                oldest = i;
+                oldestNanos = head.getEnqueuedNanos();
+            }
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.graylog.plugins.pagerduty.PagerDutyPluginConfiguration;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replaces per-event triggers by periodic digests while a routing key receives more events than
+ * PagerDuty users can read.
+ *
+ * Events are counted per routing key and interval. Once an interval exceeds the threshold, the
+ * key is in storm mode: further events are folded into a digest instead of being sent, and at
+ * the end of every interval one trigger summarizing them is sent. The digest keeps the most
+ * frequent event definitions and streams and a severity histogram, so its size does not depend
+ * on the number of events. The key returns to per-event mode after an interval below the
+ * threshold.
+ */
+@Singleton
+public class StormDigest extends AbstractIdleService {
+    static final String DEDUP_KEY = "graylog-storm-digest";
+
+    private static final Logger LOG = LoggerFactory.getLogger(StormDigest.class);
+    private static final int TOP_ENTRIES = 10;
+    private static final List<String> SEVERITIES =
+        Arrays.asList("info", "warning", "error", "critical");
+
+    private final int threshold;
+    private final long intervalMillis;
+    private final Supplier<Instant> clock;
+    private final PagerDutyDispatcher dispatcher;
+    private final Map<String, KeyState> states = new ConcurrentHashMap<>();
+    private final Counter digested;
+    private final Counter digests;
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public StormDigest(
+        @Named(PagerDutyPluginConfiguration.STORM_THRESHOLD) int threshold,
+        @Named(PagerDutyPluginConfiguration.STORM_INTERVAL) Duration interval,
+        PagerDutyDispatcher dispatcher,
+        MetricRegistry metricRegistry) {
+        this(threshold, interval.toMilliseconds(), Instant::now, dispatcher, metricRegistry);
+    }
+
+    @VisibleForTesting
+    StormDigest(
+        int threshold,
+        long intervalMillis,
+        Supplier<Instant> clock,
+        PagerDutyDispatcher dispatcher,
+        MetricRegistry metricRegistry) {
+        this.threshold = threshold;
+        this.intervalMillis = intervalMillis;
+        this.clock = clock;
+        this.dispatcher = dispatcher;
+        this.digested = metricRegistry.counter(
+            MetricRegistry.name(StormDigest.class, "digested"));
+        this.digests = metricRegistry.counter(MetricRegistry.name(StormDigest.class, "digests"));
+        metricRegistry.register(
+            MetricRegistry.name(StormDigest.class, "storming"),
+            (Gauge<Long>) () -> states.values().stream().filter(state -> state.storming).count());
+    }
+
+    /**
+     * Counts the event and folds it into the digest of its routing key while that is in storm
+     * mode.
+     *
+     * @return true if the event was digested and must not be sent on its own
+     */
+    public boolean absorb(PagerDutyMessage message, String definition, Set<String> streams) {
+        if (threshold <= 0) {
+            return false;
+        }
+        final KeyState state =
+            states.computeIfAbsent(message.getRoutingKey(), key -> new KeyState(clock.get()));
+        synchronized (state) {
+            state.count++;
+            if (!state.storming) {
+                if (state.count <= threshold) {
+                    return false;
+                }
+                LOG.info(
+                    "More than {} PagerDuty events within {} ms, sending digests instead.",
+                    threshold,
+                    intervalMillis);
+                state.storming = true;
+            }
+            state.add(message, definition, streams);
+        }
+        digested.inc();
+        return true;
+    }
+
+    /**
+     * Sends the digest of every routing key in storm mode and starts a new interval.
+     */
+    @VisibleForTesting
+    void roll() {
+        final Instant now = clock.get();
+        final Iterator<Map.Entry<String, KeyState>> it = states.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, KeyState> entry = it.next();
+            final KeyState state = entry.getValue();
+            final PagerDutyMessage digest;
+            synchronized (state) {
+                digest = state.events > 0 ? state.digest(entry.getKey(), now) : null;
+                if (state.storming && state.count <= threshold) {
+                    LOG.info(
+                        "PagerDuty event rate back below {}, sending events again.", threshold);
+                    state.storming = false;
+                }
+                if (!state.storming && state.count == 0) {
+                    it.remove();
+                }
+                state.reset(now);
+            }
+            if (digest != null) {
+                send(digest);
+            }
+        }
+    }
+
+    private void send(PagerDutyMessage digest) {
+        try {
+            dispatcher.dispatchSummary(digest);
+            digests.inc();
+        }
+        catch (RuntimeException e) {
+            LOG.warn("Could not send the PagerDuty storm digest: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    protected void startUp() {
+        if (threshold <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagerduty-storm-digest-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.scheduleAtFixedRate(
+            this::roll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void shutDown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            roll();
+        }
+    }
+
+    private static class KeyState {
+        private final TopK definitions = new TopK(TOP_ENTRIES);
+        private final TopK streams = new TopK(TOP_ENTRIES);
+        private final long[] severities = new long[SEVERITIES.size()];
+        private Instant intervalStart;
+        private PagerDutyMessage latest;
+        private boolean storming;
+        private long count;
+        private long events;
+
+        KeyState(Instant intervalStart) {
+            this.intervalStart = intervalStart;
+        }
+
+        void add(PagerDutyMessage message, String definition, Set<String> eventStreams) {
+            latest = message;
+            events++;
+            definitions.add(definition);
+            for (String stream : eventStreams) {
+                streams.add(stream);
+            }
+            final Object severity =
+                message.getPayload() == null ? null : message.getPayload().get("severity");
+            final int index = SEVERITIES.indexOf(severity);
+            if (index >= 0) {
+                severities[index]++;
+            }
+        }
+
+        void reset(Instant now) {
+            definitions.clear();
+            streams.clear();
+            Arrays.fill(severities, 0L);
+            intervalStart = now;
+            latest = null;
+            count = 0;
+            events = 0;
+        }
+
+        PagerDutyMessage digest(String routingKey, Instant now) {
+            final Map<String, Long> histogram = new LinkedHashMap<>();
+            String highest = SEVERITIES.get(0);
+            for (int i = 0; i < severities.length; i++) {
+                histogram.put(SEVERITIES.get(i), severities[i]);
+                if (severities[i] > 0) {
+                    highest = SEVERITIES.get(i);
+                }
+            }
+            final Map<String, Long> topDefinitions = definitions.top();
+
+            final Map<String, Object> details = new LinkedHashMap<>();
+            details.put("events", events);
+            details.put("interval_start", intervalStart.toString());
+            details.put("interval_end", now.toString());
+            details.put("top_event_definitions", topDefinitions);
+            details.put("top_streams", streams.top());
+            details.put("severities", histogram);
+
+            final Map<String, Object> payload = new HashMap<>();
+            payload.put(
+                "summary",
+                String.format(
+                    "Alert storm: %d events, most frequent: %s",
+                    events,
+                    topDefinitions.keySet().iterator().next()));
+            payload.put("source", "Graylog");
+            payload.put("severity", highest);
+            payload.put("timestamp", now.toString());
+            payload.put("component", "GraylogAlerts");
+            payload.put("class", "alerts");
+            payload.put("custom_details", details);
+
+            return new PagerDutyMessage(
+                routingKey,
+                "trigger",
+                DEDUP_KEY,
+                latest.getClient(),
+                latest.getClientUrl(),
+                null,
+                payload);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Approximate heavy hitters in constant memory (Space-Saving). Keeps at most {@code capacity}
+ * keys; a new key replaces the least frequent one and inherits its count, so counts of the
+ * most frequent keys are never underestimated. Not thread safe.
+ */
+class TopK {
+    private final String[] keys;
+    private final long[] counts;
+    private int size;
+
+    TopK(int capacity) {
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+    }
+
+    void add(String key) {
+        int min = 0;
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                counts[i]++;
+                return;
+            }
+            if (counts[i] < counts[min]) {
+                min = i;
+            }
+        }
+        if (size < keys.length) {
+            keys[size] = key;
+            counts[size++] = 1;
+        }
+        else {
+            keys[min] = key;
+            counts[min]++;
+        }
+    }
+
+    /**
+     * The tracked keys, most frequent first.
+     */
+    Map<String, Long> top() {
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> counts[i]).reversed());
+        final Map<String, Long> top = new LinkedHashMap<>();
+        for (Integer i : order) {
+            top.put(keys[i], counts[i]);
+        }
+        return top;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(counts, 0, size, 0L);
+        size = 0;
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.graylog2.plugin.MessageSummary;
+
+/**
+ * The {@code custom_details} of an event, filled from the fields of the Graylog event and the
+ * messages of its backlog.
+ *
+ * Nothing is copied up front: the fields and backlog are streamed into the JSON generator when
+ * the event is serialized, and the size of every entry is counted before it is written. The
+ * first entry that would exceed the byte budget ends the details, which are then marked as
+ * {@code "truncated": true}. Every serialization gives the same output, so the journaled and the
+ * sent event are identical.
+ */
+public class EventDetails extends JsonSerializable.Base {
+    private static final String FIELDS = "fields";
+    private static final String BACKLOG = "backlog";
+    private static final String TRUNCATED = "truncated";
+    // Room kept for the truncation marker and the brackets and braces still to close.
+    private static final int RESERVED = 24;
+
+    private final Map<String, Object> summary;
+    private final Map<String, String> fields;
+    private final List<MessageSummary> backlog;
+    private final int budget;
+
+    /**
+     * @param budget maximum size of the serialized details in bytes
+     */
+    public EventDetails(Map<String, String> fields, List<MessageSummary> backlog, int budget) {
+        this(Collections.emptyMap(), fields, backlog, budget);
+    }
+
+    private EventDetails(
+        Map<String, Object> summary,
+        Map<String, String> fields,
+        List<MessageSummary> backlog,
+        int budget) {
+        this.summary = summary;
+        this.fields = fields == null ? Collections.emptyMap() : fields;
+        this.backlog = backlog == null ? Collections.emptyList() : backlog;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns these details with the given entries written ahead of the fields and backlog.
+     * Numbers and booleans are written as they are, any other value as its string form.
+     */
+    public EventDetails plus(Map<String, Object> entries) {
+        final Map<String, Object> merged = new LinkedHashMap<>(summary);
+        merged.putAll(entries);
+        return new EventDetails(merged, fields, backlog, budget);
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider)
+        throws IOException {
+        final Budget remaining = new Budget(budget - RESERVED - 2);
+        generator.writeStartObject();
+        boolean complete = true;
+        for (Map.Entry<String, Object> entry : summary.entrySet()) {
+            final Object value = entry.getValue();
+            final boolean scalar = value instanceof Number || value instanceof Boolean;
+            final String text = value == null || scalar ? null : value.toString();
+            final int size = scalar ? String.valueOf(value).length() : length(text);
+            if (!remaining.take(member(entry.getKey()) + size)) {
+                complete = false;
+                break;
+            }
+            if (scalar) {
+                provider.defaultSerializeField(entry.getKey(), value, generator);
+            }
+            else {
+                generator.writeStringField(entry.getKey(), text);
+            }
+        }
+        if (complete && !fields.isEmpty()) {
+            complete = writeFields(generator, remaining);
+        }
+        if (complete && !backlog.isEmpty()) {
+            complete = writeBacklog(generator, remaining);
+        }
+        if (!complete) {
+            generator.writeBooleanField(TRUNCATED, true);
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(
+        JsonGenerator generator,
+        SerializerProvider provider,
+        TypeSerializer typeSerializer) throws IOException {
+        serialize(generator, provider);
+    }
+
+    private boolean writeFields(JsonGenerator generator, Budget remaining) throws IOException {
+        if (!remaining.take(member(FIELDS) + 2)) {
+            return false;
+        }
+        generator.writeObjectFieldStart(FIELDS);
+        boolean first = true;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            final int size = (first ? 0 : 1)
+                + length(field.getKey()) + 1 + length(field.getValue());
+            if (!remaining.take(size)) {
+                generator.writeEndObject();
+                return false;
+            }
+            generator.writeStringField(field.getKey(), field.getValue());
+            first = false;
+        }
+        generator.writeEndObject();
+        return true;
+    }
+
+    private boolean writeBacklog(JsonGenerator generator, Budget remaining) throws IOException {
+        if (!remaining.take(member(BACKLOG) + 2)) {
+            return false;
+        }
+        generator.writeArrayFieldStart(BACKLOG);
+        boolean first = true;
+        for (MessageSummary message : backlog) {
+            final String id = message.getId();
+            final String timestamp =
+                message.getTimestamp() == null ? null : message.getTimestamp().toString();
+            final String source = message.getSource();
+            final String text = message.getMessage();
+            final int size = (first ? 0 : 1) + 2
+                + length("id") + 1 + length(id)
+                + 1 + length("timestamp") + 1 + length(timestamp)
+                + 1 + length("source") + 1 + length(source)
+                + 1 + length("message") + 1 + length(text);
+            if (!remaining.take(size)) {
+                generator.writeEndArray();
+                return false;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("id", id);
+            generator.writeStringField("timestamp", timestamp);
+            generator.writeStringField("source", source);
+            generator.writeStringField("message", text);
+            generator.writeEndObject();
+            first = false;
+        }
+        generator.writeEndArray();
+        return true;
+    }
+
+    /**
+     * Size of a member name with its leading comma and colon. Objects always start with a member
+     * of the summary or the fields, so counting the comma for every member overestimates by one
+     * byte at most.
+     */
+    private static int member(String name) {
+        return 1 + length(name) + 1;
+    }
+
+    /**
+     * Size of a string in JSON, as UTF-8 and with the escapes Jackson writes by default.
+     */
+    static int length(String value) {
+        if (value == null) {
+            return 4;
+        }
+        int size = 2;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                size += 2;
+            }
+            else if (c < 0x20) {
+                size += c == '\b' || c == '\t' || c == '\n' || c == '\f' || c == '\r' ? 2 : 6;
+            }
+            else if (c < 0x80) {
+                size += 1;
+            }
+            else if (c < 0x800) {
+                size += 2;
+            }
+            else if (Character.isHighSurrogate(c)
+                && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 4;
+                i++;
+            }
+            else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    private static class Budget {
+        private int left;
+
+        Budget(int left) {
+            this.left = left;
+        }
+
+        boolean take(int size) {
+            if (size > left) {
+                return false;
+            }
+            left -= size;
+            return true;
+        }
+    }
+}
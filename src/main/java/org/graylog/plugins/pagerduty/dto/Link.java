@@ -18,6 +18,7 @@
 
 package org.graylog.plugins.pagerduty.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.net.URL;
 
@@ -31,7 +32,8 @@ public class Link {
     @JsonProperty("text")
     private final String text;
 
-    public Link(URL href, String text) {
+    @JsonCreator
+    public Link(@JsonProperty("href") URL href, @JsonProperty("text") String text) {
         this.href = href;
         this.text = text;
     }
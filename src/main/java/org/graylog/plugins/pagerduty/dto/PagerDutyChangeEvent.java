@@ -0,0 +1,62 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An event of the PagerDuty Change Events API, which records changes such as deployments on a
+ * service without opening an incident. Unlike {@link PagerDutyMessage}, it has no event action,
+ * dedup key or severity.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class PagerDutyChangeEvent {
+    @JsonProperty("routing_key")
+    private final String routingKey;
+    @JsonProperty("links")
+    private final List<Link> links;
+    @JsonProperty("payload")
+    private final Map<String, Object> payload;
+
+    @JsonCreator
+    public PagerDutyChangeEvent(
+        @JsonProperty("routing_key") String routingKey,
+        @JsonProperty("links") List<Link> links,
+        @JsonProperty("payload") Map<String, Object> payload) {
+        this.routingKey = routingKey;
+        this.links = links;
+        this.payload = payload;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    public Map<String, Object> getPayload() {
+        return payload;
+    }
+}
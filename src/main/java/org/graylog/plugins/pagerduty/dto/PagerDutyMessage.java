@@ -18,6 +18,7 @@
 
 package org.graylog.plugins.pagerduty.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
@@ -29,6 +30,10 @@ import java.util.Map;
  */
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class PagerDutyMessage {
+    public static final String TRIGGER = "trigger";
+    public static final String ACKNOWLEDGE = "acknowledge";
+    public static final String RESOLVE = "resolve";
+
     @JsonProperty("routing_key")
     private final String routingKey;
     @JsonProperty("event_action")
@@ -42,16 +47,17 @@ public class PagerDutyMessage {
     @JsonProperty("links")
     private final List<Link> links;
     @JsonProperty("payload")
-    private final Map<String, String> payload;
+    private final Map<String, Object> payload;
 
+    @JsonCreator
     public PagerDutyMessage(
-        String routingKey,
-        String eventAction,
-        String dedupKey,
-        String client,
-        String clientUrl,
-        List<Link> links,
-        Map<String, String> payload) {
+        @JsonProperty("routing_key") String routingKey,
+        @JsonProperty("event_action") String eventAction,
+        @JsonProperty("dedup_key") String dedupKey,
+        @JsonProperty("client") String client,
+        @JsonProperty("client_url") String clientUrl,
+        @JsonProperty("links") List<Link> links,
+        @JsonProperty("payload") Map<String, Object> payload) {
         this.routingKey = routingKey;
         this.eventAction = eventAction;
         this.dedupKey = dedupKey;
@@ -85,7 +91,7 @@ public class PagerDutyMessage {
         return links;
     }
 
-    public Map<String, String> getPayload() {
+    public Map<String, Object> getPayload() {
         return payload;
     }
 }
@@ -18,22 +18,55 @@
 
 package org.graylog.plugins.pagerduty.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Edgar Molina
  *
  */
 public class PagerDutyResponse {
+    @JsonIgnore
+    private final int httpStatus;
     @JsonProperty("status")
-    private String status;
+    private final String status;
     @JsonProperty("message")
-    private String message;
+    private final String message;
     @JsonProperty("dedup_key")
-    private String dedupKey;
+    private final String dedupKey;
     @JsonProperty("errors")
-    private List<String> errors;
+    private final List<String> errors;
+    @JsonIgnore
+    private final Duration retryAfter;
+
+    public PagerDutyResponse(
+        int httpStatus,
+        String status,
+        String message,
+        String dedupKey,
+        List<String> errors,
+        Duration retryAfter) {
+        this.httpStatus = httpStatus;
+        this.status = status;
+        this.message = message;
+        this.dedupKey = dedupKey;
+        this.errors = errors;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * Whether PagerDuty accepted the event, decided by the HTTP status code alone.
+     */
+    public boolean isAccepted() {
+        return httpStatus >= 200 && httpStatus < 300;
+    }
 
     public String getStatus() {
         return status;
@@ -50,4 +83,11 @@ public class PagerDutyResponse {
     public List<String> getErrors() {
         return errors;
     }
-}
\ No newline at end of file
+
+    /**
+     * The delay requested by the {@code Retry-After} header, if any.
+     */
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+}
@@ -200,4 +200,93 @@ public class PagerDutyNotificationConfigTest {
             "{client_url=[Client URL must be a valid HTTP or HTTPS URL.]}",
             result.getErrors().toString());
     }
+
+    @Test
+    public void testMalformedTemplate() {
+        ValidationResult result =
+            sutBuilder
+                .routingKey("01234567890123456789012345678901")
+                .customIncident(false)
+                .keyPrefix("TestPrefix")
+                .clientName("TestName")
+                .clientUrl("http://test/")
+                .summaryTemplate("${event.unknown}")
+                .build()
+                .validate();
+        assertEquals("Error count", 1, result.getErrors().size());
+        assertEquals(
+            "Error message",
+            "{summary_template=[Unknown variable \"event.unknown\".]}",
+            result.getErrors().toString());
+    }
+
+    @Test
+    public void testEventActionTemplateRequiresCustomIncident() {
+        ValidationResult result =
+            sutBuilder
+                .routingKey("01234567890123456789012345678901")
+                .customIncident(false)
+                .keyPrefix("TestPrefix")
+                .clientName("TestName")
+                .clientUrl("http://test/")
+                .eventActionTemplate("resolve")
+                .build()
+                .validate();
+        assertEquals("Error count", 1, result.getErrors().size());
+        assertEquals(
+            "Error message",
+            "{event_action_template=[Event Action Template requires Use Custom Incident Key.]}",
+            result.getErrors().toString());
+    }
+
+    @Test
+    public void testHashedDedupKeyIsOffByDefault() {
+        PagerDutyNotificationConfig result =
+            sutBuilder
+                .routingKey("01234567890123456789012345678901")
+                .customIncident(true)
+                .keyPrefix("TestPrefix")
+                .clientName("TestName")
+                .clientUrl("http://test/")
+                .build();
+        assertEquals("Hashed dedup key", false, result.hashedDedupKey());
+    }
+
+    @Test
+    public void testNegativeAutoResolveMinutes() {
+        ValidationResult result =
+            sutBuilder
+                .routingKey("01234567890123456789012345678901")
+                .customIncident(true)
+                .keyPrefix("TestPrefix")
+                .clientName("TestName")
+                .clientUrl("http://test/")
+                .autoResolveMinutes(-1)
+                .build()
+                .validate();
+        assertEquals("Error count", 1, result.getErrors().size());
+        assertEquals(
+            "Error message",
+            "{auto_resolve_minutes=[Auto Resolve Minutes cannot be negative.]}",
+            result.getErrors().toString());
+    }
+
+    @Test
+    public void testAutoResolveRequiresCustomIncident() {
+        ValidationResult result =
+            sutBuilder
+                .routingKey("01234567890123456789012345678901")
+                .customIncident(false)
+                .keyPrefix("TestPrefix")
+                .clientName("TestName")
+                .clientUrl("http://test/")
+                .autoResolveMinutes(30)
+                .build()
+                .validate();
+        assertEquals("Error count", 1, result.getErrors().size());
+        assertEquals(
+            "Error message",
+            "{auto_resolve_minutes=[Auto Resolve Minutes requires Use Custom Incident Key.]}",
+            result.getErrors().toString());
+    }
 }
@@ -18,21 +18,14 @@
 
 package org.graylog.plugins.pagerduty;
 
-import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.mockito.Mockito.doThrow;
 
-import java.util.Arrays;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import org.graylog.events.notifications.EventNotificationContext;
 import org.graylog.events.notifications.EventNotificationException;
-import org.graylog.plugins.pagerduty.client.ClientFactory;
+import org.graylog.plugins.pagerduty.client.ClientRegistry;
 import org.graylog.plugins.pagerduty.client.PagerDuty;
-import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
-import org.graylog2.streams.StreamService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -44,17 +37,13 @@ import org.mockito.MockitoAnnotations;
  */
 public class PagerDutyNotificationTest {
     @Mock
-    private StreamService streamServiceMock;
-    @Mock
-    private ClientFactory clientFactoryMock;
+    private ClientRegistry clientRegistryMock;
     @Mock
     private EventNotificationContext contextMock;
     @Mock
     private PagerDutyNotificationConfig configMock;
     @Mock
     private PagerDuty clientMock;
-    @Mock
-    private PagerDutyResponse responseMock;
 
     private PagerDutyNotification sut;
 
@@ -62,79 +51,27 @@ public class PagerDutyNotificationTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         when(contextMock.notificationConfig()).thenReturn(configMock);
-        when(clientFactoryMock.create(streamServiceMock, configMock)).thenReturn(clientMock);
-        sut = new PagerDutyNotification(streamServiceMock, clientFactoryMock);
+        when(clientRegistryMock.get(configMock)).thenReturn(clientMock);
+        sut = new PagerDutyNotification(clientRegistryMock);
     }
 
     @Test
     public void testSuccessfullNotificationTrigger() throws EventNotificationException {
-        // Setup
-        when(clientMock.trigger(contextMock)).thenReturn(responseMock);
-        when(responseMock.getErrors()).thenReturn(null);
-
         // Execute
         sut.execute(contextMock);
 
         // Assert
+        verify(clientRegistryMock).get(configMock);
         verify(clientMock).trigger(contextMock);
-        verify(responseMock).getErrors();
     }
 
-    @Test
-    public void testSuccessfulNotificationTriggerWithoutErrors() throws EventNotificationException {
+    @Test (expected = IllegalStateException.class)
+    public void testFailedNotificationTriggerWhenQueueIsFull() throws EventNotificationException {
         // Setup
-        when(clientMock.trigger(contextMock)).thenReturn(responseMock);
-        when(responseMock.getErrors()).thenReturn(new ArrayList<>());
+        doThrow(new IllegalStateException("The PagerDuty dispatch queue is full"))
+            .when(clientMock).trigger(contextMock);
 
         // Execute
         sut.execute(contextMock);
-
-        // Assert
-        verify(clientMock).trigger(contextMock);
-        verify(responseMock).getErrors();
-    }
-
-    @Test (expected = IllegalStateException.class)
-    public void testFailedNotificationTriggerWithErrors() throws EventNotificationException {
-        // Setup
-        final List<String> errorsReported = Arrays.asList("first error", "second error");
-        when(clientMock.trigger(contextMock)).thenReturn(responseMock);
-        when(responseMock.getErrors()).thenReturn(errorsReported);
-
-        try {
-            // Execute
-            sut.execute(contextMock);
-        }
-        catch (IllegalStateException e) {
-            // Assert
-            assertEquals(
-                "Wrong Exception Message",
-                "There was an error triggering the PagerDuty event, details: "
-                    + "[first error, second error]",
-                e.getMessage());
-            throw e;
-        }
-    }
-
-    @Test (expected = IllegalStateException.class)
-    public void testFailedIOExceptionCreatingTheClient()
-    throws EventNotificationException, IOException {
-        // Setup
-        when(clientMock.trigger(contextMock)).thenReturn(responseMock);
-        when(responseMock.getErrors()).thenReturn(null);
-        doThrow(IOException.class).when(clientMock).close();
-
-        try {
-            // Execute
-            sut.execute(contextMock);
-        }
-        catch (IllegalStateException e) {
-            // Assert
-            assertEquals(
-                "Wrong Exception Message",
-                "There was an exception triggering the PagerDuty event.",
-                e.getMessage());
-            throw e;
-        }
     }
 }
@@ -0,0 +1,200 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.graylog.plugins.pagerduty.dto.PagerDutyChangeEvent;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ChangeEventSenderTest {
+    private static final URI CHANGE_API_URL =
+        URI.create("https://events.pagerduty.test/v2/change/enqueue");
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final PagerDutyResponse ACCEPTED =
+        new PagerDutyResponse(202, "success", "Change event processed", null, null, null);
+    private static final PagerDutyResponse UNAVAILABLE = new PagerDutyResponse(
+        503, null, null, null, Collections.singletonList("HTTP 503"), null);
+    private static final PagerDutyResponse BAD_REQUEST = new PagerDutyResponse(
+        400, "invalid event", null, null, Collections.singletonList("Bad event"), null);
+
+    @Mock
+    private PagerDutyTransport transportMock;
+
+    private MetricRegistry metricRegistry;
+    private ChangeEventSender sut;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(transportMock.send(eq(CHANGE_API_URL), any(byte[].class)))
+            .thenReturn(CompletableFuture.completedFuture(ACCEPTED));
+        when(transportMock.withExecutor(any(Executor.class))).thenReturn(transportMock);
+    }
+
+    @After
+    public void tearDown() {
+        if (sut != null) {
+            sut.stopAsync().awaitTerminated();
+        }
+    }
+
+    @Test
+    public void testFullBatchIsFlushed() {
+        // Setup
+        sut = createSender(1_000, 3, HOUR_MILLIS);
+
+        // Execute
+        sut.enqueue(changeEvent("deploy 1"));
+        sut.enqueue(changeEvent("deploy 2"));
+        verify(transportMock, after(200).never()).send(any(URI.class), any(byte[].class));
+        sut.enqueue(changeEvent("deploy 3"));
+
+        // Assert
+        final ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(transportMock, timeout(5_000).times(3)).send(eq(CHANGE_API_URL), captor.capture());
+        final String payload = new String(captor.getAllValues().get(0), StandardCharsets.UTF_8);
+        assertTrue("Wrong routing key", payload.contains("\"routing_key\":\"routing-key\""));
+        assertTrue("Wrong summary", payload.contains("\"summary\":\"deploy 1\""));
+    }
+
+    @Test
+    public void testAgedEventsAreFlushed() {
+        // Setup
+        sut = createSender(1_000, 100, 50L);
+
+        // Execute
+        sut.enqueue(changeEvent("deploy"));
+
+        // Assert
+        verify(transportMock, timeout(5_000)).send(eq(CHANGE_API_URL), any(byte[].class));
+    }
+
+    @Test
+    public void testTransientFailureIsRetried() {
+        // Setup
+        when(transportMock.send(eq(CHANGE_API_URL), any(byte[].class)))
+            .thenReturn(CompletableFuture.completedFuture(UNAVAILABLE))
+            .thenReturn(CompletableFuture.completedFuture(ACCEPTED));
+        sut = createSender(1_000, 1, HOUR_MILLIS);
+
+        // Execute
+        sut.enqueue(changeEvent("deploy"));
+
+        // Assert
+        verify(transportMock, timeout(5_000).times(2))
+            .send(eq(CHANGE_API_URL), any(byte[].class));
+    }
+
+    @Test
+    public void testPermanentFailureIsNotRetried() {
+        // Setup
+        when(transportMock.send(eq(CHANGE_API_URL), any(byte[].class)))
+            .thenReturn(CompletableFuture.completedFuture(BAD_REQUEST));
+        sut = createSender(1_000, 1, HOUR_MILLIS);
+
+        // Execute
+        sut.enqueue(changeEvent("deploy"));
+
+        // Assert
+        verify(transportMock, after(500).times(1)).send(eq(CHANGE_API_URL), any(byte[].class));
+        assertEquals(
+            "Wrong failed count",
+            1,
+            metricRegistry.counter(MetricRegistry.name(ChangeEventSender.class, "failed"))
+                .getCount());
+    }
+
+    @Test
+    public void testFullBufferRejectsEvents() {
+        // Setup
+        sut = createSender(2, 10, HOUR_MILLIS);
+        sut.enqueue(changeEvent("deploy 1"));
+        sut.enqueue(changeEvent("deploy 2"));
+
+        // Execute
+        try {
+            sut.enqueue(changeEvent("deploy 3"));
+        }
+        catch (IllegalStateException e) {
+            // Assert
+            assertEquals(
+                "Wrong rejected count",
+                1,
+                metricRegistry.counter(MetricRegistry.name(ChangeEventSender.class, "rejected"))
+                    .getCount());
+            return;
+        }
+        throw new AssertionError("Change event was not rejected");
+    }
+
+    @Test
+    public void testShutdownFlushesBufferedEvents() {
+        // Setup
+        sut = createSender(1_000, 100, HOUR_MILLIS);
+        sut.enqueue(changeEvent("deploy"));
+
+        // Execute
+        sut.stopAsync().awaitTerminated();
+
+        // Assert
+        verify(transportMock, times(1)).send(eq(CHANGE_API_URL), any(byte[].class));
+        sut = null;
+    }
+
+    private ChangeEventSender createSender(
+        int bufferSize, int batchSize, long flushIntervalMillis) {
+        metricRegistry = new MetricRegistry();
+        final ChangeEventSender sender = new ChangeEventSender(
+            transportMock,
+            CHANGE_API_URL,
+            bufferSize,
+            batchSize,
+            flushIntervalMillis,
+            2,
+            metricRegistry);
+        sender.startAsync().awaitRunning();
+        return sender;
+    }
+
+    private static PagerDutyChangeEvent changeEvent(String summary) {
+        return new PagerDutyChangeEvent(
+            "routing-key", null, Collections.singletonMap("summary", summary));
+    }
+}
@@ -20,8 +20,11 @@ package org.graylog.plugins.pagerduty.client;
 
 import static org.junit.Assert.assertTrue;
 
+import com.github.joschi.jadconfig.util.Size;
 import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
-import org.graylog2.streams.StreamService;
+import org.graylog.plugins.pagerduty.dispatch.AutoResolver;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dispatch.StormDigest;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -33,22 +36,37 @@ import org.mockito.MockitoAnnotations;
  */
 public class ClientFactoryTest {
     @Mock
-    private StreamService streamServiceMock;
+    private StreamMetadataCache streamCacheMock;
     @Mock
     private PagerDutyNotificationConfig configMock;
+    @Mock
+    private PagerDutyDispatcher dispatcherMock;
+    @Mock
+    private StormDigest stormDigestMock;
+    @Mock
+    private AutoResolver autoResolverMock;
+    @Mock
+    private ChangeEventSender changeSenderMock;
 
     private ClientFactory sut;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        sut = new ClientFactory();
+        sut = new ClientFactory(
+            dispatcherMock,
+            stormDigestMock,
+            autoResolverMock,
+            changeSenderMock,
+            streamCacheMock,
+            new StreamLinkBuilder(),
+            Size.kilobytes(256));
     }
 
     @Test
     public void testCreate() {
         // Execute
-        PagerDuty result = sut.create(streamServiceMock, configMock);
+        PagerDuty result = sut.create(configMock);
 
         // Assert
         assertTrue("Wrong type", result instanceof PagerDuty);
@@ -0,0 +1,91 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ClientRegistryTest {
+    @Mock
+    private ClientFactory clientFactoryMock;
+
+    private ClientRegistry sut;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(clientFactoryMock.create(any(PagerDutyNotificationConfig.class)))
+            .thenAnswer(invocation -> mock(PagerDuty.class));
+        sut = new ClientRegistry(clientFactoryMock, new MetricRegistry());
+    }
+
+    @Test
+    public void testEqualConfigsShareTheClient() {
+        // Execute
+        final PagerDuty first = sut.get(config("Graylog/"));
+        final PagerDuty second = sut.get(config("Graylog/"));
+
+        // Assert
+        assertSame("Different clients", first, second);
+        verify(clientFactoryMock, times(1)).create(any(PagerDutyNotificationConfig.class));
+    }
+
+    @Test
+    public void testEditedConfigGetsNewClient() {
+        // Execute
+        final PagerDuty before = sut.get(config("Graylog/"));
+        final PagerDuty after = sut.get(config("Edited/"));
+
+        // Assert
+        assertNotSame("Same client", before, after);
+        verify(clientFactoryMock, times(2)).create(any(PagerDutyNotificationConfig.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFactoryErrorsArePropagated() {
+        // Setup
+        when(clientFactoryMock.create(any(PagerDutyNotificationConfig.class)))
+            .thenThrow(new IllegalArgumentException("Unknown variable"));
+
+        // Execute
+        sut.get(config("Graylog/"));
+    }
+
+    private static PagerDutyNotificationConfig config(String keyPrefix) {
+        return PagerDutyNotificationConfig.builder()
+            .routingKey("01234567890123456789012345678901")
+            .customIncident(true)
+            .keyPrefix(keyPrefix)
+            .clientName("Graylog")
+            .clientUrl("http://graylog.example.com/")
+            .build();
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class EventSenderTest
+{
+    private static final String ROUTING_KEY = "01234567890123456789012345678901";
+    private static final URI API_URL = URI.create("https://events.pagerduty.test/v2/enqueue");
+
+    @Mock
+    private PagerDutyTransport transportMock;
+    @Mock
+    private MessageTemplates templatesMock;
+    @Mock
+    private PagerDutyMessage messageMock;
+    @Mock
+    private PagerDutyResponse pagerDutyResponseMock;
+    @Mock
+    private RoutingKeyRateLimiter rateLimiterMock;
+
+    private RetryScheduler retryScheduler;
+    private EventSender sut;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        MockitoAnnotations.initMocks(this);
+        when(templatesMock.serialize(messageMock))
+            .thenReturn("{test='json'}".getBytes(StandardCharsets.UTF_8));
+        when(messageMock.getRoutingKey()).thenReturn(ROUTING_KEY);
+        when(transportMock.send(eq(API_URL), any(byte[].class)))
+            .thenReturn(CompletableFuture.completedFuture(pagerDutyResponseMock));
+        when(pagerDutyResponseMock.isAccepted()).thenReturn(true);
+        sut = createSender(0L);
+    }
+
+    @After
+    public void tearDown()
+    {
+        retryScheduler.stopAsync().awaitTerminated();
+    }
+
+    private EventSender createSender(long retryDeadlineMillis)
+    {
+        if (retryScheduler != null) {
+            retryScheduler.stopAsync().awaitTerminated();
+        }
+        retryScheduler = new RetryScheduler(
+            1, 1L, 1L, retryDeadlineMillis, bound -> bound, System::currentTimeMillis,
+            new MetricRegistry());
+        retryScheduler.startAsync().awaitRunning();
+        return new EventSender(
+            transportMock, API_URL, rateLimiterMock, retryScheduler, templatesMock);
+    }
+
+    @Test
+    public void testSuccessfulSendAttempt() throws Exception
+    {
+        // Setup
+        ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+
+        // Execute
+        PagerDutyResponse result = sut.send(messageMock).outcome().get();
+
+        // Assert
+        verify(transportMock).send(eq(API_URL), payloadCaptor.capture());
+        assertEquals("Wrong Response Object", pagerDutyResponseMock, result);
+        assertEquals(
+            "Wrong Payload",
+            "{test='json'}",
+            new String(payloadCaptor.getValue(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSerializedPayloadIsSentAsIs() throws Exception
+    {
+        // Setup
+        final byte[] payload = "{journaled='json'}".getBytes(StandardCharsets.UTF_8);
+
+        // Execute
+        sut.send(messageMock, payload).outcome().get(5, TimeUnit.SECONDS);
+
+        // Assert
+        verify(transportMock).send(API_URL, payload);
+        verify(templatesMock, never()).serialize(messageMock);
+    }
+
+    @Test
+    public void testAsynchronousSendAttempt() throws Exception
+    {
+        // Setup
+        final CompletableFuture<PagerDutyResponse> pending = new CompletableFuture<>();
+        when(transportMock.send(eq(API_URL), any(byte[].class))).thenReturn(pending);
+
+        // Execute
+        Delivery result = sut.send(messageMock);
+
+        // Assert
+        assertEquals("Completed too early", false, result.outcome().isDone());
+        pending.complete(pagerDutyResponseMock);
+        assertEquals("Wrong Response Object", pagerDutyResponseMock, result.outcome().get());
+    }
+
+    @Test
+    public void testResponseIsReportedToRateLimiter() throws Exception
+    {
+        // Execute
+        sut.send(messageMock).outcome().get(5, TimeUnit.SECONDS);
+
+        // Assert
+        verify(rateLimiterMock).reserve(ROUTING_KEY);
+        verify(rateLimiterMock).onResponse(ROUTING_KEY, pagerDutyResponseMock);
+    }
+
+    @Test
+    public void testRateLimitExhausted() throws Exception
+    {
+        // Setup
+        when(rateLimiterMock.reserve(ROUTING_KEY))
+            .thenThrow(new RateLimitExceededException("exhausted"));
+
+        try {
+            // Execute
+            sut.send(messageMock).outcome().get(5, TimeUnit.SECONDS);
+            fail("Delivery did not fail");
+        }
+        catch (ExecutionException e) {
+            // Assert
+            assertTrue("Wrong cause", e.getCause() instanceof RateLimitExceededException);
+        }
+        verify(transportMock, never()).send(any(URI.class), any(byte[].class));
+    }
+
+    @Test
+    public void testSendAttemptWithException() throws Exception
+    {
+        // Setup
+        final CompletableFuture<PagerDutyResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException());
+        when(transportMock.send(eq(API_URL), any(byte[].class))).thenReturn(failed);
+
+        try {
+            // Execute
+            sut.send(messageMock).outcome().get(5, TimeUnit.SECONDS);
+            fail("Delivery did not fail");
+        }
+        catch (ExecutionException e) {
+            // Assert
+            assertTrue("Wrong cause", e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testTransientFailureIsRetried() throws Exception
+    {
+        // Setup
+        final CompletableFuture<PagerDutyResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException());
+        when(transportMock.send(eq(API_URL), any(byte[].class)))
+            .thenReturn(failed)
+            .thenReturn(CompletableFuture.completedFuture(pagerDutyResponseMock));
+        sut = createSender(10_000L);
+
+        // Execute
+        Delivery result = sut.send(messageMock);
+
+        // Assert
+        assertEquals(
+            "Wrong Response Object",
+            pagerDutyResponseMock,
+            result.outcome().get(5, TimeUnit.SECONDS));
+        verify(transportMock, times(2)).send(eq(API_URL), any(byte[].class));
+    }
+
+    @Test
+    public void testRateLimitWaitIsScheduled() throws Exception
+    {
+        // Setup
+        when(rateLimiterMock.reserve(ROUTING_KEY)).thenReturn(TimeUnit.MILLISECONDS.toNanos(20));
+
+        // Execute
+        Delivery result = sut.send(messageMock);
+
+        // Assert
+        assertEquals(
+            "Wrong Response Object",
+            pagerDutyResponseMock,
+            result.outcome().get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Optional;
+import org.graylog.events.event.EventDto;
+import org.graylog.events.notifications.EventNotificationContext;
+import org.graylog.events.processor.EventDefinitionDto;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class FieldTemplateTest {
+    @Mock
+    private EventNotificationContext ctxMock;
+    @Mock
+    private EventDto eventMock;
+    @Mock
+    private EventDefinitionDto eventDefinitionMock;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(ctxMock.event()).thenReturn(eventMock);
+        when(ctxMock.eventDefinition()).thenReturn(Optional.of(eventDefinitionMock));
+        when(eventMock.message()).thenReturn("Disk full");
+        when(eventMock.priority()).thenReturn(3L);
+        when(eventMock.fields()).thenReturn(Collections.singletonMap("host", "web-1"));
+        when(eventDefinitionMock.title()).thenReturn("Disk usage");
+    }
+
+    @Test
+    public void testLiteralsAndVariables() {
+        // Setup
+        FieldTemplate sut = FieldTemplate.compile(
+            "[P${event.priority}] ${event_definition.title}: ${event.message}"
+            + " on ${event.fields.host}");
+
+        // Execute
+        String result = sut.render(ctxMock);
+
+        // Assert
+        assertEquals("Wrong rendering", "[P3] Disk usage: Disk full on web-1", result);
+    }
+
+    @Test
+    public void testMissingValuesRenderEmpty() {
+        // Setup
+        when(ctxMock.eventDefinition()).thenReturn(Optional.empty());
+        FieldTemplate sut =
+            FieldTemplate.compile("${event_definition.title}/${event.fields.missing}/");
+
+        // Execute
+        String result = sut.render(ctxMock);
+
+        // Assert
+        assertEquals("Wrong rendering", "//", result);
+    }
+
+    @Test
+    public void testDollarSigns() {
+        // Setup
+        FieldTemplate sut = FieldTemplate.compile("$$${event.message} costs 5$ $");
+
+        // Execute
+        String result = sut.render(ctxMock);
+
+        // Assert
+        assertEquals("Wrong rendering", "$Disk full costs 5$ $", result);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVariable() {
+        // Execute
+        FieldTemplate.compile("${event.nope}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnclosedVariable() {
+        // Execute
+        FieldTemplate.compile("${event.message");
+    }
+}
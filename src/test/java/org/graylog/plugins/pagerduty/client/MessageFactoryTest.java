@@ -19,9 +19,15 @@
 package org.graylog.plugins.pagerduty.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
 import org.graylog.events.event.EventDto;
@@ -29,10 +35,10 @@ import org.graylog.events.notifications.EventNotificationContext;
 import org.graylog.events.processor.EventDefinitionDto;
 import org.graylog.events.processor.aggregation.AggregationEventProcessorConfig;
 import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
+import org.graylog.plugins.pagerduty.dto.EventDetails;
 import org.graylog.plugins.pagerduty.dto.Link;
+import org.graylog.plugins.pagerduty.dto.PagerDutyChangeEvent;
 import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
-import org.graylog2.plugin.streams.Stream;
-import org.graylog2.streams.StreamService;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -54,7 +60,7 @@ public class MessageFactoryTest {
     private static final String TEST_TIMESTAMP = new DateTime(1).toString();
 
     @Mock
-    private StreamService streamServiceMock;
+    private StreamMetadataCache streamCacheMock;
     @Mock
     private PagerDutyNotificationConfig configMock;
     @Mock
@@ -64,11 +70,8 @@ public class MessageFactoryTest {
     @Mock
     private EventDefinitionDto eventDefinitionMock;
     @Mock
-    private Stream streamMock;
-    @Mock
     private AggregationEventProcessorConfig eventDefinitionConfigMock;
     private final Set<String> sourceStreams = new HashSet<>();
-    private final Set<Stream> streams = new HashSet<>();
     private Optional<EventDefinitionDto> eventDefinition;
 
     private MessageFactory sut;
@@ -83,12 +86,11 @@ public class MessageFactoryTest {
         when(configMock.routingKey()).thenReturn(ROUTING_KEY);
         when(configMock.clientName()).thenReturn(CLIENT_NAME);
         when(configMock.clientUrl()).thenReturn(CLIENT_URL);
-        when(streamMock.getId()).thenReturn(STREAM_ID);
-        when(streamMock.getTitle()).thenReturn(TEST_STREAM_TITLE);
         when(eventMock.sourceStreams()).thenReturn(sourceStreams);
         when(eventMock.message()).thenReturn("Test Event Message");
         when(eventMock.eventTimestamp()).thenReturn(new DateTime(1));
-        when(streamServiceMock.loadByIds(sourceStreams)).thenReturn(streams);
+        when(streamCacheMock.getTitles(sourceStreams))
+            .thenReturn(Collections.singletonMap(STREAM_ID, TEST_STREAM_TITLE));
         when(ctxMock.event()).thenReturn(eventMock);
         when(eventDefinitionConfigMock.query()).thenReturn("Test=Query");
         when(eventDefinitionMock.title()).thenReturn(TEST_EVENT_TITLE);
@@ -97,9 +99,8 @@ public class MessageFactoryTest {
         when(ctxMock.eventDefinition()).thenReturn(eventDefinition);
 
         sourceStreams.add(STREAM_ID);
-        streams.add(streamMock);
 
-        sut = new MessageFactory(streamServiceMock, configMock);
+        sut = new MessageFactory(streamCacheMock, new StreamLinkBuilder(), 1024, configMock);
     }
 
     @Test
@@ -108,7 +109,7 @@ public class MessageFactoryTest {
         when(eventDefinitionMock.priority()).thenReturn(3);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -123,7 +124,7 @@ public class MessageFactoryTest {
         Link streamLink = result.getLinks().get(0);
         assertEquals(
             "Wrong Link Href",
-            "https://test/streams/0001/search?q=Test=Query",
+            "https://test/streams/0001/search?q=Test%3DQuery",
             streamLink.getHref().toString());
         assertEquals("Wrong Link Text", TEST_STREAM_TITLE, streamLink.getText());
         assertEquals(
@@ -143,7 +144,7 @@ public class MessageFactoryTest {
         when(eventDefinitionMock.priority()).thenReturn(2);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -158,7 +159,7 @@ public class MessageFactoryTest {
         Link streamLink = result.getLinks().get(0);
         assertEquals(
             "Wrong Link Href",
-            "https://test/streams/0001/search?q=Test=Query",
+            "https://test/streams/0001/search?q=Test%3DQuery",
             streamLink.getHref().toString());
         assertEquals("Wrong Link Text", TEST_STREAM_TITLE, streamLink.getText());
         assertEquals(
@@ -178,7 +179,7 @@ public class MessageFactoryTest {
         when(eventDefinitionMock.priority()).thenReturn(1);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -193,7 +194,7 @@ public class MessageFactoryTest {
         Link streamLink = result.getLinks().get(0);
         assertEquals(
             "Wrong Link Href",
-            "https://test/streams/0001/search?q=Test=Query",
+            "https://test/streams/0001/search?q=Test%3DQuery",
             streamLink.getHref().toString());
         assertEquals("Wrong Link Text", TEST_STREAM_TITLE, streamLink.getText());
         assertEquals(
@@ -213,7 +214,7 @@ public class MessageFactoryTest {
         when(eventDefinitionMock.priority()).thenReturn(-1);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -228,7 +229,7 @@ public class MessageFactoryTest {
         Link streamLink = result.getLinks().get(0);
         assertEquals(
             "Wrong Link Href",
-            "https://test/streams/0001/search?q=Test=Query",
+            "https://test/streams/0001/search?q=Test%3DQuery",
             streamLink.getHref().toString());
         assertEquals("Wrong Link Text", TEST_STREAM_TITLE, streamLink.getText());
         assertEquals(
@@ -248,7 +249,7 @@ public class MessageFactoryTest {
         when(eventDefinitionMock.priority()).thenReturn(-1);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -263,7 +264,7 @@ public class MessageFactoryTest {
         Link streamLink = result.getLinks().get(0);
         assertEquals(
             "Wrong Link Href",
-            "https://test/streams/0001/search?q=Test=Query",
+            "https://test/streams/0001/search?q=Test%3DQuery",
             streamLink.getHref().toString());
         assertEquals("Wrong Link Text", TEST_STREAM_TITLE, streamLink.getText());
         assertEquals(
@@ -283,7 +284,7 @@ public class MessageFactoryTest {
         when(configMock.customIncident()).thenReturn(false);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -295,7 +296,7 @@ public class MessageFactoryTest {
         Link streamLink = result.getLinks().get(0);
         assertEquals(
             "Wrong Link Href",
-            "https://test/streams/0001/search?q=Test=Query",
+            "https://test/streams/0001/search?q=Test%3DQuery",
             streamLink.getHref().toString());
         assertEquals("Wrong Link Text", TEST_STREAM_TITLE, streamLink.getText());
         assertEquals(
@@ -313,10 +314,10 @@ public class MessageFactoryTest {
     public void testNoSourceStreams() {
         // Set up
         sourceStreams.clear();
-        streams.clear();
+        when(streamCacheMock.getTitles(sourceStreams)).thenReturn(Collections.emptyMap());
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -346,7 +347,7 @@ public class MessageFactoryTest {
         when(ctxMock.eventDefinition()).thenReturn(eventDefinition);
 
         // Execute
-        PagerDutyMessage result = sut.createTriggerMessage(ctxMock);
+        PagerDutyMessage result = sut.createMessage(ctxMock);
 
         // Assert
         assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
@@ -375,12 +376,159 @@ public class MessageFactoryTest {
             result.getPayload().toString());
     }
 
+    @Test
+    public void testHashedDedupKeyIgnoresStreamOrder() {
+        // Set up
+        when(configMock.hashedDedupKey()).thenReturn(true);
+        when(eventDefinitionMock.id()).thenReturn("DefinitionId");
+        Set<String> reversed = new LinkedHashSet<>();
+        reversed.add("0003");
+        reversed.add("0002");
+        reversed.add(STREAM_ID);
+        Set<String> ordered = new LinkedHashSet<>();
+        ordered.add(STREAM_ID);
+        ordered.add("0002");
+        ordered.add("0003");
+
+        // Execute
+        when(eventMock.sourceStreams()).thenReturn(reversed);
+        String first = sut.createMessage(ctxMock).getDedupKey();
+        when(eventMock.sourceStreams()).thenReturn(ordered);
+        String second = sut.createMessage(ctxMock).getDedupKey();
+
+        // Assert
+        assertEquals("Wrong DedupKey", first, second);
+        assertTrue("Wrong DedupKey prefix", first.startsWith(KEY_PREFIX + "/"));
+        assertEquals("Wrong DedupKey length", KEY_PREFIX.length() + 1 + 32, first.length());
+    }
+
+    @Test
+    public void testHashedDedupKeyDependsOnDefinition() {
+        // Set up
+        when(configMock.hashedDedupKey()).thenReturn(true);
+        when(eventDefinitionMock.id()).thenReturn("DefinitionA");
+        String first = sut.createMessage(ctxMock).getDedupKey();
+        when(eventDefinitionMock.id()).thenReturn("DefinitionB");
+
+        // Execute
+        String second = sut.createMessage(ctxMock).getDedupKey();
+
+        // Assert
+        assertNotEquals("Same DedupKey", first, second);
+        assertEquals("Wrong DedupKey length", first.length(), second.length());
+    }
+
+    @Test
+    public void testTemplates() {
+        // Set up
+        when(configMock.summaryTemplate())
+            .thenReturn("${event_definition.title}: ${event.message}");
+        when(configMock.dedupKeyTemplate()).thenReturn("team-a/${event_definition.title}");
+        when(configMock.componentTemplate()).thenReturn("disk");
+        when(configMock.groupTemplate()).thenReturn("${event.fields.host}");
+        when(configMock.classTemplate()).thenReturn("capacity");
+        when(eventMock.fields()).thenReturn(Collections.singletonMap("host", "web-1"));
+        sut = new MessageFactory(streamCacheMock, new StreamLinkBuilder(), 1024, configMock);
+
+        // Execute
+        PagerDutyMessage result = sut.createMessage(ctxMock);
+
+        // Assert
+        assertEquals("Wrong DedupKey", "team-a/" + TEST_EVENT_TITLE, result.getDedupKey());
+        assertEquals(
+            "Wrong Payload",
+            "{summary=" + TEST_EVENT_TITLE + ": Test Event Message, "
+            + "severity=critical, "
+            + "component=disk, source=Graylog:[0001], "
+            + "class=capacity, "
+            + "timestamp=" + TEST_TIMESTAMP + ", "
+            + "group=web-1}",
+            result.getPayload().toString());
+    }
+
+    @Test
+    public void testEventActionTemplate() {
+        // Set up
+        when(configMock.eventActionTemplate()).thenReturn("${event.fields.action}");
+        when(eventMock.fields()).thenReturn(Collections.singletonMap("action", "Resolve"));
+        sut = new MessageFactory(streamCacheMock, new StreamLinkBuilder(), 1024, configMock);
+
+        // Execute
+        PagerDutyMessage result = sut.createMessage(ctxMock);
+
+        // Assert
+        assertEquals("Wrong Event Action", "resolve", result.getEventAction());
+        assertEquals(
+            "Wrong DedupKey",
+            KEY_PREFIX + "/[" + STREAM_ID + "]/" + TEST_EVENT_TITLE,
+            result.getDedupKey());
+    }
+
+    @Test
+    public void testUnknownEventActionTriggers() {
+        // Set up
+        when(configMock.eventActionTemplate()).thenReturn("${event.fields.action}");
+        when(eventMock.fields()).thenReturn(Collections.emptyMap());
+        sut = new MessageFactory(streamCacheMock, new StreamLinkBuilder(), 1024, configMock);
+
+        // Execute
+        PagerDutyMessage result = sut.createMessage(ctxMock);
+
+        // Assert
+        assertEquals("Wrong Event Action", "trigger", result.getEventAction());
+    }
+
+    @Test
+    public void testEventDetails() {
+        // Set up
+        when(configMock.includeDetails()).thenReturn(true);
+        when(eventMock.fields()).thenReturn(Collections.singletonMap("host", "web-1"));
+        when(ctxMock.backlog()).thenReturn(ImmutableList.of());
+
+        // Execute
+        PagerDutyMessage result = sut.createMessage(ctxMock);
+
+        // Assert
+        assertTrue(
+            "Wrong Custom Details",
+            result.getPayload().get("custom_details") instanceof EventDetails);
+    }
+
+    @Test
+    public void testNoEventDetails() {
+        // Execute
+        PagerDutyMessage result = sut.createMessage(ctxMock);
+
+        // Assert
+        assertFalse(
+            "Unexpected Custom Details", result.getPayload().containsKey("custom_details"));
+    }
+
+    @Test
+    public void testChangeEvent() {
+        // Execute
+        PagerDutyChangeEvent result = sut.createChangeEvent(ctxMock);
+
+        // Assert
+        assertEquals("Wrong RoutingKey", ROUTING_KEY, result.getRoutingKey());
+        assertEquals("Wrong Stream Links Count", 1, result.getLinks().size());
+        assertEquals(
+            "Wrong Link Href",
+            "https://test/streams/0001/search?q=Test%3DQuery",
+            result.getLinks().get(0).getHref().toString());
+        assertEquals(
+            "Wrong Summary", "Test Event Message", result.getPayload().get("summary"));
+        assertEquals("Wrong Source", "Graylog:[0001]", result.getPayload().get("source"));
+        assertEquals("Wrong Timestamp", TEST_TIMESTAMP, result.getPayload().get("timestamp"));
+        assertFalse("Unexpected Severity", result.getPayload().containsKey("severity"));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testMalformedClientUrl() {
         // Set up
         when(configMock.clientUrl()).thenReturn("Test\\Wrong\\URL");
 
         // Execute
-        sut.createTriggerMessage(ctxMock);
+        sut.createMessage(ctxMock);
     }
 }
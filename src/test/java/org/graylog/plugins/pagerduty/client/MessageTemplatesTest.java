@@ -0,0 +1,147 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.graylog.plugins.pagerduty.dto.Link;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageTemplatesTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MessageTemplates sut;
+
+    @Before
+    public void setUp() {
+        sut = new MessageTemplates(objectMapper);
+    }
+
+    private void assertSameJson(PagerDutyMessage message) throws IOException {
+        assertEquals(
+            "Wrong JSON",
+            objectMapper.readTree(objectMapper.writeValueAsBytes(message)),
+            objectMapper.readTree(sut.serialize(message)));
+    }
+
+    private static Map<String, Object> payload() {
+        final Map<String, Object> payload = new HashMap<>(MessageTemplate.STATIC_PAYLOAD);
+        payload.put("summary", "Disk \"full\" \u00e9");
+        payload.put("severity", "critical");
+        payload.put("custom_details", Collections.singletonMap("occurrences", 3));
+        return payload;
+    }
+
+    @Test
+    public void testCompleteMessage() throws IOException {
+        // Assert
+        assertSameJson(new PagerDutyMessage(
+            "01234567890123456789012345678901",
+            "trigger",
+            "prefix/[stream]/title",
+            "Graylog",
+            "https://graylog.test/",
+            Collections.singletonList(
+                new Link(new URL("https://graylog.test/streams/1/search"), "Stream")),
+            payload()));
+    }
+
+    @Test
+    public void testEmptyFieldsAreLeftOut() throws IOException {
+        // Assert
+        assertSameJson(new PagerDutyMessage(
+            "", "trigger", "", null, null, Collections.emptyList(), payload()));
+        assertSameJson(new PagerDutyMessage(null, null, null, null, null, null, null));
+    }
+
+    @Test
+    public void testChangedStaticPayloadIsWritten() throws IOException {
+        // Setup
+        final Map<String, Object> payload = payload();
+        payload.put("component", "Digest");
+
+        // Assert
+        assertSameJson(new PagerDutyMessage(
+            "01234567890123456789012345678901", "trigger", null, null, null, null, payload));
+    }
+
+    @Test
+    public void testTemplateIsReusedForEventsOfANotification() throws IOException {
+        // Setup
+        final Map<String, Object> payload = payload();
+        payload.put("summary", "Second event");
+
+        // Execute
+        sut.serialize(new PagerDutyMessage(
+            "01234567890123456789012345678901", "trigger", "first", null, null, null, payload()));
+
+        // Assert
+        assertSameJson(new PagerDutyMessage(
+            "01234567890123456789012345678901", "trigger", "second", null, null, null, payload));
+    }
+
+    @Test
+    public void testSerializationAllocatesLittleMoreThanTheEvent() throws IOException {
+        // Setup
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations =
+            (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        final PagerDutyMessage message = new PagerDutyMessage(
+            "01234567890123456789012345678901",
+            "trigger",
+            "prefix/[stream]/title",
+            "Graylog",
+            "https://graylog.test/",
+            Collections.singletonList(
+                new Link(new URL("https://graylog.test/streams/1/search"), "Stream")),
+            payload());
+        final int size = sut.serialize(message).length;
+        for (int i = 0; i < 20_000; i++) {
+            sut.serialize(message);
+        }
+        final long threadId = Thread.currentThread().getId();
+
+        // Execute
+        final int events = 10_000;
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < events; i++) {
+            sut.serialize(message);
+        }
+        final long perEvent = (allocations.getThreadAllocatedBytes(threadId) - before) / events;
+
+        // Assert
+        assertTrue(
+            "Allocated " + perEvent + " bytes per event of " + size + " bytes",
+            perEvent < size + 2048);
+    }
+}
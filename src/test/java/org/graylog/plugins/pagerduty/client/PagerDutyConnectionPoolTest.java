@@ -0,0 +1,53 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertSame;
+
+import com.github.joschi.jadconfig.util.Duration;
+import java.io.IOException;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PagerDutyConnectionPoolTest {
+    private PagerDutyConnectionPool sut;
+
+    @Before
+    public void setUp() {
+        sut = new PagerDutyConnectionPool(
+            10, 5, Duration.seconds(30), Duration.seconds(1), Duration.seconds(1));
+    }
+
+    @Test
+    public void testHttpClientIsShared() {
+        // Assert
+        assertSame("Different client instances", sut.getHttpClient(), sut.getHttpClient());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testShutdownClosesThePool() throws IOException {
+        // Setup
+        sut.startAsync().awaitRunning();
+        sut.stopAsync().awaitTerminated();
+
+        // Execute
+        sut.getHttpClient().execute(new HttpPost("http://localhost/"));
+    }
+}
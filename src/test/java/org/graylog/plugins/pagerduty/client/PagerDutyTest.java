@@ -18,37 +18,31 @@
 
 package org.graylog.plugins.pagerduty.client;
 
-import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.atMostOnce;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.CloseableHttpClient;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import org.graylog.events.event.EventDto;
 import org.graylog.events.notifications.EventNotificationContext;
-import org.graylog.plugins.pagerduty.PagerDutyNotificationConfig;
+import org.graylog.events.processor.EventDefinitionDto;
+import org.graylog.plugins.pagerduty.dispatch.AutoResolver;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dispatch.StormDigest;
+import org.graylog.plugins.pagerduty.dto.PagerDutyChangeEvent;
 import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
-import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
-import org.graylog2.streams.StreamService;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * @author Edgar Molina
  *
@@ -56,13 +50,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class PagerDutyTest
 {
     @Mock
-    private StreamService streamServiceMock;
+    private PagerDutyDispatcher dispatcherMock;
     @Mock
-    private PagerDutyNotificationConfig configMock;
+    private StormDigest stormDigestMock;
     @Mock
-    private CloseableHttpClient httpClientMock;
+    private AutoResolver autoResolverMock;
     @Mock
-    private ObjectMapper objectMapperMock;
+    private ChangeEventSender changeSenderMock;
     @Mock
     private MessageFactory messageFactoryMock;
     @Mock
@@ -72,87 +66,164 @@ public class PagerDutyTest
     @Mock
     private EventNotificationContext contextMock;
     @Mock
-    private CloseableHttpResponse httpResponseMock;
-    @Mock
-    private HttpEntity entityMock;
-    @Mock
-    private InputStream contentMock;
+    private EventDto eventMock;
     @Mock
-    private PagerDutyResponse pagerDutyResponseMock;
-
+    private EventDefinitionDto eventDefinitionMock;
 
     private PagerDuty sut;
 
     @Before
-    public void setUp() throws ClientProtocolException, IOException
+    public void setUp()
     {
         MockitoAnnotations.initMocks(this);
-        when(messageFactoryMock.createTriggerMessage(contextMock)).thenReturn(messageMock);
-        when(objectMapperMock.writeValueAsString(messageMock)).thenReturn("{test='json'}");
-        when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
-        when(entityMock.getContent()).thenReturn(contentMock);
-        when(httpResponseMock.getEntity()).thenReturn(entityMock);
-        when(objectMapperMock.readValue(contentMock, PagerDutyResponse.class))
-            .thenReturn(pagerDutyResponseMock);
-        sut =
-            new PagerDuty(
-                streamServiceMock,
-                configMock,
-                httpClientMock,
-                objectMapperMock,
-                messageFactoryMock,
-                loggerMock);
+        when(messageFactoryMock.createMessage(contextMock)).thenReturn(messageMock);
+        when(messageMock.getEventAction()).thenReturn(PagerDutyMessage.TRIGGER);
+        when(contextMock.event()).thenReturn(eventMock);
+        when(contextMock.eventDefinition()).thenReturn(Optional.of(eventDefinitionMock));
+        when(eventMock.sourceStreams()).thenReturn(Collections.singleton("stream-id"));
+        when(eventDefinitionMock.title()).thenReturn("Disk full");
+        sut = new PagerDuty(
+            dispatcherMock,
+            stormDigestMock,
+            autoResolverMock,
+            0L,
+            changeSenderMock,
+            false,
+            messageFactoryMock,
+            loggerMock);
+    }
+
+    @Test
+    public void testSuccessfulTriggerAttempt()
+    {
+        // Execute
+        sut.trigger(contextMock);
+
+        // Assert
+        verify(messageFactoryMock).createMessage(contextMock);
+        verify(dispatcherMock).dispatch(messageMock, Collections.singleton("stream-id"));
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testTriggerAttemptWithFullQueue()
+    {
+        // Setup
+        doThrow(IllegalStateException.class)
+            .when(dispatcherMock)
+            .dispatch(messageMock, Collections.singleton("stream-id"));
+
+        // Execute
+        sut.trigger(contextMock);
+    }
+
+    @Test
+    public void testDigestedEventIsNotDispatched()
+    {
+        // Setup
+        final Set<String> streams = Collections.singleton("stream-id");
+        when(stormDigestMock.absorb(messageMock, "Disk full", streams)).thenReturn(true);
+
+        // Execute
+        sut.trigger(contextMock);
+
+        // Assert
+        verify(stormDigestMock).absorb(messageMock, "Disk full", streams);
+        verify(dispatcherMock, never()).dispatch(any(PagerDutyMessage.class), anySet());
     }
 
     @Test
-    public void testSuccessfulTriggerAttempt() throws IOException
+    public void testResolveBypassesStormDigest()
     {
         // Setup
-        ArgumentCaptor<HttpPost> postEntityCaptor = ArgumentCaptor.forClass(HttpPost.class);
+        when(messageMock.getEventAction()).thenReturn(PagerDutyMessage.RESOLVE);
 
         // Execute
-        PagerDutyResponse result = sut.trigger(contextMock);
+        sut.trigger(contextMock);
 
         // Assert
-        verify(httpResponseMock).close();
-        verify(httpClientMock).execute(postEntityCaptor.capture());
-        verify(messageFactoryMock).createTriggerMessage(contextMock);
-        assertEquals("Wrong Response Object", pagerDutyResponseMock, result);
-        assertEquals(
-            "Wrong Payload",
-            "{test='json'}",
-            IOUtils.toString(
-                postEntityCaptor.getValue().getEntity().getContent(),
-                StandardCharsets.UTF_8));
+        verify(stormDigestMock, never()).absorb(any(PagerDutyMessage.class), any(), anySet());
+        verify(dispatcherMock).dispatch(messageMock, Collections.singleton("stream-id"));
     }
 
     @Test
-    public void testSuccessfulClose() throws IOException
+    public void testTriggerStartsQuietPeriod()
     {
+        // Setup
+        sut = new PagerDuty(
+            dispatcherMock,
+            stormDigestMock,
+            autoResolverMock,
+            60_000L,
+            changeSenderMock,
+            false,
+            messageFactoryMock,
+            loggerMock);
+
         // Execute
-        sut.close();
+        sut.trigger(contextMock);
 
         // Assert
-        verify(httpClientMock, atMostOnce()).close();
+        verify(autoResolverMock).touch(messageMock, 60_000L);
+        verify(dispatcherMock).dispatch(messageMock, Collections.singleton("stream-id"));
     }
 
-    @Test (expected = IOException.class)
-    public void testExceptionWhenClosing() throws IOException
+    @Test
+    public void testResolveCancelsQuietPeriod()
     {
-        // Set up
-        doThrow(IOException.class).when(httpClientMock).close();
+        // Setup
+        when(messageMock.getEventAction()).thenReturn(PagerDutyMessage.RESOLVE);
+        sut = new PagerDuty(
+            dispatcherMock,
+            stormDigestMock,
+            autoResolverMock,
+            60_000L,
+            changeSenderMock,
+            false,
+            messageFactoryMock,
+            loggerMock);
+
+        // Execute
+        sut.trigger(contextMock);
+
+        // Assert
+        verify(autoResolverMock).cancel(messageMock);
+        verify(autoResolverMock, never()).touch(any(PagerDutyMessage.class), anyLong());
+    }
 
+    @Test
+    public void testAutoResolveIsOffByDefault()
+    {
         // Execute
-        sut.close();
+        sut.trigger(contextMock);
+
+        // Assert
+        verify(autoResolverMock, never()).touch(any(PagerDutyMessage.class), anyLong());
     }
 
-    @Test (expected = IllegalStateException.class)
-    public void testTriggerAttemptWithException() throws IOException
+    @Test
+    public void testChangeEventIsBuffered()
     {
         // Setup
-        when(httpClientMock.execute(any(HttpPost.class))).thenThrow(IOException.class);
+        final PagerDutyChangeEvent changeEvent =
+            new PagerDutyChangeEvent("routing-key", null, null);
+        when(messageFactoryMock.createChangeEvent(contextMock)).thenReturn(changeEvent);
+        sut = new PagerDuty(
+            dispatcherMock,
+            stormDigestMock,
+            autoResolverMock,
+            60_000L,
+            changeSenderMock,
+            true,
+            messageFactoryMock,
+            loggerMock);
 
         // Execute
         sut.trigger(contextMock);
+
+        // Assert
+        verify(changeSenderMock).enqueue(changeEvent);
+        verify(messageFactoryMock, never()).createMessage(contextMock);
+        verify(dispatcherMock, never()).dispatch(any(PagerDutyMessage.class), anySet());
+        verify(autoResolverMock, never()).touch(any(PagerDutyMessage.class), anyLong());
     }
 }
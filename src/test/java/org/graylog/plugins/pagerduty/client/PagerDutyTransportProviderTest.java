@@ -0,0 +1,66 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.inject.Provider;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PagerDutyTransportProviderTest {
+    @Mock
+    private PooledHttpTransport pooledTransportMock;
+    @Mock
+    private Http2Transport http2TransportMock;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testPooledTransport() {
+        // Assert
+        assertSame("Wrong transport", pooledTransportMock, create("pooled").get());
+    }
+
+    @Test
+    public void testHttp2TransportIgnoresCase() {
+        // Assert
+        assertSame("Wrong transport", http2TransportMock, create(" HTTP2 ").get());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testUnknownTransport() {
+        // Execute
+        create("carrier-pigeon").get();
+    }
+
+    private PagerDutyTransportProvider create(String transport) {
+        final Map<String, Provider<PagerDutyTransport>> transports = new HashMap<>();
+        transports.put(PooledHttpTransport.NAME, () -> pooledTransportMock);
+        transports.put(Http2Transport.NAME, () -> http2TransportMock);
+        return new PagerDutyTransportProvider(transport, transports);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.github.joschi.jadconfig.util.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import okhttp3.OkHttpClient;
+import org.graylog.plugins.pagerduty.dispatch.PagerDutyDispatcher;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.graylog.plugins.pagerduty.stub.EventsApiStub;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the bundled transports against the in-process {@link EventsApiStub}.
+ */
+public class PagerDutyTransportStubTest {
+    private static final byte[] EVENT =
+        "{\"routing_key\":\"01234567890123456789012345678901\",\"event_action\":\"trigger\","
+            .concat("\"dedup_key\":\"Graylog/test\",\"payload\":{\"summary\":\"Test\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private PagerDutyConnectionPool connectionPool;
+    private PooledHttpTransport pooledTransport;
+    private Http2Transport http2Transport;
+    private EventsApiStub stub;
+
+    @Before
+    public void setUp() {
+        connectionPool = new PagerDutyConnectionPool(
+            10, 10, Duration.seconds(30), Duration.seconds(5), Duration.seconds(5));
+        http2Transport = new Http2Transport(
+            new OkHttpClient(), 16, Duration.seconds(30), Duration.seconds(5), Duration.seconds(5));
+        pooledTransport = new PooledHttpTransport(
+            connectionPool, 10, 100, PagerDutyDispatcher.PLATFORM_MODE, 1000);
+        connectionPool.startAsync().awaitRunning();
+        pooledTransport.startAsync().awaitRunning();
+        http2Transport.startAsync().awaitRunning();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pooledTransport.stopAsync().awaitTerminated();
+        connectionPool.stopAsync().awaitTerminated();
+        http2Transport.stopAsync().awaitTerminated();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testPooledTransportAccepted() throws Exception {
+        // Setup
+        stub = EventsApiStub.builder().build().start();
+
+        // Execute
+        PagerDutyResponse result =
+            pooledTransport.send(stub.endpoint(), EVENT).get();
+
+        // Assert
+        assertEquals("Wrong Status", "success", result.getStatus());
+        assertEquals("Wrong DedupKey", "Graylog/test", result.getDedupKey());
+        assertEquals("Wrong Request Count", 1, stub.requestCount());
+    }
+
+    @Test
+    public void testPooledTransportInvalidEvent() throws Exception {
+        // Setup
+        stub = EventsApiStub.builder().respond(400, 1).build().start();
+
+        // Execute
+        PagerDutyResponse result =
+            pooledTransport.send(stub.endpoint(), EVENT).get();
+
+        // Assert
+        assertEquals("Wrong Status", "invalid event", result.getStatus());
+        assertEquals("Wrong Error Count", 1, result.getErrors().size());
+    }
+
+    @Test
+    public void testPooledTransportThrottled() throws Exception {
+        // Setup
+        stub = EventsApiStub.builder().respond(429, 1).retryAfterSeconds(7).build().start();
+
+        // Execute
+        PagerDutyResponse result =
+            pooledTransport.send(stub.endpoint(), EVENT).get();
+
+        // Assert
+        assertFalse("Accepted", result.isAccepted());
+        assertEquals("Wrong Retry After", 7, result.getRetryAfter().get().getSeconds());
+    }
+
+    @Test
+    public void testTransportsSurviveHugeErrorPages() throws Exception {
+        // Setup
+        stub = EventsApiStub.builder().respond(503, 1).errorPageBytes(4 * 1024 * 1024)
+            .build().start();
+
+        // Execute
+        for (int i = 0; i < 3; i++) {
+            PagerDutyResponse pooled = pooledTransport.send(stub.endpoint(), EVENT).get();
+            PagerDutyResponse http2 = http2Transport.send(stub.endpoint(), EVENT).get();
+
+            // Assert
+            assertEquals("Wrong HTTP Status", 503, pooled.getHttpStatus());
+            assertEquals("Wrong HTTP Status", 503, http2.getHttpStatus());
+            assertEquals("Wrong Error Count", 1, pooled.getErrors().size());
+            assertEquals("Wrong Error Count", 1, http2.getErrors().size());
+        }
+    }
+
+    @Test
+    public void testHttp2TransportConcurrentRequests() throws Exception {
+        // Setup
+        stub = EventsApiStub.builder().latency(20, 40).build().start();
+        final List<CompletableFuture<PagerDutyResponse>> results =
+            Collections.synchronizedList(new ArrayList<>());
+
+        // Execute
+        for (int i = 0; i < 50; i++) {
+            results.add(http2Transport.send(stub.endpoint(), EVENT));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get();
+
+        // Assert
+        assertEquals("Wrong Request Count", 50, stub.requestCount());
+        assertEquals("Wrong Accepted Count", 50, stub.responseCount(202));
+        for (CompletableFuture<PagerDutyResponse> result : results) {
+            assertEquals("Wrong Status", "success", result.get().getStatus());
+        }
+    }
+
+    @Test
+    public void testUnusedHttp2TransportIsNeverBuilt() {
+        // Setup
+        final OkHttpClient graylogHttpClient = mock(OkHttpClient.class);
+        final Http2Transport unused = new Http2Transport(
+            graylogHttpClient, 16, Duration.seconds(30), Duration.seconds(5), Duration.seconds(5));
+
+        // Execute
+        unused.startAsync().awaitRunning();
+        unused.stopAsync().awaitTerminated();
+
+        // Assert
+        verify(graylogHttpClient, never()).newBuilder();
+    }
+}
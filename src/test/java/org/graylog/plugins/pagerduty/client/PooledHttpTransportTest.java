@@ -0,0 +1,261 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PooledHttpTransportTest {
+    private static final URI API_URL = URI.create("https://events.pagerduty.test/v2/enqueue");
+    private static final URI CHANGE_API_URL =
+        URI.create("https://events.pagerduty.test/v2/change/enqueue");
+    private static final byte[] PAYLOAD = "{\"test\":\"json\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private CloseableHttpClient httpClientMock;
+    @Mock
+    private CloseableHttpResponse httpResponseMock;
+
+    private ByteArrayInputStream content;
+    private PooledHttpTransport sut;
+
+    @Before
+    public void setUp() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
+        respond(
+            202,
+            "application/json",
+            "{\"status\":\"success\",\"message\":\"Event processed\",\"dedup_key\":\"key\"}");
+        sut = new PooledHttpTransport(httpClientMock, new ResponseParser(), Runnable::run);
+    }
+
+    @Test
+    public void testSuccessfulSend() throws Exception {
+        // Setup
+        ArgumentCaptor<HttpPost> postEntityCaptor = ArgumentCaptor.forClass(HttpPost.class);
+
+        // Execute
+        CompletableFuture<PagerDutyResponse> result = sut.send(API_URL, PAYLOAD);
+
+        // Assert
+        verify(httpResponseMock).close();
+        verify(httpClientMock, never()).close();
+        verify(httpClientMock).execute(postEntityCaptor.capture());
+        assertTrue("Not accepted", result.get().isAccepted());
+        assertEquals("Wrong DedupKey", "key", result.get().getDedupKey());
+        assertEquals("Body not drained", 0, content.available());
+        assertEquals("Wrong Endpoint", API_URL, postEntityCaptor.getValue().getURI());
+        assertEquals(
+            "Wrong Content Type",
+            "application/json; charset=UTF-8",
+            postEntityCaptor.getValue().getEntity().getContentType().getValue());
+        assertEquals(
+            "Wrong Payload",
+            "{\"test\":\"json\"}",
+            IOUtils.toString(
+                postEntityCaptor.getValue().getEntity().getContent(),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testThrottledSend() throws Exception {
+        // Setup
+        respond(429, "application/json", "{\"status\":\"throttle event\"}");
+        when(httpResponseMock.getFirstHeader("Retry-After"))
+            .thenReturn(new BasicHeader("Retry-After", "30"));
+
+        // Execute
+        PagerDutyResponse result = sut.send(API_URL, PAYLOAD).get();
+
+        // Assert
+        assertEquals("Wrong HTTP Status", 429, result.getHttpStatus());
+        assertEquals("Wrong Retry After", 30, result.getRetryAfter().get().getSeconds());
+    }
+
+    @Test
+    public void testHugeErrorPageIsNotDrained() throws Exception {
+        // Setup
+        final byte[] page = new byte[4 * 1024 * 1024];
+        Arrays.fill(page, (byte) 'x');
+        respond(502, "text/html", new String(page, StandardCharsets.US_ASCII));
+        ArgumentCaptor<HttpPost> postEntityCaptor = ArgumentCaptor.forClass(HttpPost.class);
+
+        // Execute
+        PagerDutyResponse result = sut.send(API_URL, PAYLOAD).get();
+
+        // Assert
+        verify(httpClientMock).execute(postEntityCaptor.capture());
+        assertEquals("Wrong HTTP Status", 502, result.getHttpStatus());
+        assertEquals("Wrong Error Count", 1, result.getErrors().size());
+        assertTrue("Request not aborted", postEntityCaptor.getValue().isAborted());
+        assertTrue("Body read entirely", content.available() > 3 * 1024 * 1024);
+    }
+
+    @Test
+    public void testSendWithException() throws IOException {
+        // Setup
+        when(httpClientMock.execute(any(HttpPost.class))).thenThrow(IOException.class);
+
+        // Execute
+        CompletableFuture<PagerDutyResponse> result = sut.send(API_URL, PAYLOAD);
+
+        // Assert
+        assertTrue("Not failed", result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testRejectedSendFailsWithIOException() throws Exception {
+        // Setup
+        sut = new PooledHttpTransport(
+            httpClientMock,
+            new ResponseParser(),
+            command -> {
+                throw new RejectedExecutionException();
+            });
+
+        // Execute
+        CompletableFuture<PagerDutyResponse> result = sut.send(API_URL, PAYLOAD);
+
+        // Assert
+        try {
+            result.get();
+            fail("Not failed");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Wrong Exception", e.getCause() instanceof IOException);
+        }
+        verify(httpClientMock, never()).execute(any(HttpPost.class));
+    }
+
+    @Test
+    public void testSendAfterShutdownFails() throws Exception {
+        // Setup
+        sut = new PooledHttpTransport(
+            httpClientMock, new ResponseParser(), Executors.newSingleThreadExecutor());
+        sut.startAsync().awaitRunning();
+        sut.stopAsync().awaitTerminated();
+
+        // Execute
+        CompletableFuture<PagerDutyResponse> result = sut.send(API_URL, PAYLOAD);
+
+        // Assert
+        assertTrue("Not failed", result.isCompletedExceptionally());
+        verify(httpClientMock, never()).execute(any(HttpPost.class));
+    }
+
+    @Test
+    public void testTransportWithExecutorDoesNotUseTheSharedThreads() throws Exception {
+        // Setup
+        sut = new PooledHttpTransport(
+            httpClientMock,
+            new ResponseParser(),
+            command -> {
+                throw new RejectedExecutionException();
+            });
+
+        // Execute
+        PagerDutyResponse result =
+            sut.withExecutor(Runnable::run).send(API_URL, PAYLOAD).get();
+
+        // Assert
+        assertTrue("Not accepted", result.isAccepted());
+    }
+
+    @Test
+    public void testRequestsPerEndpointAreLimited() throws Exception {
+        // Setup
+        final CountDownLatch release = new CountDownLatch(1);
+        when(httpClientMock.execute(any(HttpPost.class))).thenAnswer(invocation -> {
+            release.await();
+            return httpResponseMock;
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        sut = new PooledHttpTransport(httpClientMock, new ResponseParser(), executor, 1);
+
+        try {
+            // Execute
+            final CompletableFuture<PagerDutyResponse> first = sut.send(API_URL, PAYLOAD);
+            final CompletableFuture<PagerDutyResponse> second = sut.send(API_URL, PAYLOAD);
+            final CompletableFuture<PagerDutyResponse> change = sut.send(CHANGE_API_URL, PAYLOAD);
+
+            // Assert
+            verify(httpClientMock, timeout(5_000).times(1))
+                .execute(argThat(post -> CHANGE_API_URL.equals(post.getURI())));
+            verify(httpClientMock, after(200).times(1))
+                .execute(argThat(post -> API_URL.equals(post.getURI())));
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            change.get(5, TimeUnit.SECONDS);
+            verify(httpClientMock, times(3)).execute(any(HttpPost.class));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void respond(int status, String contentType, String body) {
+        content = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        final BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(content);
+        entity.setContentType(contentType);
+        when(httpResponseMock.getStatusLine())
+            .thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, null));
+        when(httpResponseMock.getEntity()).thenReturn(entity);
+        when(httpResponseMock.getFirstHeader("Content-Type"))
+            .thenReturn(new BasicHeader("Content-Type", contentType));
+    }
+}
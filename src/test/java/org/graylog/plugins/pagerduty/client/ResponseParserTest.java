@@ -0,0 +1,139 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.Test;
+
+public class ResponseParserTest {
+    private static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+
+    private final ResponseParser sut = new ResponseParser();
+
+    @Test
+    public void testAcceptedEvent() {
+        // Execute
+        PagerDutyResponse result = sut.parse(
+            202,
+            "application/json",
+            null,
+            body("{\"status\":\"success\",\"extra\":{\"nested\":[1,2]},"
+                + "\"message\":\"Event processed\",\"dedup_key\":\"key\"}"));
+
+        // Assert
+        assertTrue("Not accepted", result.isAccepted());
+        assertEquals("Wrong Status", "success", result.getStatus());
+        assertEquals("Wrong Message", "Event processed", result.getMessage());
+        assertEquals("Wrong DedupKey", "key", result.getDedupKey());
+        assertNull("Unexpected Errors", result.getErrors());
+        assertFalse("Unexpected Retry After", result.getRetryAfter().isPresent());
+    }
+
+    @Test
+    public void testAcceptedEventWithMalformedBody() {
+        // Execute
+        PagerDutyResponse result =
+            sut.parse(202, "application/json", null, body("{\"status\":\"succ"));
+
+        // Assert
+        assertTrue("Not accepted", result.isAccepted());
+        assertNull("Unexpected Errors", result.getErrors());
+    }
+
+    @Test
+    public void testInvalidEvent() {
+        // Execute
+        PagerDutyResponse result = sut.parse(
+            400,
+            "application/json; charset=utf-8",
+            null,
+            body("{\"status\":\"invalid event\",\"errors\":[\"first error\",\"second error\"]}"));
+
+        // Assert
+        assertFalse("Accepted", result.isAccepted());
+        assertEquals(
+            "Wrong Errors", Arrays.asList("first error", "second error"), result.getErrors());
+    }
+
+    @Test
+    public void testThrottledEventWithoutErrors() {
+        // Execute
+        PagerDutyResponse result = sut.parse(
+            429,
+            "application/json",
+            "2",
+            body("{\"status\":\"throttle event\",\"message\":\"Slow down\"}"));
+
+        // Assert
+        assertEquals(
+            "Wrong Errors", Collections.singletonList("HTTP 429: Slow down"), result.getErrors());
+        assertEquals("Wrong Retry After", Duration.ofSeconds(2), result.getRetryAfter().get());
+    }
+
+    @Test
+    public void testHugeErrorPageIsReadPartially() {
+        // Setup
+        final byte[] page = new byte[8 * 1024 * 1024];
+        Arrays.fill(page, (byte) 'x');
+        final byte[] prefix = "<html><body><h1>Bad Gateway</h1>".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(prefix, 0, page, 0, prefix.length);
+        final ByteArrayInputStream body = new ByteArrayInputStream(page);
+
+        // Execute
+        PagerDutyResponse result = sut.parse(502, "text/html", null, body);
+
+        // Assert
+        assertEquals("Wrong Error Count", 1, result.getErrors().size());
+        assertTrue(
+            "Wrong Error", result.getErrors().get(0).startsWith("HTTP 502: Bad Gateway xxx"));
+        assertTrue(
+            "Read too much",
+            page.length - body.available() <= ResponseParser.MAX_BODY_BYTES);
+    }
+
+    @Test
+    public void testRetryAfterDate() {
+        // Assert
+        assertEquals(
+            "Wrong Retry After",
+            Duration.ofSeconds(90),
+            ResponseParser.parseRetryAfter("Wed, 1 Jan 2020 00:01:30 GMT", NOW));
+        assertEquals(
+            "Wrong Retry After",
+            Duration.ZERO,
+            ResponseParser.parseRetryAfter("Tue, 31 Dec 2019 23:00:00 GMT", NOW));
+        assertNull("Unexpected Retry After", ResponseParser.parseRetryAfter("soon", NOW));
+    }
+
+    private static InputStream body(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.codahale.metrics.MetricRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetrySchedulerTest {
+    private static final PagerDutyResponse ACCEPTED =
+        new PagerDutyResponse(202, "success", "Event processed", "key", null, null);
+    private static final PagerDutyResponse UNAVAILABLE =
+        new PagerDutyResponse(503, null, null, null, Collections.singletonList("HTTP 503"), null);
+    private static final PagerDutyResponse BAD_REQUEST =
+        new PagerDutyResponse(400, "invalid event", null, null, null, null);
+
+    private MetricRegistry metricRegistry;
+    private RetryScheduler sut;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        sut = new RetryScheduler(
+            2, 1L, 8L, 10_000L, bound -> bound, System::currentTimeMillis, metricRegistry);
+        sut.startAsync().awaitRunning();
+    }
+
+    @After
+    public void tearDown() {
+        sut.stopAsync().awaitTerminated();
+    }
+
+    private static Supplier<CompletableFuture<PagerDutyResponse>> respond(
+        AtomicInteger calls, PagerDutyResponse... responses) {
+        return () -> CompletableFuture.completedFuture(
+            responses[Math.min(calls.getAndIncrement(), responses.length - 1)]);
+    }
+
+    private long count(String name) {
+        return metricRegistry.counter(MetricRegistry.name(RetryScheduler.class, name)).getCount();
+    }
+
+    @Test
+    public void testAcceptedOnFirstAttempt() throws Exception {
+        // Setup
+        final AtomicInteger calls = new AtomicInteger();
+
+        // Execute
+        Delivery result = sut.submit(respond(calls, ACCEPTED));
+
+        // Assert
+        assertEquals("Wrong Response", ACCEPTED, result.outcome().get(5, TimeUnit.SECONDS));
+        assertEquals("Wrong attempts", 1, count("attempts"));
+        assertEquals("Wrong retries", 0, count("retries"));
+    }
+
+    @Test
+    public void testTransientFailureIsRetriedInTheBackground() throws Exception {
+        // Setup
+        final AtomicInteger calls = new AtomicInteger();
+
+        // Execute
+        Delivery result = sut.submit(respond(calls, UNAVAILABLE, UNAVAILABLE, ACCEPTED));
+
+        // Assert
+        assertEquals("Wrong Response", ACCEPTED, result.outcome().get(5, TimeUnit.SECONDS));
+        assertEquals("Wrong calls", 3, calls.get());
+        assertEquals("Wrong retries", 2, count("retries"));
+    }
+
+    @Test
+    public void testSubmitReturnsWhileRetrying() {
+        // Setup
+        final CompletableFuture<PagerDutyResponse> never = new CompletableFuture<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        // Execute
+        Delivery result = sut.submit(
+            () -> calls.getAndIncrement() == 0
+                ? CompletableFuture.completedFuture(UNAVAILABLE)
+                : never);
+
+        // Assert
+        assertFalse("Outcome already final", result.outcome().isDone());
+        assertEquals("Wrong retries", 1, count("retries"));
+    }
+
+    @Test
+    public void testPermanentFailureIsNotRetried() throws Exception {
+        // Setup
+        final AtomicInteger calls = new AtomicInteger();
+
+        // Execute
+        Delivery result = sut.submit(respond(calls, BAD_REQUEST, ACCEPTED));
+
+        // Assert
+        assertEquals("Wrong Response", BAD_REQUEST, result.outcome().get(5, TimeUnit.SECONDS));
+        assertEquals("Wrong calls", 1, calls.get());
+        assertEquals("Wrong permanent failures", 1, count("permanent-failures"));
+    }
+
+    @Test
+    public void testGivesUpAfterDeadline() throws Exception {
+        // Setup
+        tearDown();
+        final AtomicLong clock = new AtomicLong();
+        sut = new RetryScheduler(1, 10L, 10L, 25L, bound -> bound, clock::get, metricRegistry);
+        sut.startAsync().awaitRunning();
+        final AtomicInteger calls = new AtomicInteger();
+
+        // Execute
+        Delivery result = sut.submit(() -> {
+            calls.incrementAndGet();
+            clock.addAndGet(10L);
+            final CompletableFuture<PagerDutyResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("connection reset"));
+            return failed;
+        });
+
+        // Assert
+        try {
+            result.outcome().get(5, TimeUnit.SECONDS);
+            fail("Delivery did not give up");
+        }
+        catch (ExecutionException e) {
+            assertTrue("Wrong cause", e.getCause() instanceof IOException);
+        }
+        assertEquals("Wrong calls", 2, calls.get());
+        assertEquals("Wrong give ups", 1, count("give-ups"));
+    }
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToTheCap() {
+        // Assert
+        assertEquals("First retry", 1L, sut.backoffMillis(0, null));
+        assertEquals("Second retry", 2L, sut.backoffMillis(1, null));
+        assertEquals("Third retry", 4L, sut.backoffMillis(2, null));
+        assertEquals("Capped", 8L, sut.backoffMillis(10, null));
+        assertEquals("Capped on overflow", 8L, sut.backoffMillis(100, null));
+    }
+
+    @Test
+    public void testBackoffHonoursRetryAfter() {
+        // Setup
+        final PagerDutyResponse throttled =
+            new PagerDutyResponse(429, null, null, null, null, Duration.ofSeconds(3));
+
+        // Assert
+        assertEquals("Wrong delay", 3_000L, sut.backoffMillis(0, throttled));
+    }
+
+    @Test
+    public void testTransientFailures() {
+        // Assert
+        assertTrue("IOException", RetryScheduler.isTransient(null, new IOException()));
+        assertTrue(
+            "Rate limit",
+            RetryScheduler.isTransient(null, new RateLimitExceededException("exhausted")));
+        assertTrue("503", RetryScheduler.isTransient(UNAVAILABLE, null));
+        assertTrue(
+            "429",
+            RetryScheduler.isTransient(
+                new PagerDutyResponse(429, null, null, null, null, null), null));
+        assertFalse("400", RetryScheduler.isTransient(BAD_REQUEST, null));
+        assertFalse("Bug", RetryScheduler.isTransient(null, new IllegalArgumentException()));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoutingKeyRateLimiterTest {
+    private static final String FIRST_KEY = "01234567890123456789012345678901";
+    private static final String SECOND_KEY = "abcdefabcdefabcdefabcdefabcdefab";
+
+    private final AtomicLong clock = new AtomicLong();
+    private RoutingKeyRateLimiter sut;
+
+    @Before
+    public void setUp() {
+        sut = new RoutingKeyRateLimiter(60, 1, 5_000, clock::get);
+    }
+
+    @Test
+    public void testRoutingKeysAreLimitedIndependently() {
+        // Assert
+        assertEquals("First key", 0, sut.reserve(FIRST_KEY));
+        assertEquals("Second key", 0, sut.reserve(SECOND_KEY));
+        assertEquals("First key paced", 1_000_000_000L, sut.reserve(FIRST_KEY));
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testThrottledKeyFailsAfterMaxWait() {
+        // Setup
+        sut.onResponse(
+            FIRST_KEY,
+            new PagerDutyResponse(429, null, null, null, null, Duration.ofMinutes(1)));
+
+        // Execute
+        sut.reserve(FIRST_KEY);
+    }
+
+    @Test
+    public void testThrottlingOnlyAffectsItsKey() {
+        // Setup
+        sut.onResponse(
+            FIRST_KEY,
+            new PagerDutyResponse(429, null, null, null, null, Duration.ofMinutes(1)));
+
+        // Assert
+        assertEquals("Second key", 0, sut.reserve(SECOND_KEY));
+        assertEquals("Second key paced", 1_000_000_000L, sut.reserve(SECOND_KEY));
+    }
+
+    @Test
+    public void testUnusedKeysAreDropped() {
+        // Setup
+        sut.reserve(FIRST_KEY);
+        sut.reserve(SECOND_KEY);
+
+        // Execute
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(30));
+        sut.reserve(SECOND_KEY);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(31));
+
+        // Assert
+        assertEquals("Wrong bucket count", 1, sut.bucketCount());
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.graylog.plugins.pagerduty.dto.Link;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamLinkBuilderTest {
+    private StreamLinkBuilder sut;
+
+    @Before
+    public void setUp() {
+        sut = new StreamLinkBuilder(10);
+    }
+
+    @Test
+    public void testLinkWithoutQuery() {
+        // Execute
+        final Link result = sut.build("https://graylog.test", "0001", "Stream", null);
+
+        // Assert
+        assertEquals(
+            "Wrong Link Href",
+            "https://graylog.test/streams/0001/search",
+            result.getHref().toString());
+        assertEquals("Wrong Link Text", "Stream", result.getText());
+    }
+
+    @Test
+    public void testQueryIsEncoded() {
+        // Execute
+        final Link result = sut.build(
+            "https://graylog.test/", "0001", "Stream", "source:web 01 && path:/a?b=c#d");
+
+        // Assert
+        assertEquals(
+            "Wrong Link Href",
+            "https://graylog.test/streams/0001/search"
+                + "?q=source%3Aweb%2001%20%26%26%20path%3A%2Fa%3Fb%3Dc%23d",
+            result.getHref().toString());
+    }
+
+    @Test
+    public void testLinksAreCached() {
+        // Execute
+        final Link first = sut.build("https://graylog.test/", "0001", "Stream", "a b");
+        final Link second = sut.build("https://graylog.test/", "0001", "Stream", "a b");
+        final Link renamed = sut.build("https://graylog.test/", "0001", "Renamed", "a b");
+
+        // Assert
+        assertSame("Link built again", first, second);
+        assertNotSame("Renamed stream served from cache", first, renamed);
+        assertEquals("Wrong Link Text", "Renamed", renamed.getText());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testInvalidGraylogUrl() {
+        // Execute
+        sut.build("graylog.test", "0001", "Stream", null);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.eventbus.EventBus;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.graylog2.streams.events.StreamDeletedEvent;
+import org.graylog2.streams.events.StreamsChangedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class StreamMetadataCacheTest {
+    @Mock
+    private StreamService streamServiceMock;
+    @Mock
+    private Stream firstStreamMock;
+    @Mock
+    private Stream secondStreamMock;
+
+    private final EventBus eventBus = new EventBus();
+    private StreamMetadataCache sut;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(firstStreamMock.getId()).thenReturn("first");
+        when(firstStreamMock.getTitle()).thenReturn("First");
+        when(secondStreamMock.getId()).thenReturn("second");
+        when(secondStreamMock.getTitle()).thenReturn("Second");
+        when(streamServiceMock.loadByIds(Collections.singleton("first")))
+            .thenReturn(Collections.singleton(firstStreamMock));
+        when(streamServiceMock.loadByIds(Collections.singleton("second")))
+            .thenReturn(Collections.singleton(secondStreamMock));
+        sut = new StreamMetadataCache(
+            streamServiceMock, eventBus, 100, Duration.minutes(10), new MetricRegistry());
+        sut.startAsync().awaitRunning();
+    }
+
+    @After
+    public void tearDown() {
+        sut.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void testTitlesAreLoadedOnce() {
+        // Execute
+        sut.getTitles(Collections.singleton("first"));
+        final Map<String, String> result = sut.getTitles(Collections.singleton("first"));
+
+        // Assert
+        assertEquals("Wrong titles", Collections.singletonMap("first", "First"), result);
+        verify(streamServiceMock, times(1)).loadByIds(anyCollection());
+    }
+
+    @Test
+    public void testOnlyMissingStreamsAreLoaded() {
+        // Setup
+        final Set<String> streamIds = new LinkedHashSet<>(Arrays.asList("first", "second"));
+        sut.getTitles(Collections.singleton("first"));
+
+        // Execute
+        final Map<String, String> result = sut.getTitles(streamIds);
+
+        // Assert
+        assertEquals("Wrong ids", streamIds, result.keySet());
+        assertEquals("Wrong title", "Second", result.get("second"));
+        verify(streamServiceMock).loadByIds(Collections.singleton("second"));
+    }
+
+    @Test
+    public void testChangedStreamIsLoadedAgain() {
+        // Setup
+        sut.getTitles(Collections.singleton("first"));
+        when(firstStreamMock.getTitle()).thenReturn("Renamed");
+
+        // Execute
+        eventBus.post(StreamsChangedEvent.create("first"));
+        final Map<String, String> result = sut.getTitles(Collections.singleton("first"));
+
+        // Assert
+        assertEquals("Wrong title", "Renamed", result.get("first"));
+        verify(streamServiceMock, times(2)).loadByIds(Collections.singleton("first"));
+    }
+
+    @Test
+    public void testLookupRacingWithAChangeIsNotCached() {
+        // Setup
+        when(streamServiceMock.loadByIds(Collections.singleton("first"))).thenAnswer(invocation -> {
+            eventBus.post(StreamsChangedEvent.create("first"));
+            return Collections.singleton(firstStreamMock);
+        });
+
+        // Execute
+        sut.getTitles(Collections.singleton("first"));
+        sut.getTitles(Collections.singleton("first"));
+
+        // Assert
+        verify(streamServiceMock, times(2)).loadByIds(Collections.singleton("first"));
+    }
+
+    @Test
+    public void testDeletedStreamIsEvicted() {
+        // Setup
+        sut.getTitles(Collections.singleton("first"));
+        when(streamServiceMock.loadByIds(Collections.singleton("first")))
+            .thenReturn(Collections.emptySet());
+
+        // Execute
+        eventBus.post(StreamDeletedEvent.create("first"));
+        final Map<String, String> result = sut.getTitles(Collections.singleton("first"));
+
+        // Assert
+        assertEquals("Deleted stream still linked", Collections.emptyMap(), result);
+    }
+
+    @Test
+    public void testNoStreamsNeedNoQuery() {
+        // Execute
+        sut.getTitles(Collections.emptySet());
+
+        // Assert
+        verify(streamServiceMock, never()).loadByIds(anyCollection());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokenBucketTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private TokenBucket sut;
+
+    @Before
+    public void setUp() {
+        sut = new TokenBucket(INTERVAL, 3, clock::get);
+    }
+
+    @Test
+    public void testBurstThenSteadyRate() {
+        // Assert
+        assertEquals("Burst token 1", 0, sut.reserve(NO_LIMIT));
+        assertEquals("Burst token 2", 0, sut.reserve(NO_LIMIT));
+        assertEquals("Burst token 3", 0, sut.reserve(NO_LIMIT));
+        assertEquals("First paced token", INTERVAL, sut.reserve(NO_LIMIT));
+        assertEquals("Second paced token", 2 * INTERVAL, sut.reserve(NO_LIMIT));
+    }
+
+    @Test
+    public void testTokensRefillOverTime() {
+        // Setup
+        for (int i = 0; i < 3; i++) {
+            sut.reserve(NO_LIMIT);
+        }
+
+        // Execute
+        clock.addAndGet(2 * INTERVAL);
+
+        // Assert
+        assertEquals("Refilled token 1", 0, sut.reserve(NO_LIMIT));
+        assertEquals("Refilled token 2", 0, sut.reserve(NO_LIMIT));
+        assertEquals("Paced token", INTERVAL, sut.reserve(NO_LIMIT));
+    }
+
+    @Test
+    public void testReservationAboveMaxWaitTakesNothing() {
+        // Setup
+        for (int i = 0; i < 3; i++) {
+            sut.reserve(NO_LIMIT);
+        }
+
+        // Assert
+        assertEquals("Too long a wait", -1, sut.reserve(INTERVAL - 1));
+        assertEquals("Token taken anyway", INTERVAL, sut.reserve(INTERVAL));
+    }
+
+    @Test
+    public void testThrottlingHonoursRetryAfterAndSlowsDown() {
+        // Execute
+        sut.onThrottled(Duration.ofSeconds(30));
+
+        // Assert
+        assertEquals("Wrong interval", 2 * INTERVAL, sut.currentIntervalNanos());
+        assertEquals("Wrong pause", TimeUnit.SECONDS.toNanos(30), sut.reserve(NO_LIMIT));
+        assertEquals(
+            "Wrong pace after pause",
+            TimeUnit.SECONDS.toNanos(30) + 2 * INTERVAL,
+            sut.reserve(NO_LIMIT));
+    }
+
+    @Test
+    public void testAcceptedEventsRecoverTheRate() {
+        // Setup
+        sut.onThrottled(null);
+        sut.onThrottled(null);
+        assertEquals("Wrong interval", 4 * INTERVAL, sut.currentIntervalNanos());
+
+        // Execute
+        for (int i = 0; i < 100; i++) {
+            sut.onAccepted();
+        }
+
+        // Assert
+        assertEquals("Not recovered", INTERVAL, sut.currentIntervalNanos());
+    }
+
+    @Test
+    public void testSlowdownIsBounded() {
+        // Execute
+        for (int i = 0; i < 100; i++) {
+            sut.onThrottled(Duration.ZERO);
+        }
+
+        // Assert
+        assertTrue("Unbounded slowdown", sut.currentIntervalNanos() <= 16 * INTERVAL);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class AutoResolverTest {
+    private static final long QUIET_MILLIS = 60_000L;
+
+    @Mock
+    private PagerDutyDispatcher dispatcherMock;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private MetricRegistry metricRegistry;
+    private AutoResolver sut;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        sut = new AutoResolver(dispatcherMock, 1_000, metricRegistry, clock::get);
+    }
+
+    @Test
+    public void testQuietIncidentIsResolved() {
+        // Setup
+        sut.touch(trigger("incident"), QUIET_MILLIS);
+
+        // Execute
+        advanceBy(QUIET_MILLIS - 1_000L);
+        verify(dispatcherMock, never()).dispatch(any(PagerDutyMessage.class));
+        advanceBy(2_000L);
+
+        // Assert
+        final ArgumentCaptor<PagerDutyMessage> captor =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+        verify(dispatcherMock).dispatch(captor.capture());
+        final PagerDutyMessage resolve = captor.getValue();
+        assertEquals("Wrong action", PagerDutyMessage.RESOLVE, resolve.getEventAction());
+        assertEquals("Wrong routing key", "routing-key", resolve.getRoutingKey());
+        assertEquals("Wrong dedup key", "incident", resolve.getDedupKey());
+        assertEquals("Wrong severity", "critical", resolve.getPayload().get("severity"));
+        assertEquals("Wrong tracked count", 0, sut.tracked());
+    }
+
+    @Test
+    public void testTriggerExtendsQuietPeriod() {
+        // Setup
+        sut.touch(trigger("incident"), QUIET_MILLIS);
+        advanceBy(40_000L);
+        sut.touch(trigger("incident"), QUIET_MILLIS);
+
+        // Execute
+        advanceBy(40_000L);
+        verify(dispatcherMock, never()).dispatch(any(PagerDutyMessage.class));
+        advanceBy(21_000L);
+
+        // Assert
+        verify(dispatcherMock).dispatch(any(PagerDutyMessage.class));
+        assertEquals("Wrong tracked count", 0, sut.tracked());
+    }
+
+    @Test
+    public void testQuietPeriodLongerThanTheWheel() {
+        // Setup
+        final long quietMillis = TimeUnit.HOURS.toMillis(3);
+        sut.touch(trigger("incident"), quietMillis);
+
+        // Execute
+        advanceBy(quietMillis - 1_000L);
+        verify(dispatcherMock, never()).dispatch(any(PagerDutyMessage.class));
+        advanceBy(2_000L);
+
+        // Assert
+        verify(dispatcherMock).dispatch(any(PagerDutyMessage.class));
+    }
+
+    @Test
+    public void testResolvedIncidentIsCancelled() {
+        // Setup
+        sut.touch(trigger("incident"), QUIET_MILLIS);
+
+        // Execute
+        sut.cancel(trigger("incident"));
+        advanceBy(2 * QUIET_MILLIS);
+
+        // Assert
+        verify(dispatcherMock, never()).dispatch(any(PagerDutyMessage.class));
+        assertEquals("Wrong tracked count", 0, sut.tracked());
+    }
+
+    @Test
+    public void testEveryQuietIncidentIsResolved() {
+        // Setup
+        for (int i = 0; i < 500; i++) {
+            sut.touch(trigger("incident-" + i), QUIET_MILLIS + i * 10L);
+        }
+
+        // Execute
+        advanceBy(2 * QUIET_MILLIS);
+
+        // Assert
+        verify(dispatcherMock, times(500)).dispatch(any(PagerDutyMessage.class));
+        assertEquals("Wrong tracked count", 0, sut.tracked());
+    }
+
+    @Test
+    public void testKeysBeyondTheLimitAreNotTracked() {
+        // Setup
+        sut = new AutoResolver(dispatcherMock, 1, new MetricRegistry(), clock::get);
+
+        // Execute
+        sut.touch(trigger("first"), QUIET_MILLIS);
+        sut.touch(trigger("second"), QUIET_MILLIS);
+        advanceBy(2 * QUIET_MILLIS);
+
+        // Assert
+        final ArgumentCaptor<PagerDutyMessage> captor =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+        verify(dispatcherMock).dispatch(captor.capture());
+        assertEquals("Wrong dedup key", "first", captor.getValue().getDedupKey());
+    }
+
+    @Test
+    public void testTriggersWithoutDedupKeyAreIgnored() {
+        // Execute
+        sut.touch(trigger(null), QUIET_MILLIS);
+
+        // Assert
+        assertEquals("Wrong tracked count", 0, sut.tracked());
+    }
+
+    private void advanceBy(long millis) {
+        clock.addAndGet(millis);
+        sut.advance();
+    }
+
+    private static PagerDutyMessage trigger(String dedupKey) {
+        return new PagerDutyMessage(
+            "routing-key",
+            PagerDutyMessage.TRIGGER,
+            dedupKey,
+            "Graylog",
+            "http://graylog.example.com",
+            Collections.emptyList(),
+            Collections.singletonMap("severity", "critical"));
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventCoalescerTest {
+    private static final String ROUTING_KEY = "01234567890123456789012345678901";
+
+    private final List<PagerDutyMessage> summaries = new ArrayList<>();
+    private MetricRegistry metricRegistry;
+    private EventCoalescer sut;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        sut = new EventCoalescer(60_000L, metricRegistry);
+        sut.start(summaries::add);
+    }
+
+    @After
+    public void tearDown() {
+        sut.stop();
+    }
+
+    private static PagerDutyMessage trigger(String dedupKey, String timestamp) {
+        final Map<String, Object> payload = new HashMap<>();
+        payload.put("summary", "Disk full");
+        payload.put("timestamp", timestamp);
+        return new PagerDutyMessage(
+            ROUTING_KEY, "trigger", dedupKey, "Graylog", null, null, payload);
+    }
+
+    @Test
+    public void testFirstTriggerIsSentAtOnce() {
+        // Assert
+        assertFalse("First trigger absorbed", sut.absorb(trigger("key", "t1")));
+        assertTrue("Second trigger sent", sut.absorb(trigger("key", "t2")));
+        assertEquals(
+            "Wrong coalesced count",
+            1,
+            metricRegistry.counter(MetricRegistry.name(EventCoalescer.class, "coalesced"))
+                .getCount());
+    }
+
+    @Test
+    public void testClosedWindowSendsOneSummary() {
+        // Setup
+        sut.absorb(trigger("key", "t1"));
+        sut.absorb(trigger("key", "t2"));
+        sut.absorb(trigger("key", "t3"));
+
+        // Execute
+        sut.close(ROUTING_KEY + '\n' + "key");
+
+        // Assert
+        assertEquals("Wrong number of summaries", 1, summaries.size());
+        final Map<?, ?> details =
+            (Map<?, ?>) summaries.get(0).getPayload().get("custom_details");
+        assertEquals("Wrong occurrences", 3, details.get("occurrences"));
+        assertEquals("Wrong first seen", "t1", details.get("first_seen"));
+        assertEquals("Wrong last seen", "t3", details.get("last_seen"));
+        assertEquals("Wrong timestamp", "t3", summaries.get(0).getPayload().get("timestamp"));
+        assertFalse("Window not closed", sut.absorb(trigger("key", "t4")));
+    }
+
+    @Test
+    public void testSingleTriggerSendsNoSummary() {
+        // Setup
+        sut.absorb(trigger("key", "t1"));
+
+        // Execute
+        sut.close(ROUTING_KEY + '\n' + "key");
+
+        // Assert
+        assertTrue("Unexpected summary", summaries.isEmpty());
+    }
+
+    @Test
+    public void testDedupKeysAreCoalescedIndependently() {
+        // Assert
+        assertFalse("First key absorbed", sut.absorb(trigger("first", "t1")));
+        assertFalse("Second key absorbed", sut.absorb(trigger("second", "t1")));
+    }
+
+    @Test
+    public void testEventsWithoutDedupKeyAreNotCoalesced() {
+        // Assert
+        assertFalse("First event absorbed", sut.absorb(trigger("", "t1")));
+        assertFalse("Second event absorbed", sut.absorb(trigger("", "t2")));
+    }
+
+    @Test
+    public void testStopClosesOpenWindows() {
+        // Setup
+        sut.absorb(trigger("key", "t1"));
+        sut.absorb(trigger("key", "t2"));
+
+        // Execute
+        sut.stop();
+
+        // Assert
+        assertEquals("Wrong number of summaries", 1, summaries.size());
+    }
+
+    @Test
+    public void testRacingTriggersSendTheFirstAndCloseTheWindow() throws Exception {
+        // Setup
+        final int threads = 8;
+        final BlockingQueue<PagerDutyMessage> closed = new LinkedBlockingQueue<>();
+        final EventCoalescer racing = new EventCoalescer(200L, new MetricRegistry());
+        racing.start(closed::add);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Callable<Boolean>> absorbs = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final String timestamp = "t" + i;
+            absorbs.add(() -> {
+                start.await();
+                return racing.absorb(trigger("key", timestamp));
+            });
+        }
+
+        try {
+            // Execute
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (Callable<Boolean> absorb : absorbs) {
+                results.add(executor.submit(absorb));
+            }
+            start.countDown();
+            int sent = 0;
+            for (Future<Boolean> result : results) {
+                if (!result.get(10, TimeUnit.SECONDS)) {
+                    sent++;
+                }
+            }
+
+            // Assert
+            assertEquals("Wrong number of triggers sent at once", 1, sent);
+            final PagerDutyMessage summary = closed.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Window not closed", summary);
+            final Map<?, ?> details = (Map<?, ?>) summary.getPayload().get("custom_details");
+            assertEquals("Wrong occurrences", threads, details.get("occurrences"));
+            assertFalse("Window still open", racing.absorb(trigger("key", "t" + threads)));
+        }
+        finally {
+            executor.shutdownNow();
+            racing.stop();
+        }
+    }
+
+    @Test
+    public void testDisabledCoalescing() {
+        // Setup
+        final EventCoalescer disabled = new EventCoalescer(0L, metricRegistry);
+        disabled.start(summaries::add);
+
+        // Assert
+        assertFalse("First trigger absorbed", disabled.absorb(trigger("key", "t1")));
+        assertFalse("Second trigger absorbed", disabled.absorb(trigger("key", "t2")));
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.concurrent.atomic.AtomicLong;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncidentIndexTest {
+    private static final long TTL_MILLIS = 60_000L;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private MetricRegistry metricRegistry;
+    private IncidentIndex sut;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        sut = new IncidentIndex(1_000, TTL_MILLIS, metricRegistry, clock::get);
+    }
+
+    @Test
+    public void testRepeatedTriggersAreSuppressed() {
+        // Execute
+        final boolean first = sut.admit(message(PagerDutyMessage.TRIGGER, "incident"));
+        final boolean second = sut.admit(message(PagerDutyMessage.TRIGGER, "incident"));
+
+        // Assert
+        assertTrue("First trigger suppressed", first);
+        assertFalse("Second trigger sent", second);
+        assertEquals("Wrong state", IncidentIndex.OPEN, sut.state("routing-key", "incident"));
+        assertEquals(
+            "Wrong suppressed count",
+            1,
+            metricRegistry.counter(MetricRegistry.name(IncidentIndex.class, "suppressed"))
+                .getCount());
+    }
+
+    @Test
+    public void testLifecycle() {
+        // Assert
+        assertTrue(sut.admit(message(PagerDutyMessage.TRIGGER, "incident")));
+        assertTrue(sut.admit(message(PagerDutyMessage.ACKNOWLEDGE, "incident")));
+        assertFalse(sut.admit(message(PagerDutyMessage.TRIGGER, "incident")));
+        assertFalse(sut.admit(message(PagerDutyMessage.ACKNOWLEDGE, "incident")));
+        assertTrue(sut.admit(message(PagerDutyMessage.RESOLVE, "incident")));
+        assertFalse(sut.admit(message(PagerDutyMessage.RESOLVE, "incident")));
+        assertFalse(sut.admit(message(PagerDutyMessage.ACKNOWLEDGE, "incident")));
+        assertTrue(sut.admit(message(PagerDutyMessage.TRIGGER, "incident")));
+    }
+
+    @Test
+    public void testKeysAreScopedByRoutingKey() {
+        // Setup
+        sut.admit(message(PagerDutyMessage.TRIGGER, "incident"));
+
+        // Execute
+        final boolean result = sut.admit(new PagerDutyMessage(
+            "other-key", PagerDutyMessage.TRIGGER, "incident", null, null, null, null));
+
+        // Assert
+        assertTrue("Trigger of another routing key suppressed", result);
+    }
+
+    @Test
+    public void testEventsWithoutDedupKeyAreNeverSuppressed() {
+        // Assert
+        assertTrue(sut.admit(message(PagerDutyMessage.TRIGGER, "")));
+        assertTrue(sut.admit(message(PagerDutyMessage.TRIGGER, "")));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        // Setup
+        sut.admit(message(PagerDutyMessage.TRIGGER, "incident"));
+        clock.addAndGet(TTL_MILLIS - 1_000L);
+        sut.admit(message(PagerDutyMessage.TRIGGER, "incident"));
+
+        // Execute
+        clock.addAndGet(1_000L);
+
+        // Assert
+        assertTrue(
+            "Expired trigger suppressed", sut.admit(message(PagerDutyMessage.TRIGGER, "incident")));
+    }
+
+    @Test
+    public void testConfirmationExtendsTheEntry() {
+        // Setup
+        final PagerDutyMessage trigger = message(PagerDutyMessage.TRIGGER, "incident");
+        sut.admit(trigger);
+        clock.addAndGet(TTL_MILLIS - 1_000L);
+
+        // Execute
+        sut.confirm(trigger, response("incident"));
+        clock.addAndGet(1_000L);
+
+        // Assert
+        assertFalse("Trigger sent", sut.admit(trigger));
+    }
+
+    @Test
+    public void testConfirmationRecordsTheAssignedDedupKey() {
+        // Execute
+        sut.confirm(message(PagerDutyMessage.TRIGGER, ""), response("assigned"));
+
+        // Assert
+        assertEquals("Wrong state", IncidentIndex.OPEN, sut.state("routing-key", "assigned"));
+    }
+
+    @Test
+    public void testForgottenIncidentsAreSentAgain() {
+        // Setup
+        final PagerDutyMessage trigger = message(PagerDutyMessage.TRIGGER, "incident");
+        sut.admit(trigger);
+
+        // Execute
+        sut.forget(trigger);
+
+        // Assert
+        assertTrue("Trigger suppressed", sut.admit(trigger));
+    }
+
+    @Test
+    public void testIndexIsBounded() {
+        // Setup
+        sut = new IncidentIndex(16, TTL_MILLIS, metricRegistry, clock::get);
+
+        // Execute
+        for (int i = 0; i < 10_000; i++) {
+            sut.admit(message(PagerDutyMessage.TRIGGER, "incident-" + i));
+        }
+
+        // Assert
+        assertTrue(
+            "Nothing evicted",
+            metricRegistry.counter(MetricRegistry.name(IncidentIndex.class, "evicted"))
+                .getCount() > 9_000);
+        assertEquals(
+            "Latest incident missing",
+            IncidentIndex.OPEN,
+            sut.state("routing-key", "incident-9999"));
+    }
+
+    @Test
+    public void testDisabledIndexSuppressesNothing() {
+        // Setup
+        sut = new IncidentIndex(1_000, 0L, metricRegistry, clock::get);
+
+        // Assert
+        assertTrue(sut.admit(message(PagerDutyMessage.TRIGGER, "incident")));
+        assertTrue(sut.admit(message(PagerDutyMessage.TRIGGER, "incident")));
+    }
+
+    private static PagerDutyMessage message(String action, String dedupKey) {
+        return new PagerDutyMessage("routing-key", action, dedupKey, null, null, null, null);
+    }
+
+    private static PagerDutyResponse response(String dedupKey) {
+        return new PagerDutyResponse(202, "success", "Event processed", dedupKey, null, null);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadShedderTest {
+    private static final Set<String> STREAMS = new HashSet<>();
+
+    static {
+        STREAMS.add("stream-a");
+        STREAMS.add("stream-b");
+    }
+
+    private MetricRegistry metricRegistry;
+    private LoadShedder sut;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        sut = new LoadShedder(50, 80, 60_000L, metricRegistry);
+    }
+
+    private static PagerDutyMessage message(String severity) {
+        return message(PagerDutyMessage.TRIGGER, severity);
+    }
+
+    private static PagerDutyMessage message(String action, String severity) {
+        return new PagerDutyMessage(
+            "01234567890123456789012345678901",
+            action,
+            "key",
+            "Graylog",
+            null,
+            null,
+            Collections.singletonMap("severity", severity));
+    }
+
+    private long count(String... names) {
+        return metricRegistry.counter(MetricRegistry.name(LoadShedder.class, names)).getCount();
+    }
+
+    @Test
+    public void testResolvesAreNeverShed() {
+        // Assert
+        assertFalse(
+            "Resolve shed on arrival",
+            sut.shedOnArrival(message(PagerDutyMessage.RESOLVE, "info"), STREAMS, 100, 100));
+        assertFalse(
+            "Resolve shed on departure",
+            sut.shedOnDeparture(
+                new OutboundEvent(
+                    message(PagerDutyMessage.RESOLVE, "info"),
+                    null,
+                    0L,
+                    OutboxJournal.NOT_JOURNALED,
+                    STREAMS),
+                TimeUnit.MINUTES.toNanos(10)));
+    }
+
+    @Test
+    public void testInfoIsShedAtItsWatermark() {
+        // Assert
+        assertFalse(
+            "Info shed below watermark",
+            sut.shedOnArrival(message("info"), STREAMS, 49, 100));
+        assertTrue(
+            "Info not shed at watermark",
+            sut.shedOnArrival(message("info"), STREAMS, 50, 100));
+    }
+
+    @Test
+    public void testWarningIsShedAtItsWatermark() {
+        // Assert
+        assertFalse(
+            "Warning shed below watermark",
+            sut.shedOnArrival(message("warning"), STREAMS, 79, 100));
+        assertTrue(
+            "Warning not shed at watermark",
+            sut.shedOnArrival(message("warning"), STREAMS, 80, 100));
+    }
+
+    @Test
+    public void testCriticalIsNeverShed() {
+        // Assert
+        assertFalse(
+            "Critical shed on arrival",
+            sut.shedOnArrival(message("critical"), STREAMS, 100, 100));
+        assertFalse(
+            "Critical shed on departure",
+            sut.shedOnDeparture(
+                new OutboundEvent(message("critical"), 0L, OutboxJournal.NOT_JOURNALED, STREAMS),
+                TimeUnit.HOURS.toNanos(1)));
+        assertEquals("Wrong shed count", 0, count("shed"));
+    }
+
+    @Test
+    public void testStaleEventsAreShedOnDeparture() {
+        // Setup
+        final OutboundEvent event =
+            new OutboundEvent(message("info"), 0L, OutboxJournal.NOT_JOURNALED, STREAMS);
+
+        // Assert
+        assertFalse("Fresh event shed", sut.shedOnDeparture(event, TimeUnit.SECONDS.toNanos(59)));
+        assertTrue(
+            "Stale event not shed",
+            sut.shedOnDeparture(event, TimeUnit.SECONDS.toNanos(60)));
+    }
+
+    @Test
+    public void testShedEventsAreCountedPerStream() {
+        // Execute
+        sut.shedOnArrival(message("info"), STREAMS, 100, 100);
+        sut.shedOnArrival(message("info"), Collections.singleton("stream-a"), 100, 100);
+
+        // Assert
+        assertEquals("Wrong total", 2, count("shed"));
+        assertEquals("Wrong count of stream-a", 2, count("shed", "stream-a"));
+        assertEquals("Wrong count of stream-b", 1, count("shed", "stream-b"));
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutboxJournalTest {
+    private static final int SEGMENT_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private OutboxJournal sut;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.getRoot().toPath();
+        sut = new OutboxJournal(true, directory, SEGMENT_SIZE, 60_000L);
+        sut.open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sut.close();
+    }
+
+    private SortedMap<Long, byte[]> reopen() throws IOException {
+        sut.close();
+        sut = new OutboxJournal(true, directory, SEGMENT_SIZE, 60_000L);
+        return sut.open();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOffsetsAreConsecutive() {
+        // Assert
+        assertEquals("First offset", 0L, sut.append(bytes("first")));
+        assertEquals("Second offset", 1L, sut.append(bytes("second")));
+    }
+
+    @Test
+    public void testUnacknowledgedEventsAreReplayed() throws IOException {
+        // Setup
+        final long first = sut.append(bytes("first"));
+        sut.append(bytes("second"));
+        sut.append(bytes("third"));
+        sut.acknowledge(first);
+
+        // Execute
+        SortedMap<Long, byte[]> result = reopen();
+
+        // Assert
+        assertEquals("Wrong number of events", 2, result.size());
+        assertArrayEquals("Wrong second event", bytes("second"), result.get(1L));
+        assertArrayEquals("Wrong third event", bytes("third"), result.get(2L));
+        assertEquals("Wrong next offset", 3L, sut.append(bytes("fourth")));
+    }
+
+    @Test
+    public void testOutOfOrderAcknowledgementIsReplayedAtLeastOnce() throws IOException {
+        // Setup
+        sut.append(bytes("first"));
+        final long second = sut.append(bytes("second"));
+        sut.acknowledge(second);
+
+        // Execute
+        SortedMap<Long, byte[]> result = reopen();
+
+        // Assert
+        assertTrue("First event lost", result.containsKey(0L));
+    }
+
+    @Test
+    public void testAcknowledgedSegmentsAreDeleted() throws IOException {
+        // Setup
+        for (int i = 0; i < 10; i++) {
+            sut.acknowledge(sut.append(bytes("event-" + i)));
+        }
+        final int segmentsBefore = sut.segmentCount();
+
+        // Execute
+        sut.flush();
+
+        // Assert
+        assertTrue("Did not roll", segmentsBefore > 1);
+        assertEquals("Wrong number of segments", 1, sut.segmentCount());
+        assertTrue("Replayed acknowledged events", reopen().isEmpty());
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        // Setup
+        sut.append(bytes("complete"));
+        final long torn = sut.append(bytes("torn"));
+        sut.close();
+        try (RandomAccessFile file = new RandomAccessFile(
+            directory.resolve(String.format("%020d.segment", 0)).toFile(), "rw")) {
+            // Corrupt the payload of the second record.
+            file.seek(8 + 8 + 8);
+            file.write('X');
+        }
+
+        // Execute
+        sut = new OutboxJournal(true, directory, SEGMENT_SIZE, 60_000L);
+        SortedMap<Long, byte[]> result = sut.open();
+
+        // Assert
+        assertEquals("Wrong number of events", 1, result.size());
+        assertArrayEquals("Wrong event", bytes("complete"), result.get(0L));
+        assertEquals("Torn offset not reused", torn, sut.append(bytes("next")));
+        assertEquals("Replayed stale bytes", 2, reopen().size());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testOversizedEventIsRejected() {
+        // Execute
+        sut.append(new byte[SEGMENT_SIZE]);
+    }
+
+    @Test
+    public void testDisabledJournal() {
+        // Setup
+        final OutboxJournal disabled = new OutboxJournal(false, directory, SEGMENT_SIZE, 1L);
+
+        // Assert
+        assertEquals("Wrong offset", OutboxJournal.NOT_JOURNALED, disabled.append(bytes("event")));
+    }
+}
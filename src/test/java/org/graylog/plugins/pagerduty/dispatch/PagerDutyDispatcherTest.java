@@ -0,0 +1,717 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.graylog.plugins.pagerduty.client.Delivery;
+import org.graylog.plugins.pagerduty.client.EventSender;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.graylog.plugins.pagerduty.dto.PagerDutyResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PagerDutyDispatcherTest {
+    private static final byte[] PAYLOAD = "{}".getBytes(StandardCharsets.UTF_8);
+    private static final PagerDutyResponse ACCEPTED =
+        new PagerDutyResponse(202, "success", "Event processed", "key", null, null);
+    private static final PagerDutyResponse BAD_REQUEST = new PagerDutyResponse(
+        400, "invalid event", null, null, Collections.singletonList("bad routing key"), null);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private EventSender senderMock;
+    @Mock
+    private PagerDutyMessage messageMock;
+    @Mock
+    private Delivery pendingDeliveryMock;
+
+    private final AtomicLong clock = new AtomicLong();
+    private MetricRegistry metricRegistry;
+    private PagerDutyDispatcher sut;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(senderMock.send(any(PagerDutyMessage.class)))
+            .thenReturn(Delivery.completed(ACCEPTED));
+        when(senderMock.send(any(PagerDutyMessage.class), any(byte[].class)))
+            .thenReturn(Delivery.completed(ACCEPTED));
+        when(senderMock.serialize(any(PagerDutyMessage.class))).thenReturn(PAYLOAD);
+        metricRegistry = new MetricRegistry();
+        sut = new PagerDutyDispatcher(
+            2,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            metricRegistry,
+            clock::get);
+    }
+
+    private long count(String name) {
+        return metricRegistry.counter(MetricRegistry.name(PagerDutyDispatcher.class, name))
+            .getCount();
+    }
+
+    @Test
+    public void testWorkersSendDispatchedEvents() {
+        // Setup
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(messageMock);
+
+        // Assert
+        verify(senderMock, timeout(5_000)).send(messageMock);
+        sut.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void testFullQueueRejectsEvents() {
+        // Setup
+        sut.dispatch(messageMock);
+        sut.dispatch(messageMock);
+
+        try {
+            // Execute
+            sut.dispatch(messageMock);
+            fail("Event was not rejected");
+        }
+        catch (IllegalStateException e) {
+            // Assert
+            assertEquals(
+                "Wrong Exception Message",
+                "The PagerDuty dispatch queue is full, try again later.",
+                e.getMessage());
+        }
+        assertEquals("Wrong depth", 2, sut.depth());
+        assertEquals("Wrong rejections", 1, count("rejected"));
+    }
+
+    @Test
+    public void testWaitTimeIsRecorded() {
+        // Setup
+        clock.set(5_000_000L);
+
+        // Execute
+        sut.send(new OutboundEvent(messageMock, 1_000_000L, OutboxJournal.NOT_JOURNALED));
+
+        // Assert
+        final long[] waits = metricRegistry
+            .timer(MetricRegistry.name(PagerDutyDispatcher.class, "wait-time"))
+            .getSnapshot()
+            .getValues();
+        assertEquals("Wrong number of waits", 1, waits.length);
+        assertEquals("Wrong wait", 4_000_000L, waits[0]);
+    }
+
+    @Test
+    public void testRejectedEventIsCountedAsFailed() {
+        // Setup
+        when(senderMock.send(messageMock)).thenReturn(Delivery.completed(BAD_REQUEST));
+
+        // Execute
+        sut.send(new OutboundEvent(messageMock, 0L, OutboxJournal.NOT_JOURNALED));
+
+        // Assert
+        assertEquals("Wrong failures", 1, count("failed"));
+    }
+
+    @Test
+    public void testSenderErrorDoesNotEscapeTheWorker() {
+        // Setup
+        when(senderMock.send(messageMock)).thenThrow(IllegalStateException.class);
+
+        // Execute
+        sut.send(new OutboundEvent(messageMock, 0L, OutboxJournal.NOT_JOURNALED));
+
+        // Assert
+        assertEquals("Wrong failures", 1, count("failed"));
+    }
+
+    @Test
+    public void testShutdownDrainsTheQueue() {
+        // Setup
+        sut.dispatch(messageMock);
+        sut.dispatch(messageMock);
+
+        // Execute
+        sut.startAsync().awaitRunning();
+        sut.stopAsync().awaitTerminated();
+
+        // Assert
+        verify(senderMock, times(2)).send(messageMock);
+    }
+
+    @Test
+    public void testEventsAfterShutdownAreRejected() {
+        // Setup
+        sut.startAsync().awaitRunning();
+        sut.stopAsync().awaitTerminated();
+
+        try {
+            // Execute
+            sut.dispatch(messageMock);
+            fail("Event was not rejected");
+        }
+        catch (IllegalStateException e) {
+            // Assert
+            assertEquals(
+                "Wrong Exception Message",
+                "The PagerDuty dispatcher is shut down.",
+                e.getMessage());
+        }
+        assertEquals("Wrong depth", 0, sut.depth());
+    }
+
+    @Test
+    public void testDeliveriesFailingOnShutdownStayInTheJournal() throws Exception {
+        // Setup
+        final PagerDutyMessage message = message("routing-key", "incident", "first");
+        final CompletableFuture<PagerDutyResponse> outcome = new CompletableFuture<>();
+        when(pendingDeliveryMock.outcome()).thenReturn(outcome);
+        when(senderMock.send(message, PAYLOAD)).thenReturn(pendingDeliveryMock);
+        final MetricRegistry dispatcherRegistry = new MetricRegistry();
+        sut = new PagerDutyDispatcher(
+            2,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(true, temporaryFolder.getRoot().toPath(), 4096, 60_000L),
+            dispatcherRegistry,
+            clock::get);
+        sut.startAsync().awaitRunning();
+        sut.dispatch(message);
+        verify(senderMock, timeout(5_000)).send(message, PAYLOAD);
+
+        // Execute
+        sut.stopAsync();
+        outcome.completeExceptionally(new IOException("Connection pool shut down"));
+        sut.awaitTerminated();
+
+        // Assert
+        assertEquals(
+            "Wrong failures",
+            0,
+            dispatcherRegistry.counter(MetricRegistry.name(PagerDutyDispatcher.class, "failed"))
+                .getCount());
+        final OutboxJournal journal =
+            new OutboxJournal(true, temporaryFolder.getRoot().toPath(), 4096, 60_000L);
+        assertEquals("Wrong unacknowledged events", 1, journal.open().size());
+        journal.close();
+    }
+
+    @Test
+    public void testUndeliveredEventsAreReplayedOnStart() throws Exception {
+        // Setup
+        final PagerDutyMessage message = new PagerDutyMessage(
+            "01234567890123456789012345678901",
+            "trigger",
+            "prefix/stream/event",
+            "Graylog",
+            null,
+            null,
+            Collections.singletonMap("summary", "replayed"));
+        final OutboxJournal journal =
+            new OutboxJournal(true, temporaryFolder.getRoot().toPath(), 4096, 60_000L);
+        journal.open();
+        final byte[] record = new ObjectMapper().writeValueAsBytes(message);
+        journal.append(record);
+        journal.close();
+        final ArgumentCaptor<PagerDutyMessage> replayed =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+        final ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+
+        // Execute
+        sut = new PagerDutyDispatcher(
+            2,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(true, temporaryFolder.getRoot().toPath(), 4096, 60_000L),
+            new MetricRegistry(),
+            clock::get);
+        sut.startAsync().awaitRunning();
+
+        // Assert
+        verify(senderMock, timeout(5_000)).send(replayed.capture(), payload.capture());
+        sut.stopAsync().awaitTerminated();
+        assertEquals("Wrong dedup key", "prefix/stream/event", replayed.getValue().getDedupKey());
+        assertEquals(
+            "Wrong payload",
+            Collections.singletonMap("summary", "replayed"),
+            replayed.getValue().getPayload());
+        assertArrayEquals("Wrong request body", record, payload.getValue());
+    }
+
+    @Test
+    public void testJournaledEventsAreSerializedOnce() throws Exception {
+        // Setup
+        final PagerDutyMessage message = message("routing-key", "incident", "first");
+        sut = new PagerDutyDispatcher(
+            2,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(true, temporaryFolder.getRoot().toPath(), 4096, 60_000L),
+            new MetricRegistry(),
+            clock::get);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(message);
+
+        // Assert
+        verify(senderMock, timeout(5_000)).send(message, PAYLOAD);
+        sut.stopAsync().awaitTerminated();
+        verify(senderMock).serialize(message);
+        verify(senderMock, never()).send(message);
+    }
+
+    @Test
+    public void testLaneKeepsEventsOfAnIncidentInOrder() {
+        // Setup
+        final PagerDutyMessage first = message("routing-key", "incident", "first");
+        final PagerDutyMessage second = message("routing-key", "incident", "second");
+        final CompletableFuture<PagerDutyResponse> outcome = new CompletableFuture<>();
+        when(pendingDeliveryMock.outcome()).thenReturn(outcome);
+        when(senderMock.send(first)).thenReturn(pendingDeliveryMock);
+        sut = new PagerDutyDispatcher(
+            10,
+            4,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(first);
+        sut.dispatch(second);
+
+        // Assert
+        verify(senderMock, timeout(5_000)).send(first);
+        verify(senderMock, after(200).never()).send(second);
+        outcome.complete(ACCEPTED);
+        verify(senderMock, timeout(5_000)).send(second);
+        sut.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void testRetriedIncidentDoesNotHoldUpItsLane() {
+        // Setup
+        final PagerDutyMessage first = message("routing-key", "incident", "first");
+        final PagerDutyMessage second = message("routing-key", "incident", "second");
+        final PagerDutyMessage other = message("routing-key", "other", "other");
+        final CompletableFuture<PagerDutyResponse> outcome = new CompletableFuture<>();
+        when(pendingDeliveryMock.outcome()).thenReturn(outcome);
+        when(senderMock.send(first)).thenReturn(pendingDeliveryMock);
+        sut = new PagerDutyDispatcher(
+            10,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(first);
+        sut.dispatch(second);
+        sut.dispatch(other);
+
+        // Assert
+        verify(senderMock, timeout(5_000)).send(other);
+        verify(senderMock, never()).send(second);
+        outcome.complete(ACCEPTED);
+        verify(senderMock, timeout(5_000)).send(second);
+        sut.stopAsync().awaitTerminated();
+        assertEquals("Wrong depth", 0, sut.depth());
+    }
+
+    @Test
+    public void testEventsAreStripedByRoutingKeyAndDedupKey() {
+        // Setup
+        sut = new PagerDutyDispatcher(
+            10,
+            64,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        final Set<Integer> usedLanes = new HashSet<>();
+
+        // Execute
+        for (int i = 0; i < 100; i++) {
+            usedLanes.add(sut.laneOf(message("routing-key", "incident-" + i, "summary")));
+        }
+
+        // Assert
+        assertEquals(
+            "Wrong lane",
+            sut.laneOf(message("routing-key", "incident", "first")),
+            sut.laneOf(message("routing-key", "incident", "second")));
+        assertTrue("Incidents share too few lanes", usedLanes.size() > 32);
+    }
+
+    @Test
+    public void testLowSeverityEventsAreShedBeforeCriticalOnes() {
+        // Setup
+        sut = new PagerDutyDispatcher(
+            4,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(50, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+
+        // Execute
+        sut.dispatch(message("routing-key", "first", "info"));
+        sut.dispatch(message("routing-key", "second", "info"));
+        sut.dispatch(message("routing-key", "third", "info"));
+        sut.dispatch(new PagerDutyMessage(
+            "routing-key",
+            "trigger",
+            "fourth",
+            "Graylog",
+            null,
+            null,
+            Collections.singletonMap("severity", "critical")));
+
+        // Assert
+        assertEquals("Wrong depth", 3, sut.depth());
+        assertEquals(
+            "Wrong shed count",
+            1,
+            metricRegistry.counter(MetricRegistry.name(LoadShedder.class, "shed")).getCount());
+    }
+
+    @Test
+    public void testRedundantEventsAreSuppressed() {
+        // Setup
+        sut = dispatcherWithIncidentIndex();
+
+        // Execute
+        sut.dispatch(message("routing-key", "incident", "first"));
+        sut.dispatch(message("routing-key", "incident", "second"));
+        sut.dispatch(resolve("routing-key", "incident"));
+        sut.dispatch(resolve("routing-key", "incident"));
+
+        // Assert
+        assertEquals("Wrong depth", 2, sut.depth());
+        assertEquals(
+            "Wrong suppressed count",
+            2,
+            metricRegistry.counter(MetricRegistry.name(IncidentIndex.class, "suppressed"))
+                .getCount());
+    }
+
+    @Test
+    public void testRejectedEventsAreNotSuppressed() {
+        // Setup
+        sut = dispatcherWithIncidentIndex();
+        final PagerDutyMessage trigger = message("routing-key", "incident", "first");
+        when(senderMock.send(trigger)).thenReturn(Delivery.completed(BAD_REQUEST));
+        sut.dispatch(trigger);
+        sut.send(new OutboundEvent(trigger, 0L, OutboxJournal.NOT_JOURNALED));
+
+        // Execute
+        sut.dispatch(message("routing-key", "incident", "second"));
+
+        // Assert
+        assertEquals("Wrong depth", 2, sut.depth());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRepeatedTriggersAreCoalesced() {
+        // Setup
+        sut = new PagerDutyDispatcher(
+            10,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(100L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        final ArgumentCaptor<PagerDutyMessage> sent =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(message("routing-key", "incident", "first"));
+        sut.dispatch(message("routing-key", "incident", "second"));
+        sut.dispatch(message("routing-key", "incident", "third"));
+
+        // Assert
+        verify(senderMock, timeout(5_000).times(2)).send(sent.capture());
+        verify(senderMock, after(300).times(2)).send(any(PagerDutyMessage.class));
+        sut.stopAsync().awaitTerminated();
+        assertEquals(
+            "Wrong first event", "first", sent.getAllValues().get(0).getPayload().get("summary"));
+        final Map<String, Object> summary = sent.getAllValues().get(1).getPayload();
+        assertEquals("Wrong summary event", "third", summary.get("summary"));
+        assertEquals(
+            "Wrong occurrences",
+            3,
+            ((Map<String, Object>) summary.get("custom_details")).get("occurrences"));
+    }
+
+    @Test
+    public void testResolveClosesTheCoalescingWindow() {
+        // Setup
+        sut = new PagerDutyDispatcher(
+            10,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(200L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        final ArgumentCaptor<PagerDutyMessage> sent =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(message("routing-key", "incident", "first"));
+        sut.dispatch(message("routing-key", "incident", "second"));
+        sut.dispatch(resolve("routing-key", "incident"));
+
+        // Assert
+        verify(senderMock, timeout(5_000).times(3)).send(sent.capture());
+        verify(senderMock, after(400).times(3)).send(any(PagerDutyMessage.class));
+        sut.stopAsync().awaitTerminated();
+        final List<PagerDutyMessage> events = sent.getAllValues();
+        assertEquals("Wrong first event", "first", events.get(0).getPayload().get("summary"));
+        assertEquals("Wrong summary event", "second", events.get(1).getPayload().get("summary"));
+        assertEquals("Wrong last action", PagerDutyMessage.RESOLVE, events.get(2).getEventAction());
+    }
+
+    @Test
+    public void testSummariesAndDigestsAreNotSuppressed() {
+        // Setup
+        sut = new PagerDutyDispatcher(
+            10,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(200L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(100, 60_000L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        final StormDigest stormDigest = new StormDigest(
+            2, 60_000L, () -> Instant.parse("2019-11-01T10:00:00Z"), sut, new MetricRegistry());
+        final ArgumentCaptor<PagerDutyMessage> sent =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(message("routing-key", "incident", "first"));
+        sut.dispatch(message("routing-key", "incident", "second"));
+        sut.dispatch(message("routing-key", "incident", "third"));
+        for (int i = 0; i < 3; i++) {
+            stormDigest.absorb(message("storm-key", "", "storm"), "A", Collections.emptySet());
+        }
+        stormDigest.roll();
+        stormDigest.absorb(message("storm-key", "", "storm"), "A", Collections.emptySet());
+        stormDigest.roll();
+
+        // Assert
+        verify(senderMock, timeout(5_000).times(4)).send(sent.capture());
+        verify(senderMock, after(500).times(4)).send(any(PagerDutyMessage.class));
+        sut.stopAsync().awaitTerminated();
+        assertEquals(
+            "Wrong incident events",
+            2L,
+            sent.getAllValues().stream()
+                .filter(message -> "incident".equals(message.getDedupKey()))
+                .count());
+        assertEquals(
+            "Wrong digests",
+            2L,
+            sent.getAllValues().stream()
+                .filter(message -> StormDigest.DEDUP_KEY.equals(message.getDedupKey()))
+                .count());
+    }
+
+    private PagerDutyDispatcher dispatcherWithIncidentIndex() {
+        return new PagerDutyDispatcher(
+            10,
+            1,
+            PagerDutyDispatcher.PLATFORM_MODE,
+            100,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(100, 60_000L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+    }
+
+    private static PagerDutyMessage resolve(String routingKey, String dedupKey) {
+        return new PagerDutyMessage(
+            routingKey, PagerDutyMessage.RESOLVE, dedupKey, "Graylog", null, null, null);
+    }
+
+    @Test
+    public void testVirtualModeSendsEvents() {
+        // Setup
+        sut = new PagerDutyDispatcher(
+            2,
+            1,
+            PagerDutyDispatcher.VIRTUAL_MODE,
+            1,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+        sut.startAsync().awaitRunning();
+
+        // Execute
+        sut.dispatch(messageMock);
+        sut.dispatch(messageMock);
+
+        // Assert
+        verify(senderMock, timeout(5_000).times(2)).send(messageMock);
+        sut.stopAsync().awaitTerminated();
+    }
+
+    private static PagerDutyMessage message(String routingKey, String dedupKey, String summary) {
+        return new PagerDutyMessage(
+            routingKey,
+            "trigger",
+            dedupKey,
+            "Graylog",
+            null,
+            null,
+            Collections.singletonMap("summary", summary));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testUnknownDispatchMode() {
+        // Execute
+        new PagerDutyDispatcher(
+            2,
+            1,
+            "green",
+            1,
+            30_000L,
+            senderMock,
+            new EventCoalescer(0L, metricRegistry),
+            new LoadShedder(100, 100, 0L, metricRegistry),
+            new IncidentIndex(10, 0L, metricRegistry, () -> 0L),
+            new OutboxJournal(false, null, 0, 0L),
+            new MetricRegistry(),
+            clock::get);
+    }
+}
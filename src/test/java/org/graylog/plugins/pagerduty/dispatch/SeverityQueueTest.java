@@ -0,0 +1,153 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeverityQueueTest {
+    private final AtomicLong clock = new AtomicLong();
+    private SeverityQueue sut;
+
+    @Before
+    public void setUp() {
+        sut = new SeverityQueue(1_000L, clock::get);
+    }
+
+    private static OutboundEvent event(String severity, long enqueuedNanos) {
+        final PagerDutyMessage message = new PagerDutyMessage(
+            "01234567890123456789012345678901",
+            "trigger",
+            "key",
+            "Graylog",
+            null,
+            null,
+            Collections.singletonMap("severity", severity));
+        return new OutboundEvent(message, enqueuedNanos, OutboxJournal.NOT_JOURNALED);
+    }
+
+    private List<String> drain(int count) throws InterruptedException {
+        final List<String> severities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            severities.add((String) sut.take().getMessage().getPayload().get("severity"));
+        }
+        return severities;
+    }
+
+    @Test
+    public void testSeverityClasses() {
+        // Assert
+        assertEquals("Wrong class", SeverityQueue.HIGH,
+            SeverityQueue.severityClass(event("critical", 0L).getMessage()));
+        assertEquals("Wrong class", SeverityQueue.HIGH,
+            SeverityQueue.severityClass(event("error", 0L).getMessage()));
+        assertEquals("Wrong class", SeverityQueue.MEDIUM,
+            SeverityQueue.severityClass(event("warning", 0L).getMessage()));
+        assertEquals("Wrong class", SeverityQueue.LOW,
+            SeverityQueue.severityClass(event("info", 0L).getMessage()));
+        assertEquals("Wrong class", SeverityQueue.LOW,
+            SeverityQueue.severityClass(event(null, 0L).getMessage()));
+    }
+
+    @Test
+    public void testCriticalEventsOvertakeInfoBacklog() throws InterruptedException {
+        // Setup
+        for (int i = 0; i < 5; i++) {
+            sut.add(event("info", 0L));
+        }
+        sut.add(event("critical", 0L));
+
+        // Execute
+        final List<String> taken = drain(2);
+
+        // Assert
+        assertEquals("Wrong order", "critical", taken.get(0));
+        assertEquals("Wrong order", "info", taken.get(1));
+    }
+
+    @Test
+    public void testClassesAreDrainedByWeight() throws InterruptedException {
+        // Setup
+        for (int i = 0; i < 10; i++) {
+            sut.add(event("info", 0L));
+            sut.add(event("warning", 0L));
+            sut.add(event("critical", 0L));
+        }
+
+        // Execute
+        final List<String> round = drain(11);
+
+        // Assert
+        assertEquals("Wrong critical share", 8, Collections.frequency(round, "critical"));
+        assertEquals("Wrong warning share", 2, Collections.frequency(round, "warning"));
+        assertEquals("Wrong info share", 1, Collections.frequency(round, "info"));
+        assertEquals("Wrong remaining size", 19, sut.size());
+    }
+
+    @Test
+    public void testStarvedEventIsTakenFirstOncePerRound() throws InterruptedException {
+        // Setup
+        sut.add(event("info", 0L));
+        sut.add(event("info", 0L));
+        for (int i = 0; i < 10; i++) {
+            sut.add(event("critical", 900L));
+        }
+        clock.set(1_000L);
+
+        // Execute
+        final List<String> taken = drain(3);
+
+        // Assert
+        assertEquals("Starved event not taken first", "info", taken.get(0));
+        assertEquals("Wrong order", "critical", taken.get(1));
+        assertEquals("Wrong order", "critical", taken.get(2));
+    }
+
+    @Test
+    public void testClosedQueueIsDrainedFirst() throws InterruptedException {
+        // Setup
+        sut.add(event("info", 0L));
+
+        // Execute
+        sut.close();
+
+        // Assert
+        assertEquals("Wrong event", "info", drain(1).get(0));
+        assertNull("Closed queue returned an event", sut.take());
+    }
+
+    @Test
+    public void testClosedQueueRejectsEvents() throws InterruptedException {
+        // Setup
+        sut.close();
+
+        // Assert
+        assertFalse("Closed queue accepted an event", sut.add(event("info", 0L)));
+        assertNull("Closed queue returned an event", sut.take());
+    }
+}
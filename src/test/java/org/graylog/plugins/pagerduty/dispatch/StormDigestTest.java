@@ -0,0 +1,182 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.codahale.metrics.MetricRegistry;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.graylog.plugins.pagerduty.dto.PagerDutyMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class StormDigestTest {
+    private static final String ROUTING_KEY = "01234567890123456789012345678901";
+    private static final Set<String> STREAMS = Collections.singleton("stream-id");
+
+    @Mock
+    private PagerDutyDispatcher dispatcherMock;
+
+    private StormDigest sut;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        sut = new StormDigest(
+            2,
+            60_000L,
+            () -> Instant.parse("2019-11-01T10:00:00Z"),
+            dispatcherMock,
+            new MetricRegistry());
+    }
+
+    private static PagerDutyMessage trigger(String routingKey, String severity) {
+        final Map<String, Object> payload = new HashMap<>();
+        payload.put("summary", "Disk full");
+        payload.put("severity", severity);
+        return new PagerDutyMessage(
+            routingKey, "trigger", "", "Graylog", "http://graylog/", null, payload);
+    }
+
+    @Test
+    public void testEventsBelowThresholdAreSent() {
+        // Assert
+        assertFalse("First event digested", sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS));
+        assertFalse(
+            "Second event digested", sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS));
+        assertTrue(
+            "Third event not digested", sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS));
+    }
+
+    @Test
+    public void testRoutingKeysAreCountedIndependently() {
+        // Setup
+        sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+        sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+
+        // Assert
+        assertFalse(
+            "Other key digested",
+            sut.absorb(trigger("abcdefabcdefabcdefabcdefabcdefab", "info"), "A", STREAMS));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDigestSummarizesTheStorm() {
+        // Setup
+        sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+        sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+        sut.absorb(trigger(ROUTING_KEY, "warning"), "B", STREAMS);
+        sut.absorb(trigger(ROUTING_KEY, "critical"), "B", STREAMS);
+        sut.absorb(trigger(ROUTING_KEY, "info"), "C", STREAMS);
+        final ArgumentCaptor<PagerDutyMessage> digest =
+            ArgumentCaptor.forClass(PagerDutyMessage.class);
+
+        // Execute
+        sut.roll();
+
+        // Assert
+        verify(dispatcherMock).dispatchSummary(digest.capture());
+        final PagerDutyMessage result = digest.getValue();
+        final Map<String, Object> details =
+            (Map<String, Object>) result.getPayload().get("custom_details");
+        assertEquals("Wrong routing key", ROUTING_KEY, result.getRoutingKey());
+        assertEquals("Wrong dedup key", StormDigest.DEDUP_KEY, result.getDedupKey());
+        assertEquals("Wrong severity", "critical", result.getPayload().get("severity"));
+        assertEquals("Wrong number of events", 3L, details.get("events"));
+        assertEquals(
+            "Wrong top definitions",
+            "{B=2, C=1}",
+            details.get("top_event_definitions").toString());
+        assertEquals(
+            "Wrong severities",
+            "{info=1, warning=1, error=0, critical=1}",
+            details.get("severities").toString());
+    }
+
+    @Test
+    public void testStormEndsAfterQuietInterval() {
+        // Setup
+        for (int i = 0; i < 5; i++) {
+            sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+        }
+        sut.roll();
+
+        // Execute
+        final boolean digestedDuringStorm = sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+        sut.roll();
+
+        // Assert
+        assertTrue("Storm ended too early", digestedDuringStorm);
+        assertFalse("Storm did not end", sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS));
+    }
+
+    @Test
+    public void testNoDigestWithoutStorm() {
+        // Setup
+        sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+
+        // Execute
+        sut.roll();
+
+        // Assert
+        verify(dispatcherMock, never()).dispatchSummary(any(PagerDutyMessage.class));
+    }
+
+    @Test
+    public void testDisabledDigest() {
+        // Setup
+        sut = new StormDigest(0, 60_000L, Instant::now, dispatcherMock, new MetricRegistry());
+
+        // Assert
+        for (int i = 0; i < 100; i++) {
+            assertFalse("Event digested", sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS));
+        }
+    }
+
+    @Test
+    public void testShutdownToleratesAStoppedDispatcher() {
+        // Setup
+        doThrow(new IllegalStateException("The PagerDuty dispatcher is shut down."))
+            .when(dispatcherMock).dispatchSummary(any(PagerDutyMessage.class));
+        sut.startAsync().awaitRunning();
+        for (int i = 0; i < 3; i++) {
+            sut.absorb(trigger(ROUTING_KEY, "info"), "A", STREAMS);
+        }
+
+        // Execute
+        sut.stopAsync().awaitTerminated();
+
+        // Assert
+        verify(dispatcherMock).dispatchSummary(any(PagerDutyMessage.class));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.graylog2.plugin.MessageSummary;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class EventDetailsTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testFieldsAndBacklog() throws Exception {
+        // Setup
+        final Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("host", "web-1");
+        fields.put("level", "3");
+        final EventDetails sut = new EventDetails(
+            fields, Collections.singletonList(message("m1", "Disk full")), 1024);
+
+        // Execute
+        final String result = objectMapper.writeValueAsString(sut);
+
+        // Assert
+        assertEquals(
+            "Wrong details",
+            "{\"fields\":{\"host\":\"web-1\",\"level\":\"3\"},"
+            + "\"backlog\":[{\"id\":\"m1\",\"timestamp\":\"1970-01-01T00:00:00.001Z\","
+            + "\"source\":\"web-1\",\"message\":\"Disk full\"}]}",
+            result);
+    }
+
+    @Test
+    public void testSummaryEntriesComeFirst() throws Exception {
+        // Setup
+        final Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("occurrences", 3);
+        counts.put("first_seen", "2019-01-01");
+        final EventDetails sut = new EventDetails(
+            Collections.singletonMap("host", "web-1"), Collections.emptyList(), 1024)
+            .plus(counts);
+
+        // Execute
+        final String result = objectMapper.writeValueAsString(sut);
+
+        // Assert
+        assertEquals(
+            "Wrong details",
+            "{\"occurrences\":3,\"first_seen\":\"2019-01-01\",\"fields\":{\"host\":\"web-1\"}}",
+            result);
+    }
+
+    @Test
+    public void testBacklogIsTruncatedWithinBudget() throws Exception {
+        // Setup
+        final List<MessageSummary> backlog = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            backlog.add(message("m" + i, "Message number " + i + " with \"quotes\" and \u00e9"));
+        }
+        final EventDetails sut = new EventDetails(Collections.emptyMap(), backlog, 2048);
+
+        // Execute
+        final byte[] result = objectMapper.writeValueAsBytes(sut);
+
+        // Assert
+        assertTrue("Over budget: " + result.length, result.length <= 2048);
+        assertTrue("Too small: " + result.length, result.length > 1800);
+        final Map<?, ?> parsed = objectMapper.readValue(result, Map.class);
+        assertEquals("Not truncated", Boolean.TRUE, parsed.get("truncated"));
+        assertTrue("Empty backlog", !((List<?>) parsed.get("backlog")).isEmpty());
+    }
+
+    @Test
+    public void testSerializationIsRepeatable() throws Exception {
+        // Setup
+        final List<MessageSummary> backlog = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            backlog.add(message("m" + i, "Message " + i));
+        }
+        final EventDetails sut = new EventDetails(Collections.emptyMap(), backlog, 512);
+
+        // Execute
+        final String first = objectMapper.writeValueAsString(sut);
+        final String second = objectMapper.writeValueAsString(sut);
+
+        // Assert
+        assertEquals("Different output", first, second);
+    }
+
+    @Test
+    public void testLengthMatchesJackson() throws Exception {
+        // Setup
+        final String[] values = {
+            "", "plain", "quote\" and \\ backslash", "tab\t, newline\n and \u0001",
+            "\u00e9\u20ac", "\ud83d\ude00 emoji"
+        };
+
+        for (String value : values) {
+            // Execute
+            final int expected =
+                objectMapper.writeValueAsString(value).getBytes(StandardCharsets.UTF_8).length;
+
+            // Assert
+            assertEquals("Wrong length of " + value, expected, EventDetails.length(value));
+        }
+    }
+
+    private static MessageSummary message(String id, String text) {
+        final MessageSummary message = mock(MessageSummary.class);
+        when(message.getId()).thenReturn(id);
+        when(message.getTimestamp()).thenReturn(new DateTime(1, DateTimeZone.UTC));
+        when(message.getSource()).thenReturn("web-1");
+        when(message.getMessage()).thenReturn(text);
+        return message;
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * This file is part of Graylog PagerDuty plugin.
+ *
+ * Graylog PagerDuty Plugin is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog PagerDuty Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog PagerDuty Plugin.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.graylog.plugins.pagerduty.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * In-process stand-in for the PagerDuty Events API, used by tests and to measure throughput and
+ * failure handling on a machine without access to PagerDuty.
+ *
+ * Every request is answered after a random latency with a status code picked from a weighted
+ * mix: {@code 202} accepted, {@code 400} invalid event, {@code 429} throttled (with a
+ * {@code Retry-After} header) or {@code 5xx} with an HTML error page of configurable size, like
+ * the ones returned by proxies and load balancers.
+ *
+ * Run {@link #main(String[])} to serve it standalone and point a Graylog node at it with the
+ * {@code pagerduty_api_url} setting.
+ */
+public class EventsApiStub implements AutoCloseable {
+    public static final String PATH = "/v2/enqueue";
+    private static final int MAX_RECORDED_REQUESTS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int port;
+    private final int threads;
+    private final long minLatencyMillis;
+    private final long maxLatencyMillis;
+    private final int[] statuses;
+    private final int[] cumulativeWeights;
+    private final int retryAfterSeconds;
+    private final int errorPageBytes;
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<Integer, AtomicLong> responses = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<JsonNode> recorded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recordedCount = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private EventsApiStub(Builder builder) {
+        this.port = builder.port;
+        this.threads = builder.threads;
+        this.minLatencyMillis = builder.minLatencyMillis;
+        this.maxLatencyMillis = builder.maxLatencyMillis;
+        this.retryAfterSeconds = builder.retryAfterSeconds;
+        this.errorPageBytes = builder.errorPageBytes;
+        this.statuses = new int[builder.mix.size()];
+        this.cumulativeWeights = new int[builder.mix.size()];
+        int total = 0;
+        for (int i = 0; i < builder.mix.size(); i++) {
+            total += builder.mix.get(i)[1];
+            statuses[i] = builder.mix.get(i)[0];
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public EventsApiStub start() throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    public URI endpoint() {
+        return URI.create(
+            "http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + PATH);
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public long responseCount(int status) {
+        final AtomicLong count = responses.get(status);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * The parsed bodies of the last requests received, in arrival order.
+     */
+    public List<JsonNode> receivedEvents() {
+        return Collections.unmodifiableList(new ArrayList<>(recorded));
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            requests.incrementAndGet();
+            final byte[] body = IOUtils.toByteArray(requestBody);
+            final JsonNode event = parse(body);
+            if (recordedCount.incrementAndGet() <= MAX_RECORDED_REQUESTS) {
+                recorded.add(event);
+            }
+
+            sleep();
+            final int status = nextStatus();
+            responses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+            respond(exchange, status, event);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode event) throws IOException {
+        final String contentType;
+        final byte[] responseBody;
+        if (status == 202) {
+            final String dedupKey = event.hasNonNull("dedup_key")
+                ? event.get("dedup_key").asText()
+                : UUID.randomUUID().toString().replace("-", "");
+            contentType = "application/json";
+            responseBody = json(
+                "{\"status\":\"success\",\"message\":\"Event processed\",\"dedup_key\":"
+                    + objectMapper.writeValueAsString(dedupKey) + "}");
+        }
+        else if (status == 429) {
+            contentType = "application/json";
+            responseBody = json(
+                "{\"status\":\"throttle event\",\"message\":\"Requests for this service are "
+                    + "arriving too quickly. Please retry later.\"}");
+            exchange.getResponseHeaders().add("Retry-After", Integer.toString(retryAfterSeconds));
+        }
+        else if (status >= 400 && status < 500) {
+            contentType = "application/json";
+            responseBody = json(
+                "{\"status\":\"invalid event\",\"message\":\"Event object is invalid\","
+                    + "\"errors\":[\"Length of 'routing_key' is incorrect (should be 32 "
+                    + "characters)\"]}");
+        }
+        else {
+            contentType = "text/html";
+            responseBody = errorPage(status);
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, responseBody.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(responseBody);
+        }
+    }
+
+    private JsonNode parse(byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        }
+        catch (IOException e) {
+            return objectMapper.createObjectNode().put("unparseable", true);
+        }
+    }
+
+    private int nextStatus() {
+        final int roll =
+            ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return statuses[i];
+            }
+        }
+        return statuses[statuses.length - 1];
+    }
+
+    private void sleep() {
+        final long latency = maxLatencyMillis > minLatencyMillis
+            ? ThreadLocalRandom.current().nextLong(minLatencyMillis, maxLatencyMillis + 1)
+            : minLatencyMillis;
+        if (latency > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private byte[] errorPage(int status) {
+        final StringBuilder page = new StringBuilder(errorPageBytes + 64)
+            .append("<html><head><title>")
+            .append(status)
+            .append(" Server Error</title></head><body>");
+        while (page.length() < errorPageBytes) {
+            page.append("<p>The server encountered a temporary error.</p>");
+        }
+        return page.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static class Builder {
+        private final List<int[]> mix = new ArrayList<>();
+        private int port = 0;
+        private int threads = 16;
+        private long minLatencyMillis = 0;
+        private long maxLatencyMillis = 0;
+        private int retryAfterSeconds = 1;
+        private int errorPageBytes = 1024;
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder latency(long minMillis, long maxMillis) {
+            this.minLatencyMillis = minMillis;
+            this.maxLatencyMillis = maxMillis;
+            return this;
+        }
+
+        /**
+         * Adds a status code to the response mix, picked with a probability proportional to its
+         * weight. Without any, every request is accepted.
+         */
+        public Builder respond(int status, int weight) {
+            if (weight > 0) {
+                mix.add(new int[]{status, weight});
+            }
+            return this;
+        }
+
+        public Builder retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        public Builder errorPageBytes(int errorPageBytes) {
+            this.errorPageBytes = errorPageBytes;
+            return this;
+        }
+
+        public EventsApiStub build() {
+            if (mix.isEmpty()) {
+                respond(202, 1);
+            }
+            return new EventsApiStub(this);
+        }
+    }
+
+    /**
+     * Serves the stub until the process is stopped. Usage:
+     * {@code EventsApiStub [port] [minLatencyMs-maxLatencyMs] [status:weight,...] [retryAfter]},
+     * for example {@code EventsApiStub 8080 50-250 202:90,429:6,500:3,400:1 2}.
+     */
+    public static void main(String[] args) throws IOException {
+        final Builder builder = builder().threads(200);
+        if (args.length > 0) {
+            builder.port(Integer.parseInt(args[0]));
+        }
+        if (args.length > 1) {
+            final String[] latency = args[1].split("-");
+            final long min = Long.parseLong(latency[0]);
+            builder.latency(min, latency.length > 1 ? Long.parseLong(latency[1]) : min);
+        }
+        if (args.length > 2) {
+            for (String entry : args[2].split(",")) {
+                final String[] statusAndWeight = entry.split(":");
+                builder.respond(
+                    Integer.parseInt(statusAndWeight[0]), Integer.parseInt(statusAndWeight[1]));
+            }
+        }
+        if (args.length > 3) {
+            builder.retryAfterSeconds(Integer.parseInt(args[3]));
+        }
+
+        final EventsApiStub stub = builder.build().start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+        System.out.println("PagerDuty Events API stub listening on " + stub.endpoint()
+            + " with mix " + Arrays.deepToString(builder.mix.toArray()));
+    }
+}
@@ -50,6 +50,14 @@ class PagerDutyNotificationForm extends React.Component {
                help={lodash.get(validation, 'errors.custom_incident[0]', 'Generate a custom incident key based on the Stream and the Alert Condition.')}
                value={config.custom_incident || ''}
                onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-hashed_dedup_key"
+               name="hashed_dedup_key"
+               label="Use Hashed Incident Key"
+               type="checkbox"
+               bsStyle={validation.errors.hashed_dedup_key ? 'error' : null}
+               help={lodash.get(validation, 'errors.hashed_dedup_key[0]', 'Shorten the custom incident key to the prefix and a fixed length hash of the Streams and the Event Definition.')}
+               value={config.hashed_dedup_key || ''}
+               onChange={this.handleChange} />
         <Input id="pagerduty-notification-v1-key_prefix"
                name="key_prefix"
                label="Incident Key Prefix"
@@ -59,6 +67,14 @@ class PagerDutyNotificationForm extends React.Component {
                value={config.key_prefix || ''}
                onChange={this.handleChange}
                required />
+        <Input id="pagerduty-notification-v1-include_details"
+               name="include_details"
+               label="Include Event Details"
+               type="checkbox"
+               bsStyle={validation.errors.include_details ? 'error' : null}
+               help={lodash.get(validation, 'errors.include_details[0]', 'Add the event fields and backlog messages to the custom details of the PagerDuty event.')}
+               value={config.include_details || ''}
+               onChange={this.handleChange} />
         <Input id="pagerduty-notification-v1-client_name"
                name="client_name"
                label="Client Name"
@@ -77,6 +93,71 @@ class PagerDutyNotificationForm extends React.Component {
                value={config.client_url || ''}
                onChange={this.handleChange}
                required />
+        <Input id="pagerduty-notification-v1-summary_template"
+               name="summary_template"
+               label="Summary Template"
+               type="text"
+               bsStyle={validation.errors.summary_template ? 'error' : null}
+               help={lodash.get(validation, 'errors.summary_template[0]', 'Summary of the PagerDuty event, ${event.message} when empty.')}
+               value={config.summary_template || ''}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-dedup_key_template"
+               name="dedup_key_template"
+               label="Incident Key Template"
+               type="text"
+               bsStyle={validation.errors.dedup_key_template ? 'error' : null}
+               help={lodash.get(validation, 'errors.dedup_key_template[0]', 'Custom incident key, replaces the generated one when set. Requires the custom incident key.')}
+               value={config.dedup_key_template || ''}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-component_template"
+               name="component_template"
+               label="Component Template"
+               type="text"
+               bsStyle={validation.errors.component_template ? 'error' : null}
+               help={lodash.get(validation, 'errors.component_template[0]', 'Component of the PagerDuty event, GraylogAlerts when empty.')}
+               value={config.component_template || ''}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-group_template"
+               name="group_template"
+               label="Group Template"
+               type="text"
+               bsStyle={validation.errors.group_template ? 'error' : null}
+               help={lodash.get(validation, 'errors.group_template[0]', 'Group of the PagerDuty event, the source streams when empty.')}
+               value={config.group_template || ''}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-class_template"
+               name="class_template"
+               label="Class Template"
+               type="text"
+               bsStyle={validation.errors.class_template ? 'error' : null}
+               help={lodash.get(validation, 'errors.class_template[0]', 'Class of the PagerDuty event, alerts when empty.')}
+               value={config.class_template || ''}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-event_action_template"
+               name="event_action_template"
+               label="Event Action Template"
+               type="text"
+               bsStyle={validation.errors.event_action_template ? 'error' : null}
+               help={lodash.get(validation, 'errors.event_action_template[0]', 'Renders to acknowledge or resolve to acknowledge or resolve the incident of the custom incident key instead of triggering it, e.g. ${event.fields.action}. Requires Use Custom Incident Key.')}
+               value={config.event_action_template || ''}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-auto_resolve_minutes"
+               name="auto_resolve_minutes"
+               label="Auto Resolve Minutes"
+               type="number"
+               min="0"
+               bsStyle={validation.errors.auto_resolve_minutes ? 'error' : null}
+               help={lodash.get(validation, 'errors.auto_resolve_minutes[0]', 'Resolve the incident of the custom incident key when it was not triggered for this many minutes, 0 never resolves it. Requires Use Custom Incident Key.')}
+               value={config.auto_resolve_minutes || 0}
+               onChange={this.handleChange} />
+        <Input id="pagerduty-notification-v1-change_event"
+               name="change_event"
+               label="Send as Change Event"
+               type="checkbox"
+               bsStyle={validation.errors.change_event ? 'error' : null}
+               help={lodash.get(validation, 'errors.change_event[0]', 'Record events such as deployments or configuration changes as PagerDuty Change Events instead of triggering incidents.')}
+               value={config.change_event || ''}
+               onChange={this.handleChange} />
       </React.Fragment>
     );
   }
@@ -28,10 +28,18 @@ class PagerDutyNotificationSummary extends React.Component {
             <td>Use Custom Incident Key</td>
             <td><code>{notification.config.custom_incident}</code></td>
           </tr>
+          <tr>
+            <td>Use Hashed Incident Key</td>
+            <td><code>{notification.config.hashed_dedup_key}</code></td>
+          </tr>
           <tr>
             <td>Incident Key Prefix</td>
             <td><code>{notification.config.key_prefix}</code></td>
           </tr>
+          <tr>
+            <td>Include Event Details</td>
+            <td><code>{notification.config.include_details}</code></td>
+          </tr>
           <tr>
             <td>Client Name</td>
             <td><code>{notification.config.client_name}</code></td>
@@ -40,6 +48,38 @@ class PagerDutyNotificationSummary extends React.Component {
             <td>Client URL</td>
             <td><code>{notification.config.client_url}</code></td>
           </tr>
+          <tr>
+            <td>Summary Template</td>
+            <td><code>{notification.config.summary_template}</code></td>
+          </tr>
+          <tr>
+            <td>Incident Key Template</td>
+            <td><code>{notification.config.dedup_key_template}</code></td>
+          </tr>
+          <tr>
+            <td>Component Template</td>
+            <td><code>{notification.config.component_template}</code></td>
+          </tr>
+          <tr>
+            <td>Group Template</td>
+            <td><code>{notification.config.group_template}</code></td>
+          </tr>
+          <tr>
+            <td>Class Template</td>
+            <td><code>{notification.config.class_template}</code></td>
+          </tr>
+          <tr>
+            <td>Event Action Template</td>
+            <td><code>{notification.config.event_action_template}</code></td>
+          </tr>
+          <tr>
+            <td>Auto Resolve Minutes</td>
+            <td>{notification.config.auto_resolve_minutes}</td>
+          </tr>
+          <tr>
+            <td>Send as Change Event</td>
+            <td><code>{notification.config.change_event}</code></td>
+          </tr>
         </React.Fragment>
       </CommonNotificationSummary>
     );
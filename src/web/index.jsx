@@ -17,9 +17,19 @@ PluginStore.register(new PluginManifest({}, {
       defaultConfig: {
         routing_key: '',
         custom_incident: true,
+        hashed_dedup_key: false,
+        include_details: false,
         key_prefix: 'Graylog/',
         client_name: 'Graylog',
         client_url: '',
+        summary_template: '',
+        dedup_key_template: '',
+        component_template: '',
+        group_template: '',
+        class_template: '',
+        event_action_template: '',
+        auto_resolve_minutes: 0,
+        change_event: false,
       },
     }
   ],